@@ -10,7 +10,6 @@ import android.os.Bundle;
 import android.text.Editable;
 import android.text.InputType;
 import android.text.TextWatcher;
-import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.ArrayAdapter;
@@ -18,15 +17,10 @@ import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.TextView;
 
-import com.amrdeveloper.codeview.Keyword;
-import com.chaquo.python.PyObject;
-import com.chaquo.python.Python;
-import com.chaquo.python.android.AndroidPlatform;
-
 import com.amrdeveloper.codeview.Code;
 import com.amrdeveloper.codeview.CodeView;
 import com.amrdeveloper.codeviewlibrary.plugin.CommentManager;
-import com.amrdeveloper.codeviewlibrary.plugin.SourcePositionListener;
+import com.amrdeveloper.codeviewlibrary.plugin.JediCompletionService;
 import com.amrdeveloper.codeviewlibrary.plugin.UndoRedoManager;
 import com.amrdeveloper.codeviewlibrary.syntax.ThemeName;
 import com.amrdeveloper.codeviewlibrary.syntax.LanguageName;
@@ -37,15 +31,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 public class MainActivity extends AppCompatActivity {
 
     private final int AUTO_COMPLETE_BOUNCE_MS = 200;
+    private final long UNDO_HISTORY_MAX_BYTES = 4 * 1024 * 1024;
 
     private CodeView codeView;
     private LanguageManager languageManager;
@@ -55,34 +46,26 @@ public class MainActivity extends AppCompatActivity {
     private TextView languageNameText;
     private TextView sourcePositionText;
 
-    private final TextChangeWatcher textChangeWatcher = new TextChangeWatcher();
-
     private LanguageName currentLanguage = LanguageName.PYTHON;
     private ThemeName currentTheme = ThemeName.MONOKAI;
 
     private final boolean useModernAutoCompleteAdapter = true;
 
-    private int cursor_line, cursor_col;
-    private String currentCode = "";
-    private ScheduledExecutorService autoCompleteService = Executors.newSingleThreadScheduledExecutor();
-    private Future<?> autoCompleteFuture = null;
-
-    private Python py;
-    private PyObject jedi;
+    private JediCompletionService jediCompletionService;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-//        if (!Python.isStarted()) {
-//            Python.start(new AndroidPlatform(this));
-//        }
-
         configCodeView();
         configCodeViewPlugins();
-//        configPython();
-//        Log.d("CodeView", "CodeView onCreate");
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        jediCompletionService.shutdown();
     }
 
     private void configCodeView() {
@@ -121,16 +104,31 @@ public class MainActivity extends AppCompatActivity {
         codeView.enablePairComplete(true);
         codeView.enablePairCompleteCenterCursor(true);
 
-        // listener for text change
-        codeView.addTextChangedListener(textChangeWatcher);
+        // Setup bracket matching
+        codeView.setEnableBracketMatching(true);
+        codeView.setBracketMatchingColor(Color.DKGRAY);
+
+        // The python completions are computed by jedi on its own thread
+        jediCompletionService = new JediCompletionService(this, codeView);
+        codeView.setCompletionDelayTime(AUTO_COMPLETE_BOUNCE_MS);
 
         // Setup the auto complete and auto indenting for the current language
-//        configLanguageAutoComplete();
+        configLanguageAutoComplete();
         configAutoCompleteUI();
         configLanguageAutoIndentation();
     }
 
     private void configLanguageAutoComplete() {
+        if (currentLanguage == LanguageName.PYTHON) {
+            // CodeView updates the adapter with the jedi completions after every change of the text
+            codeView.setAdapter(new CustomCodeViewAdapter(this, new ArrayList<>()));
+            jediCompletionService.connect();
+            codeView.setCompletionProvider(jediCompletionService);
+            return;
+        }
+
+        codeView.setCompletionProvider(null);
+        jediCompletionService.disconnect();
         if (useModernAutoCompleteAdapter) {
             // Load the code list (keywords and snippets) for the current language
             List<Code> codeList = languageManager.getLanguageCodeList(currentLanguage);
@@ -168,6 +166,7 @@ public class MainActivity extends AppCompatActivity {
         configCommentInfo();
 
         undoRedoManager = new UndoRedoManager(codeView);
+        undoRedoManager.setMaxHistoryBytes(UNDO_HISTORY_MAX_BYTES);
         undoRedoManager.connect();
 
         languageNameText = findViewById(R.id.language_name_txt);
@@ -181,6 +180,11 @@ public class MainActivity extends AppCompatActivity {
     private void configCommentInfo() {
         commentManager.setCommentStart(languageManager.getCommentStart(currentLanguage));
         commentManager.setCommendEnd(languageManager.getCommentEnd(currentLanguage));
+        commentManager.setBlockComment(languageManager.getBlockCommentStart(currentLanguage),
+                languageManager.getBlockCommentEnd(currentLanguage));
+        codeView.setBracketMatchingComments(languageManager.getCommentStart(currentLanguage),
+                languageManager.getBlockCommentStart(currentLanguage),
+                languageManager.getBlockCommentEnd(currentLanguage));
     }
 
     private void configLanguageName() {
@@ -188,19 +192,11 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void configSourcePositionListener() {
-        SourcePositionListener sourcePositionListener = new SourcePositionListener(codeView);
-        sourcePositionListener.setOnPositionChanged((line, column) -> {
-            sourcePositionText.setText(getString(R.string.source_position, line, column));
-            cursor_line = line;
-            cursor_col = Math.max(0, column - 1);
+        codeView.setOnSourcePositionChangedListener((line, column) -> {
+            sourcePositionText.setText(getString(R.string.source_position, line + 1, column + 1));
         });
     }
 
-    private void configPython() {
-        py = Python.getInstance();
-        jedi = py.getModule("jedi");
-    }
-
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_main, menu);
@@ -215,8 +211,21 @@ public class MainActivity extends AppCompatActivity {
         if (menuGroupId == R.id.group_languages) changeTheEditorLanguage(menuItemId);
         else if (menuGroupId == R.id.group_themes) changeTheEditorTheme(menuItemId);
         else if (menuItemId == R.id.findMenu) launchEditorButtonSheet();
-        else if (menuItemId == R.id.comment) commentManager.commentSelected();
-        else if (menuItemId == R.id.un_comment) commentManager.unCommentSelected();
+        else if (menuItemId == R.id.comment) {
+            undoRedoManager.beginEditGroup();
+            commentManager.commentSelected();
+            undoRedoManager.endEditGroup();
+        }
+        else if (menuItemId == R.id.un_comment) {
+            undoRedoManager.beginEditGroup();
+            commentManager.unCommentSelected();
+            undoRedoManager.endEditGroup();
+        }
+        else if (menuItemId == R.id.block_comment) {
+            undoRedoManager.beginEditGroup();
+            commentManager.toggleBlockComment();
+            undoRedoManager.endEditGroup();
+        }
         else if (menuItemId == R.id.clearText) codeView.setText("");
         else if (menuItemId == R.id.undo) undoRedoManager.undo();
         else if (menuItemId == R.id.redo) undoRedoManager.redo();
@@ -278,7 +287,7 @@ public class MainActivity extends AppCompatActivity {
             public void afterTextChanged(Editable editable) {
                 String text = editable.toString().trim();
                 if (text.isEmpty()) codeView.clearMatches();
-                codeView.findMatches(Pattern.quote(text));
+                codeView.findMatches(Pattern.quote(text), matches -> codeView.findNextMatch());
             }
         });
 
@@ -293,40 +302,11 @@ public class MainActivity extends AppCompatActivity {
         replacementAction.setOnClickListener(v -> {
             String regex = searchEdit.getText().toString();
             String replacement = replacementEdit.getText().toString();
-            codeView.replaceAllMatches(regex, replacement);
+            // The old matches are not in the replaced text
+            codeView.replaceAllMatches(regex, replacement, matches -> codeView.clearMatches());
         });
 
         dialog.setOnDismissListener(c -> codeView.clearMatches());
         dialog.show();
     }
-
-    private final class TextChangeWatcher implements TextWatcher {
-
-        private Runnable runAutoComplete = () -> {
-//            autoCompleteFuture = null;
-//            PyObject script = jedi.callAttr("Script", currentCode);
-//            PyObject completions = script.callAttr("complete", cursor_line, cursor_col);
-//            Log.d("CodeView", "Completions: " + completions.toString());
-//            Log.d("CodeView", currentCode);
-        };
-
-        @Override
-        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
-
-        }
-
-        @Override
-        public void onTextChanged(CharSequence s, int start, int before, int count) {
-            currentCode = s.toString();
-            if (autoCompleteFuture != null) {
-                autoCompleteFuture.cancel(true);
-            }
-            autoCompleteFuture = autoCompleteService.schedule(runAutoComplete, AUTO_COMPLETE_BOUNCE_MS,
-                    TimeUnit.MILLISECONDS);
-        }
-
-        @Override
-        public void afterTextChanged(Editable s) {
-        }
-    }
-}
\ No newline at end of file
+}
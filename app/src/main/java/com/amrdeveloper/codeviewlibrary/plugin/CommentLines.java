@@ -0,0 +1,94 @@
+package com.amrdeveloper.codeviewlibrary.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The edits of commenting and uncommenting the selected lines, they only read the text so the
+ * lines can be checked without a view, the edits are ordered from the last line to the first one
+ * so the positions of the lines that are not changed yet are still valid while applying them
+ */
+final class CommentLines {
+
+    static final class Edit {
+        final int start;
+        final int end;
+        final String text;
+
+        Edit(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+    }
+
+    private CommentLines() {
+    }
+
+    // Add the comment start and end to every selected line that doesn't have them
+    static List<Edit> comment(CharSequence text, int start, int end, String commentStart, String commentEnd) {
+        List<Edit> edits = new ArrayList<>();
+        if (start == end) return edits;
+
+        int lineEnd = lastSelectedLineEnd(text, end);
+        while (true) {
+            int lineStart = lineStart(text, lineEnd);
+            boolean hasCommentEnd = lineEnd - lineStart >= commentEnd.length()
+                    && regionMatches(text, lineEnd - commentEnd.length(), commentEnd);
+            if (!commentEnd.isEmpty() && !hasCommentEnd) {
+                edits.add(new Edit(lineEnd, lineEnd, commentEnd));
+            }
+            if (!regionMatches(text, lineStart, commentStart)) {
+                edits.add(new Edit(lineStart, lineStart, commentStart));
+            }
+            if (lineStart <= start) break;
+            lineEnd = lineStart - 1;
+        }
+        return edits;
+    }
+
+    // Remove the comment start and end from every selected line that has both of them
+    static List<Edit> unComment(CharSequence text, int start, int end, String commentStart, String commentEnd) {
+        List<Edit> edits = new ArrayList<>();
+        if (start == end) return edits;
+
+        int lineEnd = lastSelectedLineEnd(text, end);
+        while (true) {
+            int lineStart = lineStart(text, lineEnd);
+            if (lineEnd - lineStart >= commentStart.length() + commentEnd.length()
+                    && regionMatches(text, lineStart, commentStart)
+                    && regionMatches(text, lineEnd - commentEnd.length(), commentEnd)) {
+                if (!commentEnd.isEmpty()) edits.add(new Edit(lineEnd - commentEnd.length(), lineEnd, ""));
+                edits.add(new Edit(lineStart, lineStart + commentStart.length(), ""));
+            }
+            if (lineStart <= start) break;
+            lineEnd = lineStart - 1;
+        }
+        return edits;
+    }
+
+    // A selection that ends after a line break doesn't include the next line
+    static int lastSelectedLineEnd(CharSequence text, int end) {
+        if (text.charAt(end - 1) == '\n') return end - 1;
+        return lineEnd(text, end);
+    }
+
+    static int lineEnd(CharSequence text, int position) {
+        int length = text.length();
+        while (position < length && text.charAt(position) != '\n') position++;
+        return position;
+    }
+
+    static int lineStart(CharSequence text, int position) {
+        while (position > 0 && text.charAt(position - 1) != '\n') position--;
+        return position;
+    }
+
+    static boolean regionMatches(CharSequence text, int position, String value) {
+        if (position < 0 || position + value.length() > text.length()) return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (text.charAt(position + i) != value.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -3,78 +3,180 @@ package com.amrdeveloper.codeviewlibrary.plugin;
 import android.text.Editable;
 import android.widget.EditText;
 
+import com.amrdeveloper.codeview.CodeView;
+import com.amrdeveloper.codeview.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+
 public class CommentManager {
 
     private final EditText textView;
     private final Editable editable;
 
     private String commentStart;
-    private int commentStartLength;
-
     private String commentEnd;
-    private int commendEndLength;
+
+    private String blockCommentStart = "";
+    private String blockCommentEnd = "";
 
     public CommentManager(EditText textView) {
         this.textView = textView;
         this.editable = textView.getText();
         this.commentStart = "";
-        this.commentStartLength = 0;
         this.commentEnd = "";
-        this.commendEndLength = 0;
     }
 
     public CommentManager(EditText textView, String commentStart, String commentEnd) {
         this.textView = textView;
         this.editable = textView.getText();
         this.commentStart = commentStart;
-        this.commentStartLength = commentStart.length();
         this.commentEnd = commentEnd;
-        this.commendEndLength = commentEnd.length();
     }
 
     public void commentSelected() {
-        int start = textView.getSelectionStart();
-        int end = textView.getSelectionEnd();
-        if (start != end) {
-            String[] lines = editable.subSequence(start, end).toString().split("\n");
-            StringBuilder builder = new StringBuilder();
-            int len = lines.length;
-            for (int i = 0; i < len ; i++) {
-                String line = lines[i];
-                if (!line.startsWith(commentStart)) builder.append(commentStart);
-                builder.append(line);
-                if (!line.endsWith(commentEnd)) builder.append(commentEnd);
-                if (i != len - 1) builder.append("\n");
+        int start = Math.min(textView.getSelectionStart(), textView.getSelectionEnd());
+        int end = Math.max(textView.getSelectionStart(), textView.getSelectionEnd());
+        applyEdits(CommentLines.comment(editable, start, end, commentStart, commentEnd));
+    }
+
+    public void unCommentSelected() {
+        int start = Math.min(textView.getSelectionStart(), textView.getSelectionEnd());
+        int end = Math.max(textView.getSelectionStart(), textView.getSelectionEnd());
+        applyEdits(CommentLines.unComment(editable, start, end, commentStart, commentEnd));
+    }
+
+    private void applyEdits(List<CommentLines.Edit> edits) {
+        if (edits.isEmpty()) return;
+        textView.beginBatchEdit();
+        for (CommentLines.Edit edit : edits) editable.replace(edit.start, edit.end, edit.text);
+        textView.endBatchEdit();
+    }
+
+    // Remove the block comment that contains the selection, or wrap the selection with a block comment,
+    // without selection the current line is used. A comment around the start or the end of the selection
+    // is merged into the new comment and the comments inside it are removed, so comments are never nested
+    public void toggleBlockComment() {
+        if (blockCommentStart.isEmpty() || blockCommentEnd.isEmpty()) return;
+        int start = Math.min(textView.getSelectionStart(), textView.getSelectionEnd());
+        int end = Math.max(textView.getSelectionStart(), textView.getSelectionEnd());
+        if (start < 0) return;
+
+        textView.beginBatchEdit();
+        Token enclosing = findBlockComment(start);
+        if (enclosing != null && enclosing.getEnd() >= end) {
+            removeBlockComment(enclosing);
+            textView.endBatchEdit();
+            return;
+        }
+
+        if (start == end) {
+            start = lineStart(start);
+            end = lineEnd(end);
+        }
+
+        Token first = findBlockComment(start);
+        if (first != null) start = first.getStart();
+        Token last = end > start ? findBlockComment(end - 1) : null;
+        if (last != null) end = Math.max(end, last.getEnd());
+
+        List<Token> comments = findBlockComments(start, end);
+        for (int i = comments.size() - 1; i >= 0; i--) {
+            end -= removeBlockComment(comments.get(i));
+        }
+        editable.insert(end, blockCommentEnd);
+        editable.insert(start, blockCommentStart);
+        textView.endBatchEdit();
+    }
+
+    // Remove the delimiters of a block comment and return the number of removed characters
+    private int removeBlockComment(Token comment) {
+        int commentStart = comment.getStart();
+        int commentEnd = comment.getEnd();
+        int startLength = blockCommentStart.length();
+        int endLength = blockCommentEnd.length();
+        int removed = startLength;
+        // An unclosed comment has no end delimiter to remove
+        if (commentEnd - commentStart >= startLength + endLength
+                && regionMatches(commentEnd - endLength, blockCommentEnd)) {
+            editable.delete(commentEnd - endLength, commentEnd);
+            removed += endLength;
+        }
+        editable.delete(commentStart, commentStart + startLength);
+        return removed;
+    }
+
+    // The block comments that start inside the range, a comment start delimiter is checked with
+    // findBlockComment so a delimiter inside a string is not taken as a comment in CodeView
+    private List<Token> findBlockComments(int start, int end) {
+        List<Token> comments = new ArrayList<>();
+        int position = start;
+        while (position < end) {
+            if (regionMatches(position, blockCommentStart)) {
+                Token comment = findBlockComment(position);
+                if (comment != null && comment.getStart() == position) {
+                    comments.add(comment);
+                    position = comment.getEnd();
+                    continue;
+                }
             }
-            editable.replace(start, end, builder);
+            position++;
         }
+        return comments;
     }
 
-    public void unCommentSelected() {
-        int start = textView.getSelectionStart();
-        int end = textView.getSelectionEnd();
-        if (start != end) {
-            String[] lines = editable.subSequence(start, end).toString().split("\n");
-            StringBuilder builder = new StringBuilder();
-            int len = lines.length;
-            for (int i = 0; i < len ; i++) {
-                String line = lines[i];
-                if (line.startsWith(commentStart) && line.endsWith(commentEnd))
-                    builder.append(line.substring(commentStartLength, line.length() - commendEndLength));
-                else builder.append(line);
-                if (i != len - 1) builder.append("\n");
+    // The block comment that contains the position, CodeView already knows the comments ranges
+    // and ignores delimiters inside strings, for other views the comments are found from the text start
+    private Token findBlockComment(int position) {
+        if (textView instanceof CodeView && ((CodeView) textView).isBracketMatchingEnabled()) {
+            return ((CodeView) textView).findBlockComment(position);
+        }
+
+        int length = editable.length();
+        int index = 0;
+        while (index <= position && index < length) {
+            if (!regionMatches(index, blockCommentStart)) {
+                index++;
+                continue;
             }
-            editable.replace(start, end, builder);
+            int commentEnd = indexOf(blockCommentEnd, index + blockCommentStart.length());
+            commentEnd = commentEnd == -1 ? length : commentEnd + blockCommentEnd.length();
+            if (position < commentEnd) return new Token(index, commentEnd);
+            index = commentEnd;
+        }
+        return null;
+    }
+
+    private int indexOf(String value, int from) {
+        int last = editable.length() - value.length();
+        for (int i = from; i <= last; i++) {
+            if (regionMatches(i, value)) return i;
         }
+        return -1;
+    }
+
+    private int lineEnd(int position) {
+        return CommentLines.lineEnd(editable, position);
+    }
+
+    private int lineStart(int position) {
+        return CommentLines.lineStart(editable, position);
+    }
+
+    private boolean regionMatches(int position, String value) {
+        return CommentLines.regionMatches(editable, position, value);
     }
 
     public void setCommentStart(String comment) {
         this.commentStart = comment;
-        this.commentStartLength = comment.length();
     }
 
     public void setCommendEnd(String comment) {
         this.commentEnd = comment;
-        this.commendEndLength = comment.length();
+    }
+
+    public void setBlockComment(String commentStart, String commentEnd) {
+        this.blockCommentStart = commentStart;
+        this.blockCommentEnd = commentEnd;
     }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.amrdeveloper.codeviewlibrary.plugin;
+
+/*
+ * Group the changes like text editors do, typing or deleting continuously is one group until
+ * the user stops for a while, moves the cursor, switches between typing and deleting or starts
+ * a new word, a paste or any change of many characters is a group by itself
+ *
+ * A keyboard that replaces the composing word on every key press is continuous typing
+ * because every change touches the range of the previous one
+ */
+public class DefaultUndoGroupingPolicy implements UndoGroupingPolicy {
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 1000;
+
+    private final long idleTimeout;
+
+    public DefaultUndoGroupingPolicy() {
+        this(DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public DefaultUndoGroupingPolicy(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    @Override
+    public boolean isNewGroup(Edit previous, Edit current) {
+        if (current.time - previous.time > idleTimeout) return true;
+        if (isBulkChange(previous) || isBulkChange(current)) return true;
+        if (previous.isInsert() && current.isDelete()) return true;
+        if (previous.isDelete() && current.isInsert()) return true;
+        if (!isContinuous(previous, current)) return true;
+        return isWordStart(previous, current);
+    }
+
+    // A change of many characters that is not a keyboard updating the composing word
+    private static boolean isBulkChange(Edit edit) {
+        int insertedLength = edit.inserted.length();
+        int removedLength = edit.removed.length();
+        if (insertedLength <= 1 && removedLength <= 1) return false;
+        boolean isComposing = Math.abs(insertedLength - removedLength) <= 1
+                && (edit.inserted.startsWith(edit.removed) || edit.removed.startsWith(edit.inserted));
+        return !isComposing;
+    }
+
+    // The change starts where the previous change ended, or replaces the previous change text
+    private static boolean isContinuous(Edit previous, Edit current) {
+        int previousEnd = previous.start + previous.inserted.length();
+        int currentEnd = current.start + current.removed.length();
+        return current.start <= previousEnd && currentEnd >= previous.start;
+    }
+
+    private static boolean isWordStart(Edit previous, Edit current) {
+        if (!current.isInsert() && current.inserted.length() <= current.removed.length()) return false;
+        char last = lastInsertedChar(previous);
+        char next = lastInsertedChar(current);
+        if (next == '\n') return true;
+        return Character.isWhitespace(last) && !Character.isWhitespace(next);
+    }
+
+    private static char lastInsertedChar(Edit edit) {
+        String inserted = edit.inserted;
+        return inserted.isEmpty() ? 0 : inserted.charAt(inserted.length() - 1);
+    }
+}
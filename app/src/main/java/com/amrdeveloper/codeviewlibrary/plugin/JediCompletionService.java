@@ -0,0 +1,174 @@
+package com.amrdeveloper.codeviewlibrary.plugin;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.widget.TextView;
+
+import com.amrdeveloper.codeview.Code;
+import com.amrdeveloper.codeview.CodeView;
+import com.amrdeveloper.codeview.CompletionProvider;
+import com.amrdeveloper.codeview.CompletionResults;
+import com.amrdeveloper.codeview.Keyword;
+import com.amrdeveloper.codeview.TextSnapshot;
+import com.chaquo.python.PyObject;
+import com.chaquo.python.Python;
+import com.chaquo.python.android.AndroidPlatform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Python completions with jedi on one long lived thread, the interpreter is started on that
+ * thread and the jedi_service module keeps its own copy of the text, so after the first full copy
+ * only the edits are sent to it, the full copy of a CodeView text is made from its snapshot on the
+ * worker thread so the text is never copied on the main thread
+ *
+ * The edits and the requests are run in order on the same thread, so a request always sees the
+ * text of its snapshot or a newer one, CodeView calls the service as a CompletionProvider and
+ * ignores the results of a request that is made before the text is changed again
+ */
+public class JediCompletionService implements CompletionProvider {
+
+    private static final String TAG = "JediCompletionService";
+    private static final String MODULE_NAME = "jedi_service";
+
+    private final Context context;
+    private final TextView textView;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private boolean connected;
+
+    // Used only from the worker thread
+    private PyObject module;
+
+    public JediCompletionService(Context context, TextView textView) {
+        this.context = context.getApplicationContext();
+        this.textView = textView;
+    }
+
+    /**
+     * Start listening to the text changes, the current text is sent once to the worker
+     */
+    public void connect() {
+        if (connected) return;
+        connected = true;
+        textView.addTextChangedListener(textWatcher);
+        syncFullText();
+    }
+
+    public void disconnect() {
+        if (!connected) return;
+        connected = false;
+        textView.removeTextChangedListener(textWatcher);
+    }
+
+    /**
+     * Called by CodeView on its completion thread, it waits for the jedi worker to complete the position
+     */
+    @Override
+    public void provideCompletions(TextSnapshot snapshot, int cursor, String prefix, CompletionResults results) {
+        // jedi lines are one based and its columns are in code points
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i < cursor; i++) {
+            if (snapshot.charAt(i) != '\n') continue;
+            line++;
+            lineStart = i + 1;
+        }
+        final int jediLine = line;
+        final int jediColumn = Character.codePointCount(snapshot, lineStart, cursor);
+
+        Future<List<String>> request = worker.submit(() -> {
+            PyObject completions = getModule().callAttr("complete", jediLine, jediColumn);
+            List<String> names = new ArrayList<>();
+            for (PyObject name : completions.asList()) names.add(name.toString());
+            return names;
+        });
+
+        List<String> names;
+        try {
+            names = request.get();
+        } catch (InterruptedException e) {
+            // The text is changed so CodeView doesn't need this request anymore
+            request.cancel(false);
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Completion failed", e.getCause());
+            return;
+        }
+
+        List<Code> codes = new ArrayList<>(names.size());
+        for (String name : names) codes.add(new Keyword(name));
+        results.addAll(codes);
+    }
+
+    /**
+     * Stop the worker thread, the service can't be used after it
+     */
+    public void shutdown() {
+        disconnect();
+        worker.shutdownNow();
+    }
+
+    private void syncFullText() {
+        // The CodeView snapshot is copied to a string on the worker thread
+        final CharSequence text = textView instanceof CodeView
+                ? ((CodeView) textView).getSnapshot()
+                : textView.getText().toString();
+        worker.execute(() -> {
+            try {
+                getModule().callAttr("reset", text.toString());
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Text sync failed", e);
+            }
+        });
+    }
+
+    private void sendEdit(final int start, final int end, final String text) {
+        worker.execute(() -> {
+            try {
+                getModule().callAttr("apply_edit", start, end, text);
+            } catch (RuntimeException e) {
+                // The worker text may be different now, so it takes a full copy again
+                Log.w(TAG, "Edit sync failed", e);
+                mainHandler.post(() -> {
+                    if (connected) syncFullText();
+                });
+            }
+        });
+    }
+
+    private PyObject getModule() {
+        if (module == null) {
+            if (!Python.isStarted()) Python.start(new AndroidPlatform(context));
+            module = Python.getInstance().getModule(MODULE_NAME);
+        }
+        return module;
+    }
+
+    private final TextWatcher textWatcher = new TextWatcher() {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+            // Only the inserted characters are copied
+            sendEdit(start, start + before, s.subSequence(start, start + count).toString());
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+        }
+    };
+}
@@ -0,0 +1,38 @@
+package com.amrdeveloper.codeviewlibrary.plugin;
+
+/*
+ * UndoGroupingPolicy decides which text changes are undone together, every change is
+ * checked against the previous change of the current group before it's merged into it
+ */
+@FunctionalInterface
+public interface UndoGroupingPolicy {
+
+    final class Edit {
+        public final int start;
+        public final String removed;
+        public final String inserted;
+        public final long time;
+
+        public Edit(int start, String removed, String inserted, long time) {
+            this.start = start;
+            this.removed = removed;
+            this.inserted = inserted;
+            this.time = time;
+        }
+
+        public boolean isInsert() {
+            return removed.isEmpty() && !inserted.isEmpty();
+        }
+
+        public boolean isDelete() {
+            return inserted.isEmpty() && !removed.isEmpty();
+        }
+    }
+
+    /**
+     * @param previous The last change of the current group
+     * @param current The new change
+     * @return true if the current change should start a new undo group
+     */
+    boolean isNewGroup(Edit previous, Edit current);
+}
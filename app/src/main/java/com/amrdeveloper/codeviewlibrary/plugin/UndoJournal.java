@@ -0,0 +1,605 @@
+package com.amrdeveloper.codeviewlibrary.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/*
+ * UndoJournal is an append only file of the undo history changes, it has no Android dependencies.
+ *
+ * Every record is framed as [length][payload][crc32][length] so the file can be read from its end,
+ * a record that was not fully written before a crash fails the crc check and is dropped on open.
+ * Records are encoded on the caller thread and written by a background thread, all the records
+ * that are waiting when the writer runs are written and fsync'd together.
+ *
+ * Node records carry the node index in the history, a node replaces all the nodes from its index,
+ * position records carry the history position after undo or redo. Checkpoint records carry the
+ * position with the length and checksum of the text at that time, the history is restored only
+ * up to the newest checkpoint of the restored text. A node that is bigger than the record size
+ * is written as parts, the parts of a node that was not fully written are skipped.
+ */
+public final class UndoJournal implements Closeable {
+
+    public static final String FILE_NAME = "undo.journal";
+
+    private static final int MAGIC = 0x554E444F;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int FRAME_SIZE = 12;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+    private static final int STRING_CHUNK_SIZE = 16 * 1024;
+    // The type, the part index and the parts count before the part bytes
+    private static final int PART_HEADER_SIZE = 9;
+
+    private static final byte RECORD_NODE = 1;
+    private static final byte RECORD_POSITION = 2;
+    private static final byte RECORD_CHECKPOINT = 3;
+    private static final byte RECORD_PART = 4;
+
+    public static final class Entry {
+        public final int index;
+        public final int start;
+        public final String before;
+        public final String after;
+
+        public Entry(int index, int start, String before, String after) {
+            this.index = index;
+            this.start = start;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private final File file;
+    private final File tempFile;
+    private final int maxRecordSize;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final Object pendingLock = new Object();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private byte[] pendingRewrite;
+    private boolean flushScheduled = false;
+    private volatile IOException writeError;
+
+    public UndoJournal(File directory) throws IOException {
+        this(directory, MAX_RECORD_SIZE);
+    }
+
+    UndoJournal(File directory, int maxRecordSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create journal directory " + directory);
+        }
+        file = new File(directory, FILE_NAME);
+        tempFile = new File(directory, FILE_NAME + ".tmp");
+        this.maxRecordSize = maxRecordSize;
+        open();
+    }
+
+    public void appendNode(int index, int start, String before, String after) {
+        append(encodeNode(index, start, before, after));
+    }
+
+    public void appendPosition(int position) {
+        append(encodePosition(position));
+    }
+
+    // The checksum is computed by the caller with checksum() from the text at this position
+    public void appendCheckpoint(int position, int documentLength, int documentChecksum) {
+        append(encodeCheckpoint(position, documentLength, documentChecksum));
+    }
+
+    // Replace the journal with a new one that contains only these entries, the entries
+    // indexes must start from zero
+    public void rewrite(List<Entry> entries, int position) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (Entry entry : entries) {
+            frameRecord(records, encodeNode(entry.index, entry.start, entry.before, entry.after));
+        }
+        frameRecord(records, encodePosition(position));
+
+        synchronized (pendingLock) {
+            // The records that are not written yet are part of the old journal
+            pending.reset();
+            pendingRewrite = records.toByteArray();
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+        scheduleFlush();
+    }
+
+    public void clear() {
+        rewrite(Collections.<Entry>emptyList(), 0);
+    }
+
+    // Block until all the appended records are written to the disk
+    public void flush() throws IOException {
+        Future<?> future = writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                writePending();
+            }
+        });
+        try {
+            future.get();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        if (writeError != null) throw writeError;
+    }
+
+    // Drop the records after the end, like the records of a newer text than the restored one
+    public void truncate(final long end) throws IOException {
+        Future<?> future = writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                writePending();
+                try {
+                    if (channel.size() > end) channel.truncate(end);
+                    channel.position(channel.size());
+                } catch (IOException e) {
+                    writeError = e;
+                }
+            }
+        });
+        try {
+            future.get();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        if (writeError != null) throw writeError;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+            channel.close();
+            randomAccessFile.close();
+        }
+    }
+
+    // Reader that returns the history nodes of the newest checkpoint of this text from the newest
+    // index to the oldest one, it reads the file backwards on demand so restoring needs only the tail
+    // of the journal, the reader has no nodes if the journal has no checkpoint of this text
+    public Reader openReader(int documentLength, int documentChecksum) throws IOException {
+        flush();
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            return new Reader(input, documentLength, documentChecksum);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    // CRC32 of the UTF-16 characters of the text
+    public static int checksum(CharSequence text) {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8 * 1024];
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int count = Math.min(buffer.length / 2, length - i);
+            for (int j = 0; j < count; j++) {
+                char c = text.charAt(i + j);
+                buffer[j * 2] = (byte) (c >> 8);
+                buffer[j * 2 + 1] = (byte) c;
+            }
+            crc.update(buffer, 0, count * 2);
+            i += count;
+        }
+        return (int) crc.getValue();
+    }
+
+    public final class Reader implements Closeable {
+
+        private final RandomAccessFile input;
+        private long offset;
+        private long checkpointEnd;
+        private int limit = Integer.MAX_VALUE;
+
+        private int size = 0;
+        private int position = 0;
+        private Entry bufferedEntry;
+
+        private Reader(RandomAccessFile input, int documentLength, int documentChecksum) throws IOException {
+            this.input = input;
+            this.offset = input.length();
+            this.checkpointEnd = offset;
+
+            // The records after the checkpoint belong to a newer text than the restored one
+            boolean found = false;
+            while (offset > HEADER_SIZE && !found) {
+                long recordEnd = offset;
+                DataInputStream record = readRecord();
+                if (record == null || record.readByte() != RECORD_CHECKPOINT) continue;
+                int checkpointPosition = record.readInt();
+                found = record.readInt() == documentLength && record.readInt() == documentChecksum;
+                if (found) {
+                    position = checkpointPosition;
+                    checkpointEnd = recordEnd;
+                }
+            }
+            if (!found) return;
+
+            // The newest node before the checkpoint is the last node of the history
+            while (offset > HEADER_SIZE) {
+                DataInputStream record = readRecord();
+                if (record == null || record.readByte() != RECORD_NODE) continue;
+                bufferedEntry = readEntry(record);
+                size = bufferedEntry.index + 1;
+                limit = bufferedEntry.index;
+                break;
+            }
+        }
+
+        // The number of nodes in the restored history
+        public int getSize() {
+            return size;
+        }
+
+        // The history position, the nodes before it can be undone and the others can be redone
+        public int getPosition() {
+            return Math.min(position, size);
+        }
+
+        // The end of the checkpoint of the restored text in the journal file
+        public long getCheckpointEnd() {
+            return checkpointEnd;
+        }
+
+        // Read the next older node, or null if there are no more nodes
+        public Entry next() throws IOException {
+            if (bufferedEntry != null) {
+                Entry entry = bufferedEntry;
+                bufferedEntry = null;
+                return entry;
+            }
+
+            while (offset > HEADER_SIZE && limit > 0) {
+                DataInputStream record = readRecord();
+                if (record == null || record.readByte() != RECORD_NODE) continue;
+
+                Entry entry = readEntry(record);
+                // Newer nodes with smaller or equal index replaced this one
+                if (entry.index >= limit) continue;
+                limit = entry.index;
+                return entry;
+            }
+            return null;
+        }
+
+        // Read the previous record and join it with its other parts if it's the last part of a node,
+        // return null for a part that is not the last one
+        private DataInputStream readRecord() throws IOException {
+            byte[] payload = readPrevious();
+            if (payload[0] != RECORD_PART) return new DataInputStream(new ByteArrayInputStream(payload));
+
+            DataInputStream part = new DataInputStream(new ByteArrayInputStream(payload));
+            part.readByte();
+            int index = part.readInt();
+            int count = part.readInt();
+            if (index != count - 1) return null;
+
+            List<byte[]> parts = new ArrayList<>(count);
+            parts.add(payload);
+            int length = payload.length - PART_HEADER_SIZE;
+            for (int i = count - 2; i >= 0; i--) {
+                long recordStart = offset;
+                if (offset <= HEADER_SIZE) throw new IOException("Missing journal record part at " + recordStart);
+                byte[] previous = readPrevious();
+                part = new DataInputStream(new ByteArrayInputStream(previous));
+                if (part.readByte() != RECORD_PART || part.readInt() != i || part.readInt() != count) {
+                    throw new IOException("Missing journal record part at " + recordStart);
+                }
+                parts.add(previous);
+                length += previous.length - PART_HEADER_SIZE;
+            }
+
+            byte[] joined = new byte[length];
+            int joinedLength = 0;
+            for (int i = parts.size() - 1; i >= 0; i--) {
+                byte[] bytes = parts.get(i);
+                System.arraycopy(bytes, PART_HEADER_SIZE, joined, joinedLength, bytes.length - PART_HEADER_SIZE);
+                joinedLength += bytes.length - PART_HEADER_SIZE;
+            }
+            return new DataInputStream(new ByteArrayInputStream(joined));
+        }
+
+        private byte[] readPrevious() throws IOException {
+            if (offset < HEADER_SIZE + FRAME_SIZE) throw new IOException("Corrupted journal record at " + offset);
+            input.seek(offset - 8);
+            int crc = input.readInt();
+            int length = input.readInt();
+            long recordStart = offset - FRAME_SIZE - length;
+            // Check the length before using it, a corrupted length can be any number
+            if (length <= 0 || length > maxRecordSize || recordStart < HEADER_SIZE) {
+                throw new IOException("Corrupted journal record at " + offset);
+            }
+            input.seek(recordStart);
+            if (input.readInt() != length) throw new IOException("Corrupted journal record at " + recordStart);
+            byte[] payload = new byte[length];
+            input.readFully(payload);
+            if (crc != crc(payload)) throw new IOException("Corrupted journal record at " + recordStart);
+            offset = recordStart;
+            return payload;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    private void open() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+
+        if (channel.size() < HEADER_SIZE || !hasValidHeader()) {
+            channel.truncate(0);
+            writeHeader(channel);
+        } else if (!hasValidTail()) {
+            channel.truncate(findValidEnd());
+        }
+        channel.position(channel.size());
+    }
+
+    private void append(byte[] payload) {
+        synchronized (pendingLock) {
+            frameRecord(pending, payload);
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                writePending();
+            }
+        });
+    }
+
+    private void writePending() {
+        byte[] rewrite;
+        byte[] bytes;
+        synchronized (pendingLock) {
+            flushScheduled = false;
+            rewrite = pendingRewrite;
+            pendingRewrite = null;
+            bytes = pending.toByteArray();
+            pending.reset();
+        }
+
+        try {
+            if (rewrite != null) replaceFile(rewrite);
+            if (bytes.length == 0) return;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        } catch (IOException e) {
+            writeError = e;
+        }
+    }
+
+    private void replaceFile(byte[] records) throws IOException {
+        RandomAccessFile temp = new RandomAccessFile(tempFile, "rw");
+        try {
+            FileChannel tempChannel = temp.getChannel();
+            tempChannel.truncate(0);
+            writeHeader(tempChannel);
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            while (buffer.hasRemaining()) tempChannel.write(buffer);
+            tempChannel.force(true);
+        } finally {
+            temp.close();
+        }
+
+        channel.close();
+        randomAccessFile.close();
+        boolean renamed = tempFile.renameTo(file);
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        if (!renamed) {
+            // Write the new journal in place, it's not atomic but the old records must not be
+            // followed by records with the new indexes
+            channel.truncate(0);
+            writeHeader(channel);
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        }
+        channel.position(channel.size());
+    }
+
+    private static void writeHeader(FileChannel fileChannel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) fileChannel.write(header, fileChannel.position());
+        fileChannel.position(HEADER_SIZE);
+    }
+
+    private boolean hasValidHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == VERSION;
+    }
+
+    private boolean hasValidTail() throws IOException {
+        long size = channel.size();
+        if (size == HEADER_SIZE) return true;
+        if (size < HEADER_SIZE + FRAME_SIZE) return false;
+        ByteBuffer frame = ByteBuffer.allocate(8);
+        channel.read(frame, size - 8);
+        frame.flip();
+        int crc = frame.getInt();
+        int length = frame.getInt();
+        return isValidRecord(size - FRAME_SIZE - length, length, crc);
+    }
+
+    // Scan the journal from its start to find the end of the last fully written record
+    private long findValidEnd() throws IOException {
+        long size = channel.size();
+        long offset = HEADER_SIZE;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (offset + FRAME_SIZE <= size) {
+            lengthBuffer.clear();
+            channel.read(lengthBuffer, offset);
+            lengthBuffer.flip();
+            int length = lengthBuffer.getInt();
+            if (length < 0 || offset + FRAME_SIZE + length > size) break;
+
+            // The trailing length is checked too because the journal is read backwards from it
+            ByteBuffer frame = ByteBuffer.allocate(8);
+            channel.read(frame, offset + 4 + length);
+            frame.flip();
+            int crc = frame.getInt();
+            if (frame.getInt() != length || !isValidRecord(offset, length, crc)) break;
+            offset += FRAME_SIZE + length;
+        }
+        return offset;
+    }
+
+    private boolean isValidRecord(long recordStart, int length, int crc) throws IOException {
+        if (length <= 0 || length > maxRecordSize || recordStart < HEADER_SIZE) return false;
+        ByteBuffer record = ByteBuffer.allocate(length + 4);
+        channel.read(record, recordStart);
+        record.flip();
+        if (record.remaining() != length + 4 || record.getInt() != length) return false;
+        byte[] payload = new byte[length];
+        record.get(payload);
+        return crc(payload) == crc;
+    }
+
+    private static byte[] encodeNode(int index, int start, String before, String after) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + before.length() + after.length());
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeByte(RECORD_NODE);
+            output.writeInt(index);
+            output.writeInt(start);
+            writeString(output, before);
+            writeString(output, after);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodePosition(int position) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(5);
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeByte(RECORD_POSITION);
+            output.writeInt(position);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeCheckpoint(int position, int documentLength, int documentChecksum) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(13);
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeByte(RECORD_CHECKPOINT);
+            output.writeInt(position);
+            output.writeInt(documentLength);
+            output.writeInt(documentChecksum);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // A payload that is bigger than the record size is written as parts that are joined when it's read
+    private void frameRecord(ByteArrayOutputStream records, byte[] payload) {
+        if (payload.length <= maxRecordSize) {
+            frame(records, payload);
+            return;
+        }
+
+        int partSize = maxRecordSize - PART_HEADER_SIZE;
+        int count = (payload.length + partSize - 1) / partSize;
+        for (int i = 0; i < count; i++) {
+            int start = i * partSize;
+            int length = Math.min(partSize, payload.length - start);
+            ByteArrayOutputStream part = new ByteArrayOutputStream(PART_HEADER_SIZE + length);
+            DataOutputStream output = new DataOutputStream(part);
+            try {
+                output.writeByte(RECORD_PART);
+                output.writeInt(i);
+                output.writeInt(count);
+                output.write(payload, start, length);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            frame(records, part.toByteArray());
+        }
+    }
+
+    private static void frame(ByteArrayOutputStream records, byte[] payload) {
+        DataOutputStream output = new DataOutputStream(records);
+        try {
+            output.writeInt(payload.length);
+            output.write(payload);
+            output.writeInt(crc(payload));
+            output.writeInt(payload.length);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Entry readEntry(DataInputStream record) throws IOException {
+        int index = record.readInt();
+        int start = record.readInt();
+        String before = readString(record);
+        String after = readString(record);
+        return new Entry(index, start, before, after);
+    }
+
+    // Strings are written in chunks because writeUTF is limited to 64KB, modified UTF-8 encodes
+    // every char alone so a chunk can end in the middle of a surrogate pair
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        int chunks = (value.length() + STRING_CHUNK_SIZE - 1) / STRING_CHUNK_SIZE;
+        output.writeInt(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int start = i * STRING_CHUNK_SIZE;
+            output.writeUTF(value.substring(start, Math.min(value.length(), start + STRING_CHUNK_SIZE)));
+        }
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int chunks = input.readInt();
+        if (chunks == 1) return input.readUTF();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < chunks; i++) builder.append(input.readUTF());
+        return builder.toString();
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
@@ -1,6 +1,8 @@
 package com.amrdeveloper.codeviewlibrary.plugin;
 
+import android.os.SystemClock;
 import android.text.Editable;
+import android.text.InputFilter;
 import android.text.Selection;
 import android.text.TextUtils;
 import android.text.TextWatcher;
@@ -8,16 +10,32 @@ import android.text.style.UnderlineSpan;
 import android.util.Log;
 import android.widget.TextView;
 
-import java.util.LinkedList;
+import com.amrdeveloper.codeview.CodeView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 // Module taken from: https://stackoverflow.com/questions/14777593/android-textwatcher-saving-batches-of-similar-changes-for-undo-redo
 public class UndoRedoManager {
 
+    private static final InputFilter[] NO_FILTERS = new InputFilter[0];
+    // Number of nodes that are loaded from the journal every time the undo reach the loaded nodes start
+    private static final int JOURNAL_RESTORE_BATCH = 32;
+    // The open edit group and a checkpoint of the text are journaled after this idle time
+    private static final long JOURNAL_IDLE_DELAY = 2000;
+
     private final TextView textView;
     private final EditHistory editHistory;
     private final TextChangeWatcher textChangeWatcher;
 
     private boolean isUndoOrRedo = false;
+    private UndoGroupingPolicy groupingPolicy = new DefaultUndoGroupingPolicy();
+    private int editGroupDepth = 0;
+
+    private UndoJournal journal;
+    private UndoJournal.Reader journalReader;
 
     public UndoRedoManager(TextView textView) {
         this.textView = textView;
@@ -27,39 +45,185 @@ public class UndoRedoManager {
 
     public void undo() {
         textChangeWatcher.pushToEditHistory();
+        if (editHistory.position == 0) loadJournalNodes(JOURNAL_RESTORE_BATCH);
         EditNode edit = editHistory.getPrevious();
         if (edit == null) return;
 
-        Editable text = textView.getEditableText();
-//        int start = edit.start;
-//        int end = start + (edit.after != null ? edit.after.length() : 0);
-
-        isUndoOrRedo = true;
-        text.replace(0, text.length(), edit.before);
-        isUndoOrRedo = false;
-
-        UnderlineSpan[] underlineSpans = text.getSpans(0, text.length(), UnderlineSpan.class);
-        for (Object span : underlineSpans) text.removeSpan(span);
-
-//        Selection.setSelection(text, edit.before == null ? start : (start + edit.before.length()));
+        replace(edit.start, edit.start + edit.after.length(), edit.before);
+        journalPosition();
+        scheduleJournalCheckpoint();
     }
 
     public void redo() {
         EditNode edit = editHistory.getNext();
         if (edit == null) return;
 
-        Editable text = textView.getEditableText();
-//        int start = edit.start;
-//        int end = start + (edit.before != null ? edit.before.length() : 0);
+        replace(edit.start, edit.start + edit.before.length(), edit.after);
+        journalPosition();
+        scheduleJournalCheckpoint();
+    }
 
+    // Replace only the changed range, without the input filters so the restored text
+    // is not changed by features like auto indenting or pair complete, then move the cursor
+    // to the end of the restored text
+    private void replace(int start, int end, String replacement) {
+        Editable text = textView.getEditableText();
+        InputFilter[] filters = text.getFilters();
         isUndoOrRedo = true;
-        text.replace(0, text.length(), edit.after);
+        text.setFilters(NO_FILTERS);
+        if (textView instanceof CodeView) {
+            ((CodeView) textView).replaceTextHighlighted(start, end, replacement);
+        } else {
+            text.replace(start, end, replacement);
+        }
+        text.setFilters(filters);
         isUndoOrRedo = false;
 
-        UnderlineSpan[] underlineSpans = text.getSpans(0, text.length(), UnderlineSpan.class);
+        int replacementEnd = start + replacement.length();
+        UnderlineSpan[] underlineSpans = text.getSpans(start, replacementEnd, UnderlineSpan.class);
         for (Object span : underlineSpans) text.removeSpan(span);
 
-//        Selection.setSelection(text, edit.after == null ? start : (start + edit.after.length()));
+        Selection.setSelection(text, replacementEnd);
+    }
+
+    /**
+     * Keep the history in a journal file inside the directory so it survives the process death,
+     * if the directory has a checkpoint of a text with the same content as the current text the
+     * history of that checkpoint is restored, the older nodes are read from the file only when
+     * they are needed
+     *
+     * The current text must be restored by the caller before attaching the journal
+     */
+    public void attachJournal(File directory) throws IOException {
+        detachJournal();
+        journal = new UndoJournal(directory);
+        CharSequence text = textView.getText();
+        UndoJournal.Reader reader = null;
+        try {
+            reader = journal.openReader(text.length(), UndoJournal.checksum(text));
+        } catch (IOException e) {
+            Log.e("CodeView", "Can't read the undo journal", e);
+        }
+
+        if (reader != null && reader.getSize() > 0) {
+            journal.truncate(reader.getCheckpointEnd());
+            textChangeWatcher.toSaveNode = null;
+            editHistory.clear();
+            editHistory.baseIndex = reader.getSize();
+            journalReader = reader;
+            // Load all the nodes that can be redone and some of the nodes that can be undone
+            loadJournalNodes(reader.getSize() - reader.getPosition() + JOURNAL_RESTORE_BATCH);
+            int position = reader.getPosition() - editHistory.baseIndex;
+            if (position >= 0) {
+                editHistory.position = position;
+                return;
+            }
+            // The nodes between the text and the loaded nodes are not loaded because the history
+            // is full or the journal is corrupted, so the loaded nodes can't be applied to the text
+            editHistory.clear();
+        } else if (reader != null) {
+            reader.close();
+        }
+        rewriteJournal();
+    }
+
+    public void detachJournal() throws IOException {
+        if (journal == null) return;
+        checkpointJournal();
+        closeJournalReader();
+        journal.close();
+        journal = null;
+    }
+
+    // Write the open edit group and a checkpoint of the current text, then block until
+    // all the history changes are written to the journal file
+    public void flushJournal() throws IOException {
+        if (journal == null) return;
+        checkpointJournal();
+        journal.flush();
+    }
+
+    private void loadJournalNodes(int count) {
+        if (journalReader == null) return;
+        try {
+            for (int i = 0; i < count; i++) {
+                UndoJournal.Entry entry = journalReader.next();
+                if (entry == null || !editHistory.prepend(new EditNode(entry.start, entry.before, entry.after))) {
+                    closeJournalReader();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            Log.e("CodeView", "Can't read the undo journal", e);
+            closeJournalReader();
+        }
+    }
+
+    private void closeJournalReader() {
+        if (journalReader == null) return;
+        try {
+            journalReader.close();
+        } catch (IOException ignored) {
+        }
+        journalReader = null;
+    }
+
+    private void journalNode() {
+        if (journal == null) return;
+        EditNode node = editHistory.get(editHistory.size - 1);
+        journal.appendNode(editHistory.baseIndex + editHistory.size - 1, node.start, node.before, node.after);
+    }
+
+    private void journalPosition() {
+        if (journal == null) return;
+        journal.appendPosition(editHistory.baseIndex + editHistory.position);
+    }
+
+    private void scheduleJournalCheckpoint() {
+        if (journal == null) return;
+        textView.removeCallbacks(journalCheckpointRunnable);
+        textView.postDelayed(journalCheckpointRunnable, JOURNAL_IDLE_DELAY);
+    }
+
+    // The open group is written with the index that it takes when it's pushed, so the pushed node
+    // replaces it, and the checkpoint after it has the length and checksum of the current text
+    private void checkpointJournal() {
+        textView.removeCallbacks(journalCheckpointRunnable);
+        if (journal == null) return;
+        int position = editHistory.baseIndex + editHistory.position;
+        EditNode openNode = textChangeWatcher.toSaveNode;
+        if (openNode != null) {
+            journal.appendNode(position, openNode.start, openNode.before, openNode.after);
+            position++;
+        }
+        CharSequence text = textView.getText();
+        journal.appendCheckpoint(position, text.length(), UndoJournal.checksum(text));
+    }
+
+    private final Runnable journalCheckpointRunnable = new Runnable() {
+        @Override
+        public void run() {
+            checkpointJournal();
+        }
+    };
+
+    // Write the history again because the nodes indexes has changed, the nodes that are
+    // not loaded from the old journal yet are dropped
+    private void rewriteJournal() {
+        if (journal == null) return;
+        closeJournalReader();
+        List<UndoJournal.Entry> entries = new ArrayList<>(editHistory.size);
+        for (int i = 0; i < editHistory.size; i++) {
+            EditNode node = editHistory.get(i);
+            entries.add(new UndoJournal.Entry(i, node.start, node.before, node.after));
+        }
+        editHistory.baseIndex = 0;
+        journal.rewrite(entries, editHistory.position);
+        scheduleJournalCheckpoint();
+    }
+
+    private boolean isFileLoading() {
+        return textView instanceof CodeView && ((CodeView) textView).isFileLoading();
     }
 
     public void connect() {
@@ -70,12 +234,42 @@ public class UndoRedoManager {
         textView.removeTextChangedListener(textChangeWatcher);
     }
 
+    // All the changes until endEditGroup are undone together even if they are not near each other
+    public void beginEditGroup() {
+        if (editGroupDepth++ == 0) textChangeWatcher.pushToEditHistory();
+    }
+
+    public void endEditGroup() {
+        if (editGroupDepth == 0) return;
+        if (--editGroupDepth == 0) textChangeWatcher.pushToEditHistory();
+    }
+
+    public void setGroupingPolicy(UndoGroupingPolicy policy) {
+        textChangeWatcher.pushToEditHistory();
+        groupingPolicy = policy;
+    }
+
     public void setMaxHistorySize(int maxSize) {
         editHistory.setMaxHistorySize(maxSize);
     }
 
+    public void setMaxHistoryBytes(long maxBytes) {
+        int compactions = editHistory.compactions;
+        editHistory.setMaxHistoryBytes(maxBytes);
+        if (compactions != editHistory.compactions) rewriteJournal();
+    }
+
+    public long getHistoryBytes() {
+        return editHistory.historyBytes;
+    }
+
+    public int getHistorySize() {
+        return editHistory.size;
+    }
+
     public void clearHistory() {
         editHistory.clear();
+        rewriteJournal();
     }
 
     public boolean canUndo() {
@@ -83,131 +277,288 @@ public class UndoRedoManager {
     }
 
     public boolean canRedo() {
-        return editHistory.position < editHistory.historyList.size();
+        return editHistory.position < editHistory.size;
     }
 
-    private static final class EditHistory {
-
-        private int position = 0;
-        private int maxHistorySize = -1;
-
-        private final LinkedList<EditNode> historyList = new LinkedList<>();
-
-        private void clear() {
+    /*
+     * EditHistory is a ring buffer of edit nodes, the oldest nodes are removed when the number
+     * of nodes is more than maxHistorySize or the nodes size is more than maxHistoryBytes, before
+     * removing nodes because of the bytes budget the small adjacent nodes are merged together
+     */
+    static final class EditHistory {
+
+        private static final int INITIAL_CAPACITY = 16;
+        // Nodes smaller than this can be merged with their neighbours to save memory
+        private static final long SMALL_NODE_BYTES = 1024;
+
+        EditNode[] nodes = new EditNode[INITIAL_CAPACITY];
+        int head = 0;
+        int size = 0;
+        int position = 0;
+        int maxHistorySize = -1;
+        long maxHistoryBytes = -1;
+        long historyBytes = 0;
+        // Index of the first node since the history start, used as the node index in the journal
+        int baseIndex = 0;
+        // Incremented when the nodes are merged so their indexes are changed
+        int compactions = 0;
+
+        void clear() {
+            for (int i = 0; i < size; i++) nodes[index(i)] = null;
+            head = 0;
+            size = 0;
             position = 0;
-            historyList.clear();
+            historyBytes = 0;
+            baseIndex = 0;
         }
 
-        private void add(EditNode item) {
-            while (historyList.size() > position) historyList.removeLast();
-            historyList.add(item);
+        void add(EditNode item) {
+            while (size > position) removeLast();
+            if (size == nodes.length) grow();
+            nodes[index(size)] = item;
+            size++;
             position++;
+            historyBytes += item.bytes();
             if (maxHistorySize >= 0) trimHistory();
+            if (maxHistoryBytes >= 0 && historyBytes > maxHistoryBytes) trimHistoryBytes();
+        }
+
+        // Add an older node before the first one, return false if the history has no room for it
+        boolean prepend(EditNode item) {
+            if (baseIndex == 0) return false;
+            if (maxHistorySize >= 0 && size >= maxHistorySize) return false;
+            if (maxHistoryBytes >= 0 && historyBytes + item.bytes() > maxHistoryBytes) return false;
+            if (size == nodes.length) grow();
+            head = (head - 1 + nodes.length) % nodes.length;
+            nodes[head] = item;
+            size++;
+            position++;
+            baseIndex--;
+            historyBytes += item.bytes();
+            return true;
         }
 
-        private void setMaxHistorySize(int maxHistorySize) {
+        void setMaxHistorySize(int maxHistorySize) {
             this.maxHistorySize = maxHistorySize;
             if (this.maxHistorySize >= 0) trimHistory();
         }
 
-        private void trimHistory() {
-            while (historyList.size() > maxHistorySize) {
-                historyList.removeFirst();
-                position--;
+        void setMaxHistoryBytes(long maxHistoryBytes) {
+            this.maxHistoryBytes = maxHistoryBytes;
+            if (this.maxHistoryBytes >= 0 && historyBytes > maxHistoryBytes) trimHistoryBytes();
+        }
+
+        void trimHistory() {
+            while (size > maxHistorySize) removeFirst();
+        }
+
+        void trimHistoryBytes() {
+            compact();
+            // Trim below the budget so the next edits don't compact the full history again,
+            // and keep the last edit even if it's bigger than the budget
+            long target = maxHistoryBytes - maxHistoryBytes / 4;
+            while (historyBytes > target && size > 1) removeFirst();
+        }
+
+        // Merge every small node with the next one if their ranges touch each other,
+        // nodes are never merged across the current position so undo and redo still work
+        void compact() {
+            EditNode[] compacted = new EditNode[nodes.length];
+            int count = 0;
+            int newPosition = 0;
+            for (int i = 0; i < size; i++) {
+                EditNode node = get(i);
+                EditNode previous = count > 0 ? compacted[count - 1] : null;
+                boolean merged = previous != null && i != position
+                        && previous.bytes() < SMALL_NODE_BYTES && node.bytes() < SMALL_NODE_BYTES
+                        && previous.merge(node.start, node.before, node.after);
+                if (!merged) compacted[count++] = node;
+                if (i == position - 1) newPosition = count;
             }
 
-            if (position < 0) position = 0;
+            if (count != size) compactions++;
+            nodes = compacted;
+            head = 0;
+            size = count;
+            position = newPosition;
+            historyBytes = 0;
+            for (int i = 0; i < size; i++) historyBytes += nodes[i].bytes();
         }
 
-        private EditNode getCurrent() {
+        EditNode getCurrent() {
             if (position == 0) return null;
-            return historyList.get(position - 1);
+            return get(position - 1);
         }
 
-        private EditNode getPrevious() {
+        EditNode getPrevious() {
             if (position == 0) return null;
             position--;
-            return historyList.get(position);
+            return get(position);
         }
 
-        private EditNode getNext() {
-            if (position >= historyList.size()) return null;
-            EditNode item = historyList.get(position);
+        EditNode getNext() {
+            if (position >= size) return null;
+            EditNode item = get(position);
             position++;
             return item;
         }
+
+        EditNode get(int i) {
+            return nodes[index(i)];
+        }
+
+        int index(int i) {
+            return (head + i) % nodes.length;
+        }
+
+        void removeFirst() {
+            historyBytes -= nodes[head].bytes();
+            nodes[head] = null;
+            head = (head + 1) % nodes.length;
+            size--;
+            baseIndex++;
+            if (position > 0) position--;
+        }
+
+        void removeLast() {
+            int last = index(size - 1);
+            historyBytes -= nodes[last].bytes();
+            nodes[last] = null;
+            size--;
+        }
+
+        void grow() {
+            EditNode[] grown = new EditNode[nodes.length * 2];
+            for (int i = 0; i < size; i++) grown[i] = get(i);
+            nodes = grown;
+            head = 0;
+        }
     }
 
-    private static final class EditNode {
+    /*
+     * EditNode stores only the changed range, the text from start to start + before.length()
+     * is replaced by after, so undo and redo are replacements of this range
+     */
+    static final class EditNode {
 
-        private int start;
-        private CharSequence before;
-        private CharSequence after;
+        int start;
+        String before;
+        String after;
 
-        public EditNode(int start, CharSequence before, CharSequence after) {
+        public EditNode(int start, String before, String after) {
             this.start = start;
             this.before = before;
             this.after = after;
         }
 
-        public void setAfter(CharSequence after) {
-            this.after = after;
+        // Merge the next edit into this node if its range touch the range of this node
+        public boolean merge(int editStart, String removed, String inserted) {
+            int end = start + after.length();
+            int editEnd = editStart + removed.length();
+            if (editStart > end || editEnd < start) return false;
+
+            String removedHead = editStart < start ? removed.substring(0, start - editStart) : "";
+            String removedTail = editEnd > end ? removed.substring(removed.length() - (editEnd - end)) : "";
+            String afterHead = editStart > start ? after.substring(0, editStart - start) : "";
+            String afterTail = editEnd < end ? after.substring(editEnd - start) : "";
+
+            before = removedHead + before + removedTail;
+            after = afterHead + inserted + afterTail;
+            start = Math.min(start, editStart);
+            return true;
+        }
+
+        // Merge the next edit even if it's far from this node, the node is extended to cover the
+        // text between them, this text is the same before and after the edit
+        public void extend(CharSequence text, int editStart, String removed, String inserted) {
+            if (merge(editStart, removed, inserted)) return;
+            int end = start + after.length();
+            if (editStart > end) {
+                String gap = TextUtils.substring(text, end, editStart);
+                before = before + gap + removed;
+                after = after + gap + inserted;
+            } else {
+                int shift = inserted.length() - removed.length();
+                String gap = TextUtils.substring(text, editStart + inserted.length(), start + shift);
+                before = removed + gap + before;
+                after = inserted + gap + after;
+                start = editStart;
+            }
+        }
+
+        // Estimated memory size of this node, the node and strings headers plus two bytes per character
+        public long bytes() {
+            return 96 + 2L * (before.length() + after.length());
         }
 
         public void printDetails() {
-            Log.d("CodeView", "Node: '" + before + "' -> '" + after + "'");
+            Log.d("CodeView", "Node: " + start + " '" + before + "' -> '" + after + "'");
         }
     }
 
     /*
-    * TextWatcher defines change not by current key press but rather a sequence. We will utilize
-    * TextWatcher's logic and batch sequence into per edit action.
+     * TextChangeWatcher merges every change into the current edit node, the grouping policy
+     * decides when the current node is pushed to the history and a new one is started
      */
     private final class TextChangeWatcher implements TextWatcher {
 
         EditNode toSaveNode = null;
-        private CharSequence full_beforeChange;
-        private CharSequence full_afterChange;
-        private CharSequence beforeChange;
-        private boolean isFirstAction = true;
+        private String beforeChange;
+        private UndoGroupingPolicy.Edit lastEdit;
 
         public void beforeTextChanged(CharSequence s, int start, int count, int after) {
-            if (isUndoOrRedo) return;
-            full_beforeChange = s.subSequence(0, s.length());
-            beforeChange = s.subSequence(start, start + count);
+            if (isUndoOrRedo || isFileLoading()) return;
+            beforeChange = TextUtils.substring(s, start, start + count);
         }
 
         public void onTextChanged(CharSequence s, int start, int before, int count) {
             if (isUndoOrRedo) return;
-            full_afterChange = s.subSequence(0, s.length());
-            CharSequence afterChange = s.subSequence(start, start + count);
-//            Log.d("CodeView", "'" + beforeChange + "' -> '" + afterChange + "'");
-            boolean isNewSequence;
-            // on keypress
-            if (Math.abs(afterChange.length() - beforeChange.length()) == 1) {
-                isNewSequence = !isFirstAction && beforeChange.length() == 0;
-            } else {    // batch change
-                isNewSequence = true;
+            if (isFileLoading()) {
+                // The loaded file is a new document, so the old history can't be applied to it
+                if (toSaveNode != null || editHistory.size > 0) {
+                    toSaveNode = null;
+                    lastEdit = null;
+                    clearHistory();
+                }
+                return;
+            }
+            String afterChange = TextUtils.substring(s, start, start + count);
+            if (editGroupDepth > 0) {
+                if (toSaveNode == null) toSaveNode = new EditNode(start, beforeChange, afterChange);
+                else toSaveNode.extend(s, start, beforeChange, afterChange);
+                return;
+            }
+
+            UndoGroupingPolicy.Edit edit = new UndoGroupingPolicy.Edit(start, beforeChange, afterChange,
+                    SystemClock.uptimeMillis());
+            if (toSaveNode != null && groupingPolicy.isNewGroup(lastEdit, edit)) {
+                pushToEditHistory();
             }
-            isFirstAction = false;
-            saveBatch(start, isNewSequence);
+            lastEdit = edit;
+            saveBatch(start, afterChange);
+            scheduleJournalCheckpoint();
         }
 
-        // save current batch to to-be-saved EditNode
-        private void saveBatch(int start, boolean saveCurrentBatch) {
-            if (saveCurrentBatch) {
+        // merge the change into the to-be-saved EditNode, or start a new node if it's not near the current one
+        private void saveBatch(int start, String afterChange) {
+            if (toSaveNode != null && !toSaveNode.merge(start, beforeChange, afterChange)) {
                 pushToEditHistory();
             }
             if (toSaveNode == null) {
-                toSaveNode = new EditNode(start, full_beforeChange, full_afterChange);
+                toSaveNode = new EditNode(start, beforeChange, afterChange);
             }
-            // always save the latest afterChange
-            toSaveNode.setAfter(full_afterChange);
         }
 
         public void pushToEditHistory() {
             if (toSaveNode != null) {
+                int compactions = editHistory.compactions;
                 editHistory.add(toSaveNode);
+                if (compactions == editHistory.compactions) {
+                    journalNode();
+                    scheduleJournalCheckpoint();
+                } else {
+                    rewriteJournal();
+                }
                 // set for new edit action
                 toSaveNode = null;
             }
@@ -0,0 +1,93 @@
+package com.amrdeveloper.codeviewlibrary.syntax;
+
+import android.content.res.AssetManager;
+
+import com.amrdeveloper.codeview.SyntaxGrammar;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Load the languages grammars from the assets grammars directory, a grammar is a JSON file
+ * with a small subset of the TextMate grammar format
+ *
+ * - patterns: The rules ordered by their priority, the first rule that matches at a position wins
+ * - rule: { "name": token type, "match": regex } or { "name": token type, "words": [words] },
+ *   the words are found with a hash table instead of a regex so they are better for keywords
+ * - include: { "include": "#key" } uses the rule of the key from the repository
+ * - repository: Map of shared rules, the repository of the grammar is searched before
+ *   the repository of the grammar it extends
+ * - extends: The name of a grammar file that has shared rules like the strings and numbers
+ */
+public final class GrammarLoader {
+
+    private static final String GRAMMARS_DIRECTORY = "grammars/";
+
+    private GrammarLoader() {
+    }
+
+    public static SyntaxGrammar load(AssetManager assets, String name) throws IOException {
+        List<JSONObject> grammars = new ArrayList<>();
+        String grammarName = name;
+        while (grammarName != null) {
+            JSONObject grammar = readGrammar(assets, grammarName);
+            grammars.add(grammar);
+            grammarName = grammar.optString("extends", null);
+        }
+
+        try {
+            List<SyntaxGrammar.Rule> rules = new ArrayList<>();
+            JSONArray patterns = grammars.get(0).getJSONArray("patterns");
+            for (int i = 0; i < patterns.length(); i++) {
+                rules.add(createRule(resolveRule(grammars, patterns.getJSONObject(i))));
+            }
+            return new SyntaxGrammar(grammars.get(0).optString("name", name), rules);
+        } catch (JSONException e) {
+            throw new IOException("Invalid grammar " + name, e);
+        }
+    }
+
+    private static JSONObject resolveRule(List<JSONObject> grammars, JSONObject rule) throws JSONException {
+        if (!rule.has("include")) return rule;
+        String include = rule.getString("include");
+        if (!include.startsWith("#")) throw new JSONException("Unsupported include " + include);
+        String key = include.substring(1);
+        for (JSONObject grammar : grammars) {
+            JSONObject repository = grammar.optJSONObject("repository");
+            if (repository != null && repository.has(key)) return repository.getJSONObject(key);
+        }
+        throw new JSONException("Unknown include " + include);
+    }
+
+    private static SyntaxGrammar.Rule createRule(JSONObject rule) throws JSONException {
+        String tokenType = rule.getString("name");
+        if (rule.has("match")) return SyntaxGrammar.Rule.match(rule.getString("match"), tokenType);
+        JSONArray words = rule.getJSONArray("words");
+        List<String> wordsList = new ArrayList<>(words.length());
+        for (int i = 0; i < words.length(); i++) wordsList.add(words.getString(i));
+        return SyntaxGrammar.Rule.words(wordsList, tokenType);
+    }
+
+    private static JSONObject readGrammar(AssetManager assets, String name) throws IOException {
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                assets.open(GRAMMARS_DIRECTORY + name + ".json"), "UTF-8"))) {
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) content.append(buffer, 0, read);
+        }
+
+        try {
+            return new JSONObject(content.toString());
+        } catch (JSONException e) {
+            throw new IOException("Invalid grammar " + name, e);
+        }
+    }
+}
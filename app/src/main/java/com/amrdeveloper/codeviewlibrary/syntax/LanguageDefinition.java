@@ -0,0 +1,109 @@
+package com.amrdeveloper.codeviewlibrary.syntax;
+
+import android.content.res.Resources;
+
+import com.amrdeveloper.codeview.Code;
+import com.amrdeveloper.codeview.SyntaxGrammar;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Everything the editor needs to know about a language, it's built once by LanguageRegistry and
+ * shared, so the lists and sets must not be changed, the themes are created when they are first used
+ */
+public final class LanguageDefinition {
+
+    private final LanguageName name;
+    private final Resources resources;
+    private final String[] keywords;
+    private final List<Code> codeList;
+    private final SyntaxGrammar grammar;
+    private final Set<Character> indentationStarts;
+    private final Set<Character> indentationEnds;
+    private final String commentStart;
+    private final String commentEnd;
+    private final String blockCommentStart;
+    private final String blockCommentEnd;
+    private final Map<ThemeName, LanguageTheme> themes = new EnumMap<>(ThemeName.class);
+
+    LanguageDefinition(LanguageName name, Resources resources, String[] keywords, List<Code> codeList,
+                       SyntaxGrammar grammar,
+                       Set<Character> indentationStarts, Set<Character> indentationEnds,
+                       String commentStart, String commentEnd,
+                       String blockCommentStart, String blockCommentEnd) {
+        this.name = name;
+        this.resources = resources;
+        this.keywords = keywords;
+        this.codeList = Collections.unmodifiableList(codeList);
+        this.grammar = grammar;
+        this.indentationStarts = Collections.unmodifiableSet(indentationStarts);
+        this.indentationEnds = Collections.unmodifiableSet(indentationEnds);
+        this.commentStart = commentStart;
+        this.commentEnd = commentEnd;
+        this.blockCommentStart = blockCommentStart;
+        this.blockCommentEnd = blockCommentEnd;
+    }
+
+    public LanguageName getName() {
+        return name;
+    }
+
+    public SyntaxGrammar getGrammar() {
+        return grammar;
+    }
+
+    public synchronized LanguageTheme getTheme(ThemeName theme) {
+        LanguageTheme languageTheme = themes.get(theme);
+        if (languageTheme == null) {
+            switch (name) {
+                case JAVA:
+                    languageTheme = JavaLanguage.getTheme(resources, theme);
+                    break;
+                case GO_LANG:
+                    languageTheme = GoLanguage.getTheme(resources, theme);
+                    break;
+                default:
+                    languageTheme = PythonLanguage.getTheme(resources, theme);
+                    break;
+            }
+            themes.put(theme, languageTheme);
+        }
+        return languageTheme;
+    }
+
+    public String[] getKeywords() {
+        return keywords.clone();
+    }
+
+    public List<Code> getCodeList() {
+        return codeList;
+    }
+
+    public Set<Character> getIndentationStarts() {
+        return indentationStarts;
+    }
+
+    public Set<Character> getIndentationEnds() {
+        return indentationEnds;
+    }
+
+    public String getCommentStart() {
+        return commentStart;
+    }
+
+    public String getCommentEnd() {
+        return commentEnd;
+    }
+
+    public String getBlockCommentStart() {
+        return blockCommentStart;
+    }
+
+    public String getBlockCommentEnd() {
+        return blockCommentEnd;
+    }
+}
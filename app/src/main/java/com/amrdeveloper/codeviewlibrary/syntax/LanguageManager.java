@@ -5,8 +5,6 @@ import android.content.Context;
 import com.amrdeveloper.codeview.Code;
 import com.amrdeveloper.codeview.CodeView;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -14,6 +12,7 @@ public class LanguageManager {
 
     private final Context context;
     private final CodeView codeView;
+    private LanguageName appliedLanguage;
 
     public LanguageManager(Context context, CodeView codeView) {
         this.context = context;
@@ -21,130 +20,54 @@ public class LanguageManager {
     }
 
     public void applyTheme(LanguageName language, ThemeName theme) {
-        switch (theme) {
-            case MONOKAI:
-                applyMonokaiTheme(language);
-                break;
-            case NOCTIS_WHITE:
-                applyNoctisWhiteTheme(language);
-                break;
-            case FIVE_COLOR:
-                applyFiveColorsDarkTheme(language);
-                break;
-            case ORANGE_BOX:
-                applyOrangeBoxTheme(language);
-                break;
-        }
+        LanguageDefinition definition = getLanguage(language);
+        LanguageTheme languageTheme = definition.getTheme(theme);
+        codeView.setBackgroundColor(languageTheme.getBackgroundColor());
+        codeView.setTextColor(languageTheme.getTextColor());
+        codeView.setSyntaxTheme(languageTheme.getTokenColors());
+
+        // Switching only the theme recolors the current tokens, the text is highlighted
+        // again only when the language grammar is changed
+        if (language == appliedLanguage) return;
+        appliedLanguage = language;
+        codeView.setSyntaxGrammar(definition.getGrammar());
+        codeView.resetHighlighter();
+        codeView.reHighlightSyntax();
+    }
+
+    public LanguageDefinition getLanguage(LanguageName language) {
+        return LanguageRegistry.getLanguage(context, language);
     }
 
     public String[] getLanguageKeywords(LanguageName language) {
-        switch (language) {
-            case JAVA: return JavaLanguage.getKeywords(context);
-            case PYTHON: return PythonLanguage.getKeywords(context);
-            case GO_LANG: return GoLanguage.getKeywords(context);
-            default: return new String[]{};
-        }
+        return getLanguage(language).getKeywords();
     }
 
     public List<Code> getLanguageCodeList(LanguageName language) {
-        switch (language) {
-            case JAVA: return JavaLanguage.getCodeList(context);
-            case PYTHON: return PythonLanguage.getCodeList(context);
-            case GO_LANG: return GoLanguage.getCodeList(context);
-            default: return new ArrayList<>();
-        }
+        return getLanguage(language).getCodeList();
     }
 
     public Set<Character> getLanguageIndentationStarts(LanguageName language) {
-        switch (language) {
-            case JAVA: return JavaLanguage.getIndentationStarts();
-            case PYTHON: return PythonLanguage.getIndentationStarts();
-            case GO_LANG: return GoLanguage.getIndentationStarts();
-            default: return new HashSet<>();
-        }
+        return getLanguage(language).getIndentationStarts();
     }
 
     public Set<Character> getLanguageIndentationEnds(LanguageName language) {
-        switch (language) {
-            case JAVA: return JavaLanguage.getIndentationEnds();
-            case PYTHON: return PythonLanguage.getIndentationEnds();
-            case GO_LANG: return GoLanguage.getIndentationEnds();
-            default: return new HashSet<>();
-        }
+        return getLanguage(language).getIndentationEnds();
     }
 
     public String getCommentStart(LanguageName language) {
-        switch (language) {
-            case JAVA: return JavaLanguage.getCommentStart();
-            case PYTHON: return PythonLanguage.getCommentStart();
-            case GO_LANG: return GoLanguage.getCommentStart();
-            default: return "";
-        }
+        return getLanguage(language).getCommentStart();
     }
 
     public String getCommentEnd(LanguageName language) {
-        switch (language) {
-            case JAVA: return JavaLanguage.getCommentEnd();
-            case PYTHON: return PythonLanguage.getCommentEnd();
-            case GO_LANG: return GoLanguage.getCommentEnd();
-            default: return "";
-        }
-    }
-
-    private void applyMonokaiTheme(LanguageName language) {
-        switch (language) {
-            case JAVA:
-                JavaLanguage.applyMonokaiTheme(context, codeView);
-                break;
-            case PYTHON:
-                PythonLanguage.applyMonokaiTheme(context, codeView);
-                break;
-            case GO_LANG:
-                GoLanguage.applyMonokaiTheme(context, codeView);
-                break;
-        }
+        return getLanguage(language).getCommentEnd();
     }
 
-    private void applyNoctisWhiteTheme(LanguageName language) {
-        switch (language) {
-            case JAVA:
-                JavaLanguage.applyNoctisWhiteTheme(context, codeView);
-                break;
-            case PYTHON:
-                PythonLanguage.applyNoctisWhiteTheme(context, codeView);
-                break;
-            case GO_LANG:
-                GoLanguage.applyNoctisWhiteTheme(context, codeView);
-                break;
-        }
+    public String getBlockCommentStart(LanguageName language) {
+        return getLanguage(language).getBlockCommentStart();
     }
 
-    private void applyFiveColorsDarkTheme(LanguageName language) {
-        switch (language) {
-            case JAVA:
-                JavaLanguage.applyFiveColorsDarkTheme(context, codeView);
-                break;
-            case PYTHON:
-                PythonLanguage.applyFiveColorsDarkTheme(context, codeView);
-                break;
-            case GO_LANG:
-                GoLanguage.applyFiveColorsDarkTheme(context, codeView);
-                break;
-        }
+    public String getBlockCommentEnd(LanguageName language) {
+        return getLanguage(language).getBlockCommentEnd();
     }
-
-    private void applyOrangeBoxTheme(LanguageName language) {
-        switch (language) {
-            case JAVA:
-                JavaLanguage.applyOrangeBoxTheme(context, codeView);
-                break;
-            case PYTHON:
-                PythonLanguage.applyOrangeBoxTheme(context, codeView);
-                break;
-            case GO_LANG:
-                GoLanguage.applyOrangeBoxTheme(context, codeView);
-                break;
-        }
-    }
-
 }
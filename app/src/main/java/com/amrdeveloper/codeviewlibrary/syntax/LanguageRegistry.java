@@ -0,0 +1,66 @@
+package com.amrdeveloper.codeviewlibrary.syntax;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import com.amrdeveloper.codeview.SyntaxGrammar;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/*
+ * Process wide cache of the language definitions, every language reads its resources, loads its grammar
+ * and creates its keywords list one time, then switching between languages only uses the cached objects
+ */
+public final class LanguageRegistry {
+
+    private static final Map<LanguageName, LanguageDefinition> definitions = new EnumMap<>(LanguageName.class);
+
+    private LanguageRegistry() {
+    }
+
+    public static synchronized LanguageDefinition getLanguage(Context context, LanguageName language) {
+        LanguageDefinition definition = definitions.get(language);
+        if (definition == null) {
+            definition = createLanguage(context.getApplicationContext(), language);
+            definitions.put(language, definition);
+        }
+        return definition;
+    }
+
+    private static LanguageDefinition createLanguage(Context context, LanguageName language) {
+        Resources resources = context.getResources();
+        switch (language) {
+            case JAVA:
+                return new LanguageDefinition(language, resources,
+                        JavaLanguage.getKeywords(context), JavaLanguage.getCodeList(context),
+                        loadGrammar(context, "java"),
+                        JavaLanguage.getIndentationStarts(), JavaLanguage.getIndentationEnds(),
+                        JavaLanguage.getCommentStart(), JavaLanguage.getCommentEnd(),
+                        JavaLanguage.getBlockCommentStart(), JavaLanguage.getBlockCommentEnd());
+            case GO_LANG:
+                return new LanguageDefinition(language, resources,
+                        GoLanguage.getKeywords(context), GoLanguage.getCodeList(context),
+                        loadGrammar(context, "go"),
+                        GoLanguage.getIndentationStarts(), GoLanguage.getIndentationEnds(),
+                        GoLanguage.getCommentStart(), GoLanguage.getCommentEnd(),
+                        GoLanguage.getBlockCommentStart(), GoLanguage.getBlockCommentEnd());
+            default:
+                return new LanguageDefinition(language, resources,
+                        PythonLanguage.getKeywords(context), PythonLanguage.getCodeList(context),
+                        loadGrammar(context, "python"),
+                        PythonLanguage.getIndentationStarts(), PythonLanguage.getIndentationEnds(),
+                        PythonLanguage.getCommentStart(), PythonLanguage.getCommentEnd(),
+                        PythonLanguage.getBlockCommentStart(), PythonLanguage.getBlockCommentEnd());
+        }
+    }
+
+    private static SyntaxGrammar loadGrammar(Context context, String name) {
+        try {
+            return GrammarLoader.load(context.getAssets(), name);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't load the grammar " + name, e);
+        }
+    }
+}
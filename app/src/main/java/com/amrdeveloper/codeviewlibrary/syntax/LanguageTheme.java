@@ -0,0 +1,33 @@
+package com.amrdeveloper.codeviewlibrary.syntax;
+
+import java.util.Collections;
+import java.util.Map;
+
+/*
+ * The colors of a language in one theme keyed by the token types of the language patterns,
+ * it's immutable so it can be shared by all the editors
+ */
+public final class LanguageTheme {
+
+    private final int backgroundColor;
+    private final int textColor;
+    private final Map<String, Integer> tokenColors;
+
+    public LanguageTheme(int backgroundColor, int textColor, Map<String, Integer> tokenColors) {
+        this.backgroundColor = backgroundColor;
+        this.textColor = textColor;
+        this.tokenColors = Collections.unmodifiableMap(tokenColors);
+    }
+
+    public int getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    public int getTextColor() {
+        return textColor;
+    }
+
+    public Map<String, Integer> getTokenColors() {
+        return tokenColors;
+    }
+}
@@ -4,146 +4,124 @@ import android.content.Context;
 import android.content.res.Resources;
 
 import com.amrdeveloper.codeview.Code;
-import com.amrdeveloper.codeview.CodeView;
 import com.amrdeveloper.codeview.Keyword;
 import com.amrdeveloper.codeviewlibrary.R;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 public class PythonLanguage {
 
-    //Language Keywords
-    private static final Pattern PATTERN_KEYWORDS = Pattern.compile("\\b(False|await|else|import|pass|None|break|except|in|raise" +
-            "|True|class|finally|is|return|and|continue|for|lambda" +
-            "|try|as|def|from|nonlocal|while|assert|del|global|not" +
-            "|with|async|elif|if|or|yield)\\b");
-
-    //Brackets and Colons
-    private static final Pattern PATTERN_BUILTINS = Pattern.compile("[,:;[->]{}()]");
-
-    //Data
-    private static final Pattern PATTERN_NUMBERS = Pattern.compile("\\b(\\d*[.]?\\d+)\\b");
-    private static final Pattern PATTERN_CHAR = Pattern.compile("['](.*?)[']");
-    private static final Pattern PATTERN_STRING = Pattern.compile("[\"](.*?)[\"]");
-    private static final Pattern PATTERN_HEX = Pattern.compile("0x[0-9a-fA-F]+");
-    private static final Pattern PATTERN_TODO_COMMENT = Pattern.compile("#TODO[^\n]*");
-    private static final Pattern PATTERN_ATTRIBUTE = Pattern.compile("\\.[a-zA-Z0-9_]+");
-    private static final Pattern PATTERN_OPERATION =Pattern.compile( ":|==|>|<|!=|>=|<=|->|=|>|<|%|-|-=|%=|\\+|\\-|\\-=|\\+=|\\^|\\&|\\|::|\\?|\\*");
-    private static final Pattern PATTERN_HASH_COMMENT = Pattern.compile("#(?!TODO )[^\\n]*");
-
-    public static void applyMonokaiTheme(Context context, CodeView codeView) {
-        codeView.resetSyntaxPatternList();
-        codeView.resetHighlighter();
+    public static LanguageTheme getTheme(Resources resources, ThemeName theme) {
+        switch (theme) {
+            case NOCTIS_WHITE: return getNoctisWhiteTheme(resources);
+            case FIVE_COLOR: return getFiveColorsDarkTheme(resources);
+            case ORANGE_BOX: return getOrangeBoxTheme(resources);
+            default: return getMonokaiTheme(resources);
+        }
+    }
 
-        Resources resources = context.getResources();
+    private static LanguageTheme getMonokaiTheme(Resources resources) {
+        Map<String, Integer> tokenColors = new HashMap<>();
 
         //View Background
-        codeView.setBackgroundColor(codeView.getResources().getColor(R.color.monokia_pro_black));
+        int backgroundColor = resources.getColor(R.color.monokia_pro_black);
 
         //Syntax Colors
-        codeView.addSyntaxPattern(PATTERN_HEX, context.getResources().getColor(R.color.monokia_pro_purple));
-        codeView.addSyntaxPattern(PATTERN_CHAR, context.getResources().getColor(R.color.monokia_pro_green));
-        codeView.addSyntaxPattern(PATTERN_STRING, context.getResources().getColor(R.color.monokia_pro_orange));
-        codeView.addSyntaxPattern(PATTERN_NUMBERS, context.getResources().getColor(R.color.monokia_pro_purple));
-        codeView.addSyntaxPattern(PATTERN_KEYWORDS, context.getResources().getColor(R.color.monokia_pro_pink));
-        codeView.addSyntaxPattern(PATTERN_BUILTINS, context.getResources().getColor(R.color.monokia_pro_white));
-        codeView.addSyntaxPattern(PATTERN_HASH_COMMENT, context.getResources().getColor(R.color.monokia_pro_grey));
-        codeView.addSyntaxPattern(PATTERN_ATTRIBUTE, context.getResources().getColor(R.color.monokia_pro_sky));
-        codeView.addSyntaxPattern(PATTERN_OPERATION, context.getResources().getColor(R.color.monokia_pro_pink));
+        tokenColors.put("hex", resources.getColor(R.color.monokia_pro_purple));
+        tokenColors.put("char", resources.getColor(R.color.monokia_pro_green));
+        tokenColors.put("string", resources.getColor(R.color.monokia_pro_orange));
+        tokenColors.put("numbers", resources.getColor(R.color.monokia_pro_purple));
+        tokenColors.put("keywords", resources.getColor(R.color.monokia_pro_pink));
+        tokenColors.put("builtins", resources.getColor(R.color.monokia_pro_white));
+        tokenColors.put("hash_comment", resources.getColor(R.color.monokia_pro_grey));
+        tokenColors.put("attribute", resources.getColor(R.color.monokia_pro_sky));
+        tokenColors.put("operation", resources.getColor(R.color.monokia_pro_pink));
         //Default Color
-        codeView.setTextColor(context.getResources().getColor(R.color.monokia_pro_white));
+        int textColor = resources.getColor(R.color.monokia_pro_white);
 
-        codeView.addSyntaxPattern(PATTERN_TODO_COMMENT, context.getResources().getColor(R.color.gold));
+        tokenColors.put("todo_comment", resources.getColor(R.color.gold));
 
-        codeView.reHighlightSyntax();
+        return new LanguageTheme(backgroundColor, textColor, tokenColors);
     }
 
-    public static void applyNoctisWhiteTheme(Context context, CodeView codeView) {
-        codeView.resetSyntaxPatternList();
-        codeView.resetHighlighter();
-
-        Resources resources = context.getResources();
+    private static LanguageTheme getNoctisWhiteTheme(Resources resources) {
+        Map<String, Integer> tokenColors = new HashMap<>();
 
         //View Background
-        codeView.setBackgroundColor(resources.getColor(R.color.noctis_white));
+        int backgroundColor = resources.getColor(R.color.noctis_white);
 
         //Syntax Colors
-        codeView.addSyntaxPattern(PATTERN_HEX, resources.getColor(R.color.noctis_purple));
-        codeView.addSyntaxPattern(PATTERN_CHAR, resources.getColor(R.color.noctis_green));
-        codeView.addSyntaxPattern(PATTERN_STRING, resources.getColor(R.color.noctis_green));
-        codeView.addSyntaxPattern(PATTERN_NUMBERS, resources.getColor(R.color.noctis_purple));
-        codeView.addSyntaxPattern(PATTERN_KEYWORDS, resources.getColor(R.color.noctis_pink));
-        codeView.addSyntaxPattern(PATTERN_BUILTINS, resources.getColor(R.color.noctis_dark_blue));
-        codeView.addSyntaxPattern(PATTERN_HASH_COMMENT, resources.getColor(R.color.noctis_grey));
-        codeView.addSyntaxPattern(PATTERN_ATTRIBUTE, resources.getColor(R.color.noctis_blue));
-        codeView.addSyntaxPattern(PATTERN_OPERATION, resources.getColor(R.color.monokia_pro_pink));
+        tokenColors.put("hex", resources.getColor(R.color.noctis_purple));
+        tokenColors.put("char", resources.getColor(R.color.noctis_green));
+        tokenColors.put("string", resources.getColor(R.color.noctis_green));
+        tokenColors.put("numbers", resources.getColor(R.color.noctis_purple));
+        tokenColors.put("keywords", resources.getColor(R.color.noctis_pink));
+        tokenColors.put("builtins", resources.getColor(R.color.noctis_dark_blue));
+        tokenColors.put("hash_comment", resources.getColor(R.color.noctis_grey));
+        tokenColors.put("attribute", resources.getColor(R.color.noctis_blue));
+        tokenColors.put("operation", resources.getColor(R.color.monokia_pro_pink));
 
         //Default Color
-        codeView.setTextColor(resources.getColor(R.color.noctis_orange));
+        int textColor = resources.getColor(R.color.noctis_orange);
 
-        codeView.addSyntaxPattern(PATTERN_TODO_COMMENT, resources.getColor(R.color.gold));
+        tokenColors.put("todo_comment", resources.getColor(R.color.gold));
 
-        codeView.reHighlightSyntax();
+        return new LanguageTheme(backgroundColor, textColor, tokenColors);
     }
 
-    public static void applyFiveColorsDarkTheme(Context context, CodeView codeView) {
-        codeView.resetSyntaxPatternList();
-        codeView.resetHighlighter();
-
-        Resources resources = context.getResources();
+    private static LanguageTheme getFiveColorsDarkTheme(Resources resources) {
+        Map<String, Integer> tokenColors = new HashMap<>();
 
         //View Background
-        codeView.setBackgroundColor(resources.getColor(R.color.five_dark_black));
+        int backgroundColor = resources.getColor(R.color.five_dark_black);
 
         //Syntax Colors
-        codeView.addSyntaxPattern(PATTERN_HEX, resources.getColor(R.color.five_dark_purple));
-        codeView.addSyntaxPattern(PATTERN_CHAR, resources.getColor(R.color.five_dark_yellow));
-        codeView.addSyntaxPattern(PATTERN_STRING, resources.getColor(R.color.five_dark_yellow));
-        codeView.addSyntaxPattern(PATTERN_NUMBERS, resources.getColor(R.color.five_dark_purple));
-        codeView.addSyntaxPattern(PATTERN_KEYWORDS, resources.getColor(R.color.five_dark_purple));
-        codeView.addSyntaxPattern(PATTERN_BUILTINS, resources.getColor(R.color.five_dark_white));
-        codeView.addSyntaxPattern(PATTERN_HASH_COMMENT, resources.getColor(R.color.five_dark_grey));
-        codeView.addSyntaxPattern(PATTERN_ATTRIBUTE, resources.getColor(R.color.five_dark_blue));
-        codeView.addSyntaxPattern(PATTERN_OPERATION, resources.getColor(R.color.five_dark_purple));
+        tokenColors.put("hex", resources.getColor(R.color.five_dark_purple));
+        tokenColors.put("char", resources.getColor(R.color.five_dark_yellow));
+        tokenColors.put("string", resources.getColor(R.color.five_dark_yellow));
+        tokenColors.put("numbers", resources.getColor(R.color.five_dark_purple));
+        tokenColors.put("keywords", resources.getColor(R.color.five_dark_purple));
+        tokenColors.put("builtins", resources.getColor(R.color.five_dark_white));
+        tokenColors.put("hash_comment", resources.getColor(R.color.five_dark_grey));
+        tokenColors.put("attribute", resources.getColor(R.color.five_dark_blue));
+        tokenColors.put("operation", resources.getColor(R.color.five_dark_purple));
 
         //Default Color
-        codeView.setTextColor(resources.getColor(R.color.five_dark_white));
+        int textColor = resources.getColor(R.color.five_dark_white);
 
-        codeView.addSyntaxPattern(PATTERN_TODO_COMMENT, resources.getColor(R.color.gold));
+        tokenColors.put("todo_comment", resources.getColor(R.color.gold));
 
-        codeView.reHighlightSyntax();
+        return new LanguageTheme(backgroundColor, textColor, tokenColors);
     }
 
-    public static void applyOrangeBoxTheme(Context context, CodeView codeView) {
-        codeView.resetSyntaxPatternList();
-        codeView.resetHighlighter();
-
-        Resources resources = context.getResources();
+    private static LanguageTheme getOrangeBoxTheme(Resources resources) {
+        Map<String, Integer> tokenColors = new HashMap<>();
 
         //View Background
-        codeView.setBackgroundColor(resources.getColor(R.color.orange_box_black));
+        int backgroundColor = resources.getColor(R.color.orange_box_black);
 
         //Syntax Colors
-        codeView.addSyntaxPattern(PATTERN_HEX, resources.getColor(R.color.gold));
-        codeView.addSyntaxPattern(PATTERN_CHAR, resources.getColor(R.color.orange_box_orange2));
-        codeView.addSyntaxPattern(PATTERN_STRING, resources.getColor(R.color.orange_box_orange2));
-        codeView.addSyntaxPattern(PATTERN_NUMBERS, resources.getColor(R.color.five_dark_purple));
-        codeView.addSyntaxPattern(PATTERN_KEYWORDS, resources.getColor(R.color.orange_box_orange1));
-        codeView.addSyntaxPattern(PATTERN_BUILTINS, resources.getColor(R.color.orange_box_grey));
-        codeView.addSyntaxPattern(PATTERN_HASH_COMMENT, resources.getColor(R.color.orange_box_dark_grey));
-        codeView.addSyntaxPattern(PATTERN_ATTRIBUTE, resources.getColor(R.color.orange_box_orange3));
-        codeView.addSyntaxPattern(PATTERN_OPERATION, resources.getColor(R.color.gold));
+        tokenColors.put("hex", resources.getColor(R.color.gold));
+        tokenColors.put("char", resources.getColor(R.color.orange_box_orange2));
+        tokenColors.put("string", resources.getColor(R.color.orange_box_orange2));
+        tokenColors.put("numbers", resources.getColor(R.color.five_dark_purple));
+        tokenColors.put("keywords", resources.getColor(R.color.orange_box_orange1));
+        tokenColors.put("builtins", resources.getColor(R.color.orange_box_grey));
+        tokenColors.put("hash_comment", resources.getColor(R.color.orange_box_dark_grey));
+        tokenColors.put("attribute", resources.getColor(R.color.orange_box_orange3));
+        tokenColors.put("operation", resources.getColor(R.color.gold));
 
         //Default Color
-        codeView.setTextColor(resources.getColor(R.color.five_dark_white));
+        int textColor = resources.getColor(R.color.five_dark_white);
 
-        codeView.addSyntaxPattern(PATTERN_TODO_COMMENT, context.getResources().getColor(R.color.gold));
+        tokenColors.put("todo_comment", resources.getColor(R.color.gold));
 
-        codeView.reHighlightSyntax();
+        return new LanguageTheme(backgroundColor, textColor, tokenColors);
     }
 
     public static String[] getKeywords(Context context) {
@@ -176,4 +154,12 @@ public class PythonLanguage {
     public static String getCommentEnd() {
         return "";
     }
+
+    public static String getBlockCommentStart() {
+        return "";
+    }
+
+    public static String getBlockCommentEnd() {
+        return "";
+    }
 }
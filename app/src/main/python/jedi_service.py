@@ -0,0 +1,80 @@
+"""
+Completion worker of JediCompletionService, it keeps a copy of the editor text that is updated
+with the edits only, and reuses the jedi script while the text is not changed
+
+All the functions are called from the service thread, so the state has no locks
+"""
+
+import jedi
+
+# The same path for every script lets parso reparse only the changed part of the text
+_PATH = "editor.py"
+
+
+class _Buffer:
+
+    def __init__(self):
+        self.text = ""
+        self.version = 0
+        # The text has characters that are two UTF-16 units in Java
+        self.wide = False
+        self.script = None
+        self.script_version = -1
+        self.cached_position = None
+        self.cached_names = None
+
+    def reset(self, text):
+        self.text = text
+        self.wide = _has_wide_chars(text)
+        self.version += 1
+
+    def apply_edit(self, start, end, text):
+        start = self._index(start)
+        end = self._index(end)
+        self.text = self.text[:start] + text + self.text[end:]
+        self.wide = self.wide or _has_wide_chars(text)
+        self.version += 1
+
+    def complete(self, line, column):
+        position = (self.version, line, column)
+        if position == self.cached_position:
+            return self.cached_names
+
+        if self.script_version != self.version:
+            self.script = jedi.Script(self.text, path=_PATH)
+            self.script_version = self.version
+
+        names = [completion.name for completion in self.script.complete(line, column)]
+        self.cached_position = position
+        self.cached_names = names
+        return names
+
+    # Convert a Java UTF-16 offset to an index of the Python string
+    def _index(self, offset):
+        if not self.wide:
+            return offset
+        units = 0
+        for index, char in enumerate(self.text):
+            if units >= offset:
+                return index
+            units += 2 if ord(char) > 0xFFFF else 1
+        return len(self.text)
+
+
+def _has_wide_chars(text):
+    return any(ord(char) > 0xFFFF for char in text)
+
+
+_buffer = _Buffer()
+
+
+def reset(text):
+    _buffer.reset(text)
+
+
+def apply_edit(start, end, text):
+    _buffer.apply_edit(start, end, text)
+
+
+def complete(line, column):
+    return _buffer.complete(line, column)
@@ -0,0 +1,85 @@
+package com.amrdeveloper.codeviewlibrary.plugin;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CommentLinesTest {
+
+    @Test
+    public void comment_mixedIndentationIsCommentedAtTheLineStart() {
+        String text = "\tint a;\n    int b;\n \t int c;";
+        assertEquals("//\tint a;\n//    int b;\n// \t int c;", comment(text, 0, text.length(), "//", ""));
+    }
+
+    @Test
+    public void comment_partiallyCommentedSelectionKeepsTheCommentedLines() {
+        String text = "/*a*/\nb\n/*c\nd*/";
+        assertEquals("/*a*/\n/*b*/\n/*c*/\n/*d*/", comment(text, 0, text.length(), "/*", "*/"));
+    }
+
+    @Test
+    public void comment_selectionInsideLinesCommentsTheWholeLines() {
+        String text = "one\ntwo\nthree\n";
+        assertEquals("one\n//two\n//three\n", comment(text, 5, 10, "//", ""));
+        // The line after a selected line break is not selected
+        assertEquals("//one\ntwo\nthree\n", comment(text, 1, 4, "//", ""));
+    }
+
+    @Test
+    public void comment_lastLineWithoutLineBreak() {
+        assertEquals("a\n#b", comment("a\nb", 2, 3, "#", ""));
+        assertEquals("<!--a-->\n<!--b-->", comment("a\nb", 0, 3, "<!--", "-->"));
+        assertEquals("#a\n", comment("a\n", 0, 2, "#", ""));
+    }
+
+    @Test
+    public void unComment_partiallyCommentedSelectionChangesOnlyTheCommentedLines() {
+        String text = "//a\nb\n  //c\n//d";
+        assertEquals("a\nb\n  //c\nd", unComment(text, 0, text.length(), "//", ""));
+        // A line needs both the comment start and end
+        String blocks = "/*a*/\n/*b\nc*/";
+        assertEquals("a\n/*b\nc*/", unComment(blocks, 0, blocks.length(), "/*", "*/"));
+    }
+
+    @Test
+    public void unComment_lastLineWithoutLineBreak() {
+        assertEquals("//a\nb", unComment("//a\n//b", 4, 7, "//", ""));
+        assertEquals("a\nb", unComment("/*a*/\n/*b*/", 0, 11, "/*", "*/"));
+    }
+
+    @Test
+    public void emptySelectionHasNoEdits() {
+        assertTrue(CommentLines.comment("a", 1, 1, "//", "").isEmpty());
+        assertTrue(CommentLines.unComment("//a", 0, 0, "//", "").isEmpty());
+    }
+
+    @Test
+    public void unComment_revertsComment() {
+        String text = "\tif (a) {\n  b();\n}\n";
+        String commented = comment(text, 0, text.length(), "/*", "*/");
+        assertEquals(text, unComment(commented, 0, commented.length(), "/*", "*/"));
+    }
+
+    private static String comment(String text, int start, int end, String commentStart, String commentEnd) {
+        return apply(text, CommentLines.comment(text, start, end, commentStart, commentEnd));
+    }
+
+    private static String unComment(String text, int start, int end, String commentStart, String commentEnd) {
+        return apply(text, CommentLines.unComment(text, start, end, commentStart, commentEnd));
+    }
+
+    private static String apply(String text, List<CommentLines.Edit> edits) {
+        StringBuilder builder = new StringBuilder(text);
+        int previousStart = Integer.MAX_VALUE;
+        for (CommentLines.Edit edit : edits) {
+            // Every edit is before the previous one so its positions are not moved
+            assertTrue(edit.end <= previousStart);
+            builder.replace(edit.start, edit.end, edit.text);
+            previousStart = edit.start;
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package com.amrdeveloper.codeviewlibrary.plugin;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DefaultUndoGroupingPolicyTest {
+
+    private final DefaultUndoGroupingPolicy policy = new DefaultUndoGroupingPolicy(1000);
+
+    @Test
+    public void isNewGroup_timeGapAfterTheIdleTimeout() {
+        UndoGroupingPolicy.Edit previous = insert(4, "a", 0);
+        assertFalse(policy.isNewGroup(previous, insert(5, "b", 1000)));
+        assertTrue(policy.isNewGroup(previous, insert(5, "b", 1001)));
+    }
+
+    @Test
+    public void isNewGroup_wordBoundary() {
+        // Typing the letters of a word and the space after it is one group
+        assertFalse(policy.isNewGroup(insert(4, "a", 0), insert(5, "b", 10)));
+        assertFalse(policy.isNewGroup(insert(5, "b", 0), insert(6, " ", 10)));
+        // The first letter after a space starts a new word
+        assertTrue(policy.isNewGroup(insert(6, " ", 0), insert(7, "c", 10)));
+        // A new line starts a new group even after a letter
+        assertTrue(policy.isNewGroup(insert(5, "b", 0), insert(6, "\n", 10)));
+    }
+
+    @Test
+    public void isNewGroup_cursorJump() {
+        UndoGroupingPolicy.Edit previous = insert(4, "a", 0);
+        assertTrue(policy.isNewGroup(previous, insert(20, "b", 10)));
+        assertTrue(policy.isNewGroup(previous, insert(2, "b", 10)));
+        // Deleting at another place is a jump too
+        UndoGroupingPolicy.Edit delete = new UndoGroupingPolicy.Edit(9, "x", "", 0);
+        assertTrue(policy.isNewGroup(delete, new UndoGroupingPolicy.Edit(3, "y", "", 10)));
+        assertFalse(policy.isNewGroup(delete, new UndoGroupingPolicy.Edit(8, "y", "", 10)));
+    }
+
+    @Test
+    public void isNewGroup_composingWordReplacementIsContinuous() {
+        UndoGroupingPolicy.Edit previous = new UndoGroupingPolicy.Edit(4, "he", "hel", 0);
+        assertFalse(policy.isNewGroup(previous, new UndoGroupingPolicy.Edit(4, "hel", "hell", 10)));
+    }
+
+    private static UndoGroupingPolicy.Edit insert(int start, String text, long time) {
+        return new UndoGroupingPolicy.Edit(start, "", text, time);
+    }
+}
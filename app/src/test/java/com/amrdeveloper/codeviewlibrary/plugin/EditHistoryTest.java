@@ -0,0 +1,99 @@
+package com.amrdeveloper.codeviewlibrary.plugin;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EditHistoryTest {
+
+    @Test
+    public void setMaxHistorySize_dropsTheOldestNodes() {
+        UndoRedoManager.EditHistory history = new UndoRedoManager.EditHistory();
+        for (int i = 0; i < 5; i++) history.add(new UndoRedoManager.EditNode(i, "", "a"));
+        history.setMaxHistorySize(3);
+        assertEquals(3, history.size);
+        assertEquals(3, history.position);
+        assertEquals(2, history.baseIndex);
+        assertEquals(2, history.get(0).start);
+    }
+
+    @Test
+    public void compact_mergesSmallNeighbours() {
+        UndoRedoManager.EditHistory history = new UndoRedoManager.EditHistory();
+        history.add(new UndoRedoManager.EditNode(0, "", "ab"));
+        history.add(new UndoRedoManager.EditNode(2, "", "cd"));
+        history.add(new UndoRedoManager.EditNode(10, "", "x"));
+        history.compact();
+        assertEquals(2, history.size);
+        assertEquals(2, history.position);
+        assertEquals(1, history.compactions);
+        assertEquals("abcd", history.get(0).after);
+        assertEquals(history.get(0).bytes() + history.get(1).bytes(), history.historyBytes);
+    }
+
+    @Test
+    public void compact_neverMergesAcrossThePosition() {
+        UndoRedoManager.EditHistory history = new UndoRedoManager.EditHistory();
+        history.add(new UndoRedoManager.EditNode(0, "", "a"));
+        history.add(new UndoRedoManager.EditNode(1, "", "b"));
+        history.getPrevious();
+        history.compact();
+        assertEquals(2, history.size);
+        assertEquals(1, history.position);
+        assertEquals(0, history.compactions);
+    }
+
+    @Test
+    public void compact_keepsUndoAndRedoTexts() {
+        Random random = new Random(33);
+        for (int run = 0; run < 500; run++) {
+            UndoRedoManager.EditHistory history = new UndoRedoManager.EditHistory();
+            List<String> texts = new ArrayList<>();
+            String text = RandomText.of(random, random.nextInt(20), "abc");
+            texts.add(text);
+            int edits = 1 + random.nextInt(30);
+            for (int i = 0; i < edits; i++) {
+                int start = random.nextInt(text.length() + 1);
+                int end = start + random.nextInt(Math.min(2, text.length() - start) + 1);
+                String inserted = RandomText.of(random, random.nextInt(3), "abc");
+                history.add(new UndoRedoManager.EditNode(start, text.substring(start, end), inserted));
+                text = text.substring(0, start) + inserted + text.substring(end);
+                texts.add(text);
+            }
+
+            // Undo some edits so the position is in the middle of the history
+            int position = random.nextInt(history.size + 1);
+            while (history.position > position) text = undo(text, history.getPrevious());
+            assertEquals(texts.get(position), text);
+
+            history.compact();
+            assertTrue(history.size <= edits);
+
+            String current = text;
+            int compactedPosition = history.position;
+            while (history.position > 0) text = undo(text, history.getPrevious());
+            assertEquals(texts.get(0), text);
+            UndoRedoManager.EditNode node;
+            while ((node = history.getNext()) != null) text = redo(text, node);
+            assertEquals(texts.get(texts.size() - 1), text);
+
+            // The compacted position still has the text of the old position
+            while (history.position > compactedPosition) text = undo(text, history.getPrevious());
+            assertEquals(current, text);
+        }
+    }
+
+    private static String undo(String text, UndoRedoManager.EditNode node) {
+        assertEquals(node.after, text.substring(node.start, node.start + node.after.length()));
+        return text.substring(0, node.start) + node.before + text.substring(node.start + node.after.length());
+    }
+
+    private static String redo(String text, UndoRedoManager.EditNode node) {
+        assertEquals(node.before, text.substring(node.start, node.start + node.before.length()));
+        return text.substring(0, node.start) + node.after + text.substring(node.start + node.before.length());
+    }
+}
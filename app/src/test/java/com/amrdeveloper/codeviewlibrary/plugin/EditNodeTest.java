@@ -0,0 +1,84 @@
+package com.amrdeveloper.codeviewlibrary.plugin;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EditNodeTest {
+
+    @Test
+    public void merge_typingAfterTheNode() {
+        UndoRedoManager.EditNode node = new UndoRedoManager.EditNode(3, "", "a");
+        assertTrue(node.merge(4, "", "b"));
+        assertEquals(3, node.start);
+        assertEquals("", node.before);
+        assertEquals("ab", node.after);
+    }
+
+    @Test
+    public void merge_deletingBeforeTheNode() {
+        // "hello" -> "helo" -> "heo"
+        UndoRedoManager.EditNode node = new UndoRedoManager.EditNode(3, "l", "");
+        assertTrue(node.merge(2, "l", ""));
+        assertEquals(2, node.start);
+        assertEquals("ll", node.before);
+        assertEquals("", node.after);
+    }
+
+    @Test
+    public void merge_farEditIsNotMerged() {
+        UndoRedoManager.EditNode node = new UndoRedoManager.EditNode(3, "", "ab");
+        assertFalse(node.merge(6, "x", ""));
+        assertFalse(node.merge(0, "x", ""));
+        assertEquals(3, node.start);
+        assertEquals("ab", node.after);
+    }
+
+    @Test
+    public void merge_matchesTheEditsReplayedOnTheText() {
+        Random random = new Random(32);
+        for (int run = 0; run < 2000; run++) {
+            String base = RandomText.of(random, random.nextInt(30), "abc");
+            String text = base;
+
+            int[] edit = randomEdit(random, text);
+            String removed = text.substring(edit[0], edit[1]);
+            String inserted = RandomText.of(random, edit[2], "abc");
+            UndoRedoManager.EditNode node = new UndoRedoManager.EditNode(edit[0], removed, inserted);
+            text = apply(text, edit[0], edit[1], inserted);
+
+            for (int i = 0; i < 10; i++) {
+                edit = randomEdit(random, text);
+                removed = text.substring(edit[0], edit[1]);
+                inserted = RandomText.of(random, edit[2], "abc");
+                int end = node.start + node.after.length();
+                boolean touches = edit[0] <= end && edit[1] >= node.start;
+
+                String edited = apply(text, edit[0], edit[1], inserted);
+                assertEquals(touches, node.merge(edit[0], removed, inserted));
+                if (!touches) {
+                    node = new UndoRedoManager.EditNode(edit[0], removed, inserted);
+                    base = text;
+                }
+                text = edited;
+
+                // Redo from the node base and undo back to it with the node alone
+                assertEquals(text, apply(base, node.start, node.start + node.before.length(), node.after));
+                assertEquals(base, apply(text, node.start, node.start + node.after.length(), node.before));
+            }
+        }
+    }
+
+    private static String apply(String text, int start, int end, String replacement) {
+        return text.substring(0, start) + replacement + text.substring(end);
+    }
+
+    // The start, the end and the inserted length of a small random edit
+    private static int[] randomEdit(Random random, String text) {
+        int start = random.nextInt(text.length() + 1);
+        int end = start + random.nextInt(Math.min(3, text.length() - start) + 1);
+        return new int[]{start, end, random.nextInt(3)};
+    }
+}
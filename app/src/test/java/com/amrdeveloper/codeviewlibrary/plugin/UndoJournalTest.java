@@ -0,0 +1,217 @@
+package com.amrdeveloper.codeviewlibrary.plugin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class UndoJournalTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("journal", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void reopen_restoresTheNodesOfTheCheckpoint() throws IOException {
+        UndoJournal journal = new UndoJournal(directory);
+        journal.appendNode(0, 0, "", "a");
+        journal.appendNode(1, 1, "", "b");
+        journal.appendNode(2, 2, "", "c");
+        journal.appendPosition(2);
+        journal.appendCheckpoint(2, 2, UndoJournal.checksum("ab"));
+        journal.close();
+
+        journal = new UndoJournal(directory);
+        UndoJournal.Reader reader = journal.openReader(2, UndoJournal.checksum("ab"));
+        assertEquals(3, reader.getSize());
+        assertEquals(2, reader.getPosition());
+        assertEquals("c", reader.next().after);
+        assertEquals("b", reader.next().after);
+        assertEquals("a", reader.next().after);
+        assertNull(reader.next());
+        reader.close();
+        journal.close();
+    }
+
+    @Test
+    public void openReader_usesTheCheckpointOfTheSameText() throws IOException {
+        UndoJournal journal = new UndoJournal(directory);
+        journal.appendNode(0, 0, "", "ab");
+        journal.appendCheckpoint(1, 2, UndoJournal.checksum("ab"));
+        journal.appendNode(1, 2, "", "c");
+        journal.appendCheckpoint(2, 3, UndoJournal.checksum("abc"));
+
+        // Same length but another content
+        UndoJournal.Reader reader = journal.openReader(2, UndoJournal.checksum("ba"));
+        assertEquals(0, reader.getSize());
+        reader.close();
+
+        reader = journal.openReader(2, UndoJournal.checksum("ab"));
+        assertEquals(1, reader.getSize());
+        assertEquals(1, reader.getPosition());
+        assertEquals("ab", reader.next().after);
+        assertNull(reader.next());
+        long checkpointEnd = reader.getCheckpointEnd();
+        reader.close();
+
+        // The records of the newer text are dropped
+        journal.truncate(checkpointEnd);
+        assertEquals(0, journal.openReader(3, UndoJournal.checksum("abc")).getSize());
+        journal.close();
+    }
+
+    @Test
+    public void reopen_dropsTheCorruptedTail() throws IOException {
+        UndoJournal journal = new UndoJournal(directory);
+        journal.appendNode(0, 0, "", "a");
+        journal.appendCheckpoint(1, 1, UndoJournal.checksum("a"));
+        journal.appendNode(1, 1, "", "b");
+        journal.appendCheckpoint(2, 2, UndoJournal.checksum("ab"));
+        journal.close();
+
+        File file = new File(directory, UndoJournal.FILE_NAME);
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.setLength(raw.length() - 3);
+        raw.seek(raw.length());
+        raw.write(new byte[]{1, 2, 3, 4, 5, 6, 7});
+        raw.close();
+
+        journal = new UndoJournal(directory);
+        assertEquals(0, journal.openReader(2, UndoJournal.checksum("ab")).getSize());
+        UndoJournal.Reader reader = journal.openReader(1, UndoJournal.checksum("a"));
+        assertEquals(1, reader.getSize());
+        assertEquals("a", reader.next().after);
+        reader.close();
+
+        // New records are appended after the last valid record
+        journal.appendNode(1, 1, "", "c");
+        journal.appendCheckpoint(2, 2, UndoJournal.checksum("ac"));
+        journal.close();
+        journal = new UndoJournal(directory);
+        reader = journal.openReader(2, UndoJournal.checksum("ac"));
+        assertEquals(2, reader.getSize());
+        assertEquals("c", reader.next().after);
+        assertEquals("a", reader.next().after);
+        reader.close();
+        journal.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void openReader_corruptedLengthInTheMiddle() throws IOException {
+        UndoJournal journal = new UndoJournal(directory);
+        journal.appendNode(0, 0, "", "a");
+        journal.appendNode(1, 1, "", "b");
+        journal.appendCheckpoint(2, 2, UndoJournal.checksum("ab"));
+        journal.close();
+
+        // The trailing length of the second record, before the checkpoint record of 13 bytes
+        File file = new File(directory, UndoJournal.FILE_NAME);
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.seek(raw.length() - (13 + 12) - 4);
+        raw.writeInt(Integer.MAX_VALUE);
+        raw.close();
+
+        journal = new UndoJournal(directory);
+        try {
+            UndoJournal.Reader reader = journal.openReader(2, UndoJournal.checksum("ab"));
+            reader.next();
+            reader.next();
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void rewrite_replacesTheJournal() throws IOException {
+        UndoJournal journal = new UndoJournal(directory);
+        journal.appendNode(0, 0, "", "a");
+        journal.appendNode(1, 1, "", "b");
+        journal.rewrite(Arrays.asList(new UndoJournal.Entry(0, 0, "", "ab")), 1);
+        journal.appendCheckpoint(1, 2, UndoJournal.checksum("ab"));
+        journal.close();
+
+        assertFalse(new File(directory, UndoJournal.FILE_NAME + ".tmp").exists());
+        journal = new UndoJournal(directory);
+        UndoJournal.Reader reader = journal.openReader(2, UndoJournal.checksum("ab"));
+        assertEquals(1, reader.getSize());
+        assertEquals("ab", reader.next().after);
+        assertNull(reader.next());
+        reader.close();
+        journal.close();
+    }
+
+    @Test
+    public void largeNode_isWrittenAsParts() throws IOException {
+        char[] chars = new char[1000];
+        for (int i = 0; i < chars.length; i++) chars[i] = (char) ('a' + i % 26);
+        String paste = new String(chars);
+
+        UndoJournal journal = new UndoJournal(directory, 64);
+        journal.appendNode(0, 0, "", "x");
+        journal.appendNode(1, 1, "", paste);
+        journal.appendCheckpoint(2, 1 + paste.length(), UndoJournal.checksum("x" + paste));
+        journal.close();
+
+        journal = new UndoJournal(directory, 64);
+        UndoJournal.Reader reader = journal.openReader(1 + paste.length(), UndoJournal.checksum("x" + paste));
+        assertEquals(2, reader.getSize());
+        assertEquals(paste, reader.next().after);
+        assertEquals("x", reader.next().after);
+        reader.close();
+        journal.close();
+    }
+
+    @Test
+    public void largeNode_partsOfUnfinishedNodeAreSkipped() throws IOException {
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'p');
+        String paste = new String(chars);
+
+        UndoJournal journal = new UndoJournal(directory, 64);
+        journal.appendNode(0, 0, "", "x");
+        journal.appendCheckpoint(1, 1, UndoJournal.checksum("x"));
+        journal.appendNode(1, 1, "", paste);
+        journal.close();
+
+        // Lose the last parts of the node like a crash in the middle of writing it
+        File file = new File(directory, UndoJournal.FILE_NAME);
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.setLength(raw.length() - 200);
+        raw.close();
+
+        journal = new UndoJournal(directory, 64);
+        journal.appendNode(1, 1, "", "y");
+        journal.appendCheckpoint(2, 2, UndoJournal.checksum("xy"));
+        UndoJournal.Reader reader = journal.openReader(2, UndoJournal.checksum("xy"));
+        assertEquals(2, reader.getSize());
+        assertEquals("y", reader.next().after);
+        assertEquals("x", reader.next().after);
+        assertNull(reader.next());
+        reader.close();
+        journal.close();
+    }
+
+    @Test
+    public void checksum_dependsOnTheOrder() {
+        assertEquals(UndoJournal.checksum("abc"), UndoJournal.checksum(new StringBuilder("abc")));
+        assertNotEquals(UndoJournal.checksum("ab"), UndoJournal.checksum("ba"));
+    }
+}
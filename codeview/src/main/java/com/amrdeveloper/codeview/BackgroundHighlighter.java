@@ -0,0 +1,203 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.amrdeveloper.codeview;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Highlight a full text on a background thread into a SpanBuffer, shared by CodeView and CodeViewer
+ *
+ * A pattern that runs for more than the pattern timeout is found by a watchdog on the main thread,
+ * it's disabled and its thread is abandoned because the matcher of Android can't be stopped,
+ * then the highlight runs again on a new thread without it
+ *
+ * @since 1.3.6
+ */
+final class BackgroundHighlighter {
+
+    private static final String TAG = "CodeView";
+
+    /**
+     * Receive the spans of the highlighted text
+     * @param <T> The type of the prepared result
+     */
+    abstract static class Callback<T> {
+
+        /**
+         * Called on the highlighter thread to prepare the spans for the main thread
+         */
+        abstract T prepare(SpanBuffer spans);
+
+        /**
+         * Called on the main thread with the prepared result
+         */
+        abstract void onHighlighted(T result);
+    }
+
+    private final PatternGuard guard;
+    private final Handler handler;
+    private final PatternWorker worker;
+    private Pass pass;
+    // The guard of the pass that runs on the worker thread now, it can be a cancelled pass
+    private volatile PatternGuard runningGuard;
+
+    BackgroundHighlighter(PatternGuard guard, Handler handler, String threadName) {
+        this.guard = guard;
+        this.handler = handler;
+        this.worker = new PatternWorker(threadName);
+    }
+
+    /**
+     * Highlight the text with copies of the patterns, the callback is not called if the highlight
+     * is cancelled or started again before it's finished
+     * @param text An immutable text
+     * @param syntaxPatterns Map of Patterns and Colors
+     * @param tokenPatterns Map of Patterns and token type ids of the palette
+     * @param grammar The grammar of the text or null
+     * @param typeIds The palette token type id of every grammar rule
+     * @param palette The palette of the token types colors
+     * @param callback The receiver of the spans
+     */
+    void start(CharSequence text, Map<Pattern, Integer> syntaxPatterns, Map<Pattern, Integer> tokenPatterns,
+               SyntaxGrammar grammar, int[] typeIds, SyntaxPalette palette, Callback<?> callback) {
+        cancel();
+        pass = new Pass(text, new HashMap<>(syntaxPatterns), new LinkedHashMap<>(tokenPatterns),
+                grammar, typeIds, palette, callback);
+        runPass(pass);
+    }
+
+    /**
+     * @return {@code true} if a highlight is running and its callback is not called yet
+     */
+    boolean isRunning() {
+        return pass != null;
+    }
+
+    /**
+     * Drop the current highlight, its thread stops before its next pattern
+     */
+    void cancel() {
+        handler.removeCallbacks(watchdog);
+        if (pass == null) return;
+        if (pass.task != null) pass.task.cancel(true);
+        pass = null;
+    }
+
+    /**
+     * Cancel the current highlight and stop the thread
+     */
+    void shutdown() {
+        cancel();
+        runningGuard = null;
+        worker.abandon();
+    }
+
+    private void runPass(final Pass current) {
+        final PatternGuard passGuard = guard.newPass();
+        current.task = worker.submit(new Runnable() {
+            @Override
+            public void run() {
+                runningGuard = passGuard;
+                SpanBuffer spans = new SpanBuffer(current.text);
+                SyntaxHighlighter.highlight(spans, current.syntaxPatterns, passGuard);
+                SyntaxHighlighter.highlightTokens(spans, current.tokenPatterns, current.palette, passGuard);
+                if (current.grammar != null) {
+                    SyntaxHighlighter.highlightGrammar(spans, current.grammar, current.typeIds,
+                            current.palette, passGuard);
+                }
+                if (Thread.currentThread().isInterrupted()) return;
+                post(current, current.callback, spans);
+            }
+        });
+        if (current.task == null) {
+            Log.w(TAG, "Highlight skipped, the threads of slow patterns are still running");
+            pass = null;
+            return;
+        }
+        handler.postDelayed(watchdog, guard.getTimeout());
+    }
+
+    private <T> void post(final Pass current, final Callback<T> callback, SpanBuffer spans) {
+        final T result = callback.prepare(spans);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (pass != current) return;
+                handler.removeCallbacks(watchdog);
+                pass = null;
+                callback.onHighlighted(result);
+            }
+        });
+    }
+
+    private final Runnable watchdog = new Runnable() {
+        @Override
+        public void run() {
+            if (pass == null) return;
+            PatternGuard passGuard = runningGuard;
+            PatternGuard.GuardedText running = passGuard != null ? passGuard.getRunning() : null;
+            long now = SystemClock.uptimeMillis();
+            if (running == null || running.getDeadline() > now) {
+                long delay = running == null ? guard.getTimeout() : running.getDeadline() - now;
+                handler.postDelayed(this, Math.max(1, delay));
+                return;
+            }
+            guard.disable(running.getPattern());
+            runningGuard = null;
+            worker.abandon();
+            runPass(pass);
+        }
+    };
+
+    private static final class Pass {
+        final CharSequence text;
+        final Map<Pattern, Integer> syntaxPatterns;
+        final Map<Pattern, Integer> tokenPatterns;
+        final SyntaxGrammar grammar;
+        final int[] typeIds;
+        final SyntaxPalette palette;
+        final Callback<?> callback;
+        Future<?> task;
+
+        Pass(CharSequence text, Map<Pattern, Integer> syntaxPatterns, Map<Pattern, Integer> tokenPatterns,
+             SyntaxGrammar grammar, int[] typeIds, SyntaxPalette palette, Callback<?> callback) {
+            this.text = text;
+            this.syntaxPatterns = syntaxPatterns;
+            this.tokenPatterns = tokenPatterns;
+            this.grammar = grammar;
+            this.typeIds = typeIds;
+            this.palette = palette;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.amrdeveloper.codeview;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Incremental index of the bracket positions in the source code, brackets inside strings
+ * and comments are skipped
+ *
+ * The brackets are stored in a treap ordered by position, every node keeps the nesting depth
+ * aggregates of its subtree so the matching bracket can be found in O(log n), and positions are
+ * shifted lazily so an edit only re-scans the lines that it touched
+ *
+ * @since 1.3.6
+ */
+final class BracketIndex {
+
+    private static final int NOT_FOUND = -1;
+    private static final int UNCLOSED = Integer.MAX_VALUE;
+
+    private String openBrackets = "([{";
+    private String closeBrackets = ")]}";
+
+    private String lineComment = "";
+    private String blockCommentStart = "";
+    private String blockCommentEnd = "";
+    private final Set<Character> quotes = new HashSet<>();
+
+    // Sorted and non overlapping block comments ranges as [start, end) pairs
+    private int[] blockComments = new int[16];
+    private int blockCommentsSize = 0;
+
+    private Node root;
+    private final Random random = new Random();
+
+    BracketIndex() {
+        quotes.add('"');
+        quotes.add('\'');
+    }
+
+    void setBracketPairs(Map<Character, Character> pairs) {
+        StringBuilder opens = new StringBuilder();
+        StringBuilder closes = new StringBuilder();
+        for (Map.Entry<Character, Character> pair : pairs.entrySet()) {
+            opens.append(pair.getKey());
+            closes.append(pair.getValue());
+        }
+        openBrackets = opens.toString();
+        closeBrackets = closes.toString();
+    }
+
+    void setComments(String line, String blockStart, String blockEnd) {
+        lineComment = line == null ? "" : line;
+        boolean hasBlock = blockStart != null && !blockStart.isEmpty()
+                && blockEnd != null && !blockEnd.isEmpty();
+        blockCommentStart = hasBlock ? blockStart : "";
+        blockCommentEnd = hasBlock ? blockEnd : "";
+    }
+
+    void setQuotes(Set<Character> characters) {
+        quotes.clear();
+        quotes.addAll(characters);
+    }
+
+    void clear() {
+        root = null;
+        blockCommentsSize = 0;
+    }
+
+    /**
+     * Drop the current index and scan the full text again
+     */
+    void rebuild(CharSequence text) {
+        clear();
+        root = scan(text, 0, text.length());
+    }
+
+    /**
+     * Update the index after {@code before} characters starting from {@code start}
+     * are replaced by {@code count} new characters, with the same arguments as
+     * {@link android.text.TextWatcher#onTextChanged(CharSequence, int, int, int)}
+     */
+    void onTextChanged(CharSequence text, int start, int before, int count) {
+        final int delta = count - before;
+        int regionStart = lineStart(text, start);
+        int newEnd = lineEnd(text, start + count);
+        int oldEnd = newEnd - delta;
+
+        if (!blockCommentStart.isEmpty()) {
+            int first = firstCommentEndingAfter(regionStart);
+            boolean touchComment = first < blockCommentsSize && blockComments[first * 2] <= oldEnd;
+            boolean hasDelimiter = contains(text, regionStart, newEnd, blockCommentStart)
+                    || contains(text, regionStart, newEnd, blockCommentEnd);
+
+            if (touchComment && !hasDelimiter && isInsideComment(first, regionStart, oldEnd)) {
+                // Typing inside a block comment just makes it longer or shorter
+                shiftComments(first, delta);
+                blockComments[first * 2] -= delta;
+                root = shiftFrom(root, oldEnd, delta);
+                return;
+            }
+
+            if (touchComment || hasDelimiter) {
+                // The comment ranges after the edit may change so scan until the end of text
+                if (touchComment) regionStart = Math.min(regionStart, blockComments[first * 2]);
+                newEnd = text.length();
+                oldEnd = newEnd - delta;
+            }
+
+            removeComments(regionStart, oldEnd, delta);
+        }
+
+        Node[] parts = split(root, regionStart);
+        Node[] tail = split(parts[1], oldEnd);
+        shift(tail[1], delta);
+        root = merge(merge(parts[0], scan(text, regionStart, newEnd)), tail[1]);
+    }
+
+    /**
+     * @return true if there is an indexed bracket on this position
+     */
+    boolean isBracket(int position) {
+        return find(position) != null;
+    }
+
+    /**
+     * @return The position of the bracket that match the bracket on {@code position}
+     * or -1 if there is no indexed bracket on it or it has no matching one
+     */
+    int findMatchingBracket(int position) {
+        Node[] parts = split(root, position);
+        Node[] middle = split(parts[1], position + 1);
+        Node bracket = middle[0];
+        int result = NOT_FOUND;
+
+        if (bracket != null) {
+            int before = sum(parts[0]);
+            if (bracket.value > 0) {
+                // The first close bracket after it that returns to the same depth
+                Node match = firstAtMost(middle[1], before + 1, before);
+                if (match != null && isPair(bracket.bracket, match.bracket)) result = match.position;
+            } else {
+                // The open bracket directly after the last position that has the same depth
+                int depth = before - 1;
+                int rank = lastAtMost(parts[0], 0, 0, depth);
+                Node match = (rank == NOT_FOUND && depth < 0) ? null : nodeAt(parts[0], rank + 1);
+                if (match != null && match.value > 0 && isPair(match.bracket, bracket.bracket)) {
+                    result = match.position;
+                }
+            }
+        }
+
+        root = merge(parts[0], merge(bracket, middle[1]));
+        return result;
+    }
+
+    /**
+     * @return The [start, end) range of the block comment that contains the position including
+     * its delimiters, the end of an unclosed comment is the text length, or null if the position
+     * is not inside a block comment
+     */
+    int[] findBlockComment(int position, int textLength) {
+        int index = firstCommentEndingAfter(position);
+        if (index == blockCommentsSize || blockComments[index * 2] > position) return null;
+        int end = blockComments[index * 2 + 1];
+        return new int[]{blockComments[index * 2], end == UNCLOSED ? textLength : end};
+    }
+
+    /**
+     * @return The number of indexed brackets
+     */
+    int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    private boolean isPair(char open, char close) {
+        int index = openBrackets.indexOf(open);
+        return index >= 0 && closeBrackets.charAt(index) == close;
+    }
+
+    private Node scan(CharSequence text, int start, int end) {
+        Node result = null;
+        final boolean hasLineComment = !lineComment.isEmpty();
+        final boolean hasBlockComment = !blockCommentStart.isEmpty();
+
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (hasBlockComment && regionMatches(text, i, end, blockCommentStart)) {
+                int commentEnd = indexOf(text, i + blockCommentStart.length(), end, blockCommentEnd);
+                if (commentEnd == NOT_FOUND) {
+                    // Unclosed comment takes the rest of the text whatever is added after it
+                    insertComment(i, UNCLOSED);
+                    i = end;
+                } else {
+                    commentEnd += blockCommentEnd.length();
+                    insertComment(i, commentEnd);
+                    i = commentEnd;
+                }
+            } else if (hasLineComment && regionMatches(text, i, end, lineComment)) {
+                i = lineEnd(text, i);
+            } else if (quotes.contains(c)) {
+                i = skipString(text, i, end, c);
+            } else {
+                int open = openBrackets.indexOf(c);
+                if (open >= 0 || closeBrackets.indexOf(c) >= 0) {
+                    result = merge(result, new Node(i, c, open >= 0 ? 1 : -1, random.nextInt()));
+                }
+                i++;
+            }
+        }
+        return result;
+    }
+
+    private static int skipString(CharSequence text, int start, int end, char quote) {
+        int i = start + 1;
+        while (i < end) {
+            char c = text.charAt(i);
+            // A string never takes the next line so an edit only re-scans its own lines
+            if (c == '\n') return i;
+            else if (c == '\\' && i + 1 < end && text.charAt(i + 1) != '\n') i += 2;
+            else if (c == quote) return i + 1;
+            else i++;
+        }
+        return end;
+    }
+
+    private boolean isInsideComment(int index, int start, int end) {
+        int commentStart = blockComments[index * 2];
+        int commentEnd = blockComments[index * 2 + 1];
+        if (commentEnd == UNCLOSED) return commentStart < start;
+        return commentStart < start && end <= commentEnd - blockCommentEnd.length();
+    }
+
+    private int firstCommentEndingAfter(int position) {
+        int low = 0;
+        int high = blockCommentsSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockComments[mid * 2 + 1] <= position) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private void removeComments(int start, int oldEnd, int delta) {
+        int first = firstCommentEndingAfter(start);
+        int last = first;
+        while (last < blockCommentsSize && blockComments[last * 2] < oldEnd) last++;
+        int removed = last - first;
+        if (removed > 0) {
+            System.arraycopy(blockComments, last * 2, blockComments, first * 2, (blockCommentsSize - last) * 2);
+            blockCommentsSize -= removed;
+        }
+        shiftComments(first, delta);
+    }
+
+    private void shiftComments(int from, int delta) {
+        for (int i = from * 2; i < blockCommentsSize * 2; i++) {
+            if (blockComments[i] != UNCLOSED) blockComments[i] += delta;
+        }
+    }
+
+    private void insertComment(int start, int end) {
+        if (blockCommentsSize * 2 == blockComments.length) {
+            int[] grown = new int[blockComments.length * 2];
+            System.arraycopy(blockComments, 0, grown, 0, blockComments.length);
+            blockComments = grown;
+        }
+        int index = firstCommentEndingAfter(start);
+        System.arraycopy(blockComments, index * 2, blockComments, index * 2 + 2, (blockCommentsSize - index) * 2);
+        blockComments[index * 2] = start;
+        blockComments[index * 2 + 1] = end;
+        blockCommentsSize++;
+    }
+
+    private static int lineStart(CharSequence text, int position) {
+        int i = Math.min(position, text.length());
+        while (i > 0 && text.charAt(i - 1) != '\n') i--;
+        return i;
+    }
+
+    private static int lineEnd(CharSequence text, int position) {
+        int length = text.length();
+        int i = position;
+        while (i < length && text.charAt(i) != '\n') i++;
+        return i;
+    }
+
+    private static boolean regionMatches(CharSequence text, int offset, int end, String value) {
+        int length = value.length();
+        if (offset + length > end) return false;
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(offset + i) != value.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence text, int start, int end, String value) {
+        for (int i = start; i + value.length() <= end; i++) {
+            if (regionMatches(text, i, end, value)) return i;
+        }
+        return NOT_FOUND;
+    }
+
+    private static boolean contains(CharSequence text, int start, int end, String value) {
+        return !value.isEmpty() && indexOf(text, start, end, value) != NOT_FOUND;
+    }
+
+    // Treap operations
+
+    private static final class Node {
+        int position;
+        final char bracket;
+        final int value;
+        final int priority;
+
+        Node left;
+        Node right;
+        int lazyShift;
+
+        int size;
+        int sum;
+        int minPrefix;
+
+        Node(int position, char bracket, int value, int priority) {
+            this.position = position;
+            this.bracket = bracket;
+            this.value = value;
+            this.priority = priority;
+            update();
+        }
+
+        void update() {
+            int leftSum = left == null ? 0 : left.sum;
+            size = 1 + (left == null ? 0 : left.size) + (right == null ? 0 : right.size);
+            sum = leftSum + value + (right == null ? 0 : right.sum);
+            minPrefix = leftSum + value;
+            if (left != null) minPrefix = Math.min(minPrefix, left.minPrefix);
+            if (right != null) minPrefix = Math.min(minPrefix, leftSum + value + right.minPrefix);
+        }
+
+        void push() {
+            if (lazyShift == 0) return;
+            shift(left, lazyShift);
+            shift(right, lazyShift);
+            lazyShift = 0;
+        }
+    }
+
+    private static void shift(Node node, int delta) {
+        if (node == null || delta == 0) return;
+        node.position += delta;
+        node.lazyShift += delta;
+    }
+
+    private static int sum(Node node) {
+        return node == null ? 0 : node.sum;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Split the tree into nodes with position less than {@code position} and the rest
+     */
+    private static Node[] split(Node node, int position) {
+        if (node == null) return new Node[]{null, null};
+        node.push();
+        if (node.position < position) {
+            Node[] parts = split(node.right, position);
+            node.right = parts[0];
+            node.update();
+            parts[0] = node;
+            return parts;
+        } else {
+            Node[] parts = split(node.left, position);
+            node.left = parts[1];
+            node.update();
+            parts[1] = node;
+            return parts;
+        }
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.push();
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        } else {
+            right.push();
+            right.left = merge(left, right.left);
+            right.update();
+            return right;
+        }
+    }
+
+    private static Node shiftFrom(Node node, int position, int delta) {
+        Node[] parts = split(node, position);
+        shift(parts[1], delta);
+        return merge(parts[0], parts[1]);
+    }
+
+    private Node find(int position) {
+        Node node = root;
+        while (node != null) {
+            node.push();
+            if (node.position == position) return node;
+            node = position < node.position ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * @return The first node where the running depth starting from {@code offset} is at most {@code depth}
+     */
+    private static Node firstAtMost(Node node, int offset, int depth) {
+        while (node != null && offset + node.minPrefix <= depth) {
+            node.push();
+            if (node.left != null && offset + node.left.minPrefix <= depth) {
+                node = node.left;
+                continue;
+            }
+            offset += sum(node.left) + node.value;
+            if (offset <= depth) return node;
+            node = node.right;
+        }
+        return null;
+    }
+
+    /**
+     * @return The rank of the last node where the running depth starting from {@code offset}
+     * is at most {@code depth}, or -1 if there is no such node
+     */
+    private static int lastAtMost(Node node, int offset, int rank, int depth) {
+        int result = NOT_FOUND;
+        while (node != null && offset + node.minPrefix <= depth) {
+            node.push();
+            int leftSum = sum(node.left);
+            int current = offset + leftSum + node.value;
+            int currentRank = rank + size(node.left);
+            if (node.right != null && current + node.right.minPrefix <= depth) {
+                offset = current;
+                rank = currentRank + 1;
+                node = node.right;
+            } else if (current <= depth) {
+                return currentRank;
+            } else {
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    private static Node nodeAt(Node node, int rank) {
+        while (node != null) {
+            node.push();
+            int leftSize = size(node.left);
+            if (rank < leftSize) {
+                node = node.left;
+            } else if (rank == leftSize) {
+                return node;
+            } else {
+                rank -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return null;
+    }
+}
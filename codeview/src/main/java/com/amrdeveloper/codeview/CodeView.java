@@ -29,6 +29,7 @@ import android.content.res.Resources;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.Typeface;
 import android.graphics.Rect;
 import android.os.Handler;
@@ -37,7 +38,6 @@ import android.text.Editable;
 import android.text.InputFilter;
 import android.text.Layout;
 import android.text.Spannable;
-import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.TextWatcher;
 import android.text.style.BackgroundColorSpan;
@@ -48,20 +48,36 @@ import android.util.AttributeSet;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputConnectionWrapper;
 import android.widget.MultiAutoCompleteTextView;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.appcompat.widget.AppCompatMultiAutoCompleteTextView;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -79,8 +95,27 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
     private boolean modified = true;
     private boolean highlightWhileTextChanging = true;
 
-    private boolean hasErrors = false;
     private boolean mRemoveErrorsWhenTextChanged = true;
+    private final DiagnosticTree mDiagnostics = new DiagnosticTree();
+    private final Set<Diagnostic> mErrorLines = new HashSet<>();
+    private final List<Diagnostic> mVisibleDiagnostics = new ArrayList<>();
+    private final Paint mDiagnosticPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path mSquigglePath = new Path();
+    private final float mDensity = Resources.getSystem().getDisplayMetrics().density;
+
+    private DiagnosticsProvider mDiagnosticsProvider;
+    private ExecutorService mDiagnosticsExecutor;
+    private Future<?> mDiagnosticsTask;
+    private int mDiagnosticsDelayTime = 500;
+
+    private CompletionProvider mCompletionProvider;
+    private ExecutorService mCompletionExecutor;
+    private Future<?> mCompletionTask;
+    private CompletionResults mCompletionResults;
+    private final CompletionCache mCompletionCache = new CompletionCache();
+    private int mCompletionDelayTime = 100;
+    private boolean mBlockCompletions = false;
+    private final int[] mSeverityColors = {0xFFF44336, 0xFFFFC107, 0xFF2196F3, 0xFF9E9E9E};
 
     private Rect lineNumberRect;
     private Paint lineNumberPaint;
@@ -95,22 +130,56 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
     private int matchingColor = Color.YELLOW;
     private CharacterStyle currentMatchedToken;
     private final List<Token> matchedTokens = new ArrayList<>();
+    private final PatternWorker mSearchWorker = new PatternWorker("CodeView search");
+    private Future<?> mSearchTask;
+    private Runnable mSearchTimeout;
 
     private int maxNumberOfSuggestions = Integer.MAX_VALUE;
     private int autoCompleteItemHeightInDp = (int) (50 * Resources.getSystem().getDisplayMetrics().density);
 
     private boolean enablePairComplete = false;
     private boolean enablePairCompleteCenterCursor = false;
+    private int pairCompleteCursorPosition = -1;
+    private boolean mUserInput = false;
     private final Map<Character, Character> mPairCompleteMap = new HashMap<>();
 
+    private boolean enableBracketMatching = false;
+    private int bracketMatchingColor = Color.GRAY;
+    private final CharacterStyle[] currentMatchedBrackets = new CharacterStyle[2];
+    private final BracketIndex mBracketIndex = new BracketIndex();
+
+    private final List<TabWidthSpan> mTabWidthSpansPool = new ArrayList<>();
+
+    private boolean enableDocumentModel = false;
+    private Rope mDocument = Rope.EMPTY;
+    private boolean mSnapshotsEnabled = false;
+    private TextSnapshot mSnapshot;
+    private long mTextVersion = 0;
+
+    private LineIndex mLineIndex;
+    private OnSourcePositionChangedListener mSourcePositionListener;
+
+    private TextFileLoader mFileLoader;
+    private ExecutorService mBackgroundExecutor;
+
     private final Handler mUpdateHandler = new Handler();
     private MultiAutoCompleteTextView.Tokenizer mAutoCompleteTokenizer;
 
-    private static final Pattern PATTERN_LINE = Pattern.compile("(^.+$)+", Pattern.MULTILINE);
     private static final Pattern PATTERN_TRAILING_WHITE_SPACE = Pattern.compile("[\\t ]+$", Pattern.MULTILINE);
 
-    private final SortedMap<Integer, Integer> mErrorHashSet = new TreeMap<>();
     private final Map<Pattern, Integer> mSyntaxPatternMap = new HashMap<>();
+    private final Map<Pattern, Integer> mTokenPatternMap = new LinkedHashMap<>();
+    private final SyntaxPalette mSyntaxPalette = new SyntaxPalette();
+    private final SyntaxColorRefresher mSyntaxColorRefresher = new SyntaxColorRefresher();
+    private SyntaxGrammar mSyntaxGrammar;
+    private int[] mSyntaxGrammarTypeIds;
+    private final PatternGuard mPatternGuard = new PatternGuard();
+    private final BackgroundHighlighter mBackgroundHighlighter =
+            new BackgroundHighlighter(mPatternGuard, mUpdateHandler, "CodeView highlighter");
+    private static final int HIGHLIGHT_SPANS_PER_STEP = 4000;
+    private SpanBuffer mHighlightSpans;
+    private long mHighlightSpansVersion;
+    private int mHighlightStep;
 
     public CodeView(Context context) {
         super(context);
@@ -133,13 +202,31 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
 
         setTokenizer(mAutoCompleteTokenizer);
         setHorizontallyScrolling(true);
-        setFilters(new InputFilter[]{mInputFilter});
+        setFilters(new InputFilter[]{mInputFilter, mPairCompleteFilter});
         addTextChangedListener(mEditorTextWatcher);
         setOnKeyListener(mOnKeyListener);
 
         lineNumberRect = new Rect();
         lineNumberPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         lineNumberPaint.setStyle(Paint.Style.FILL);
+        mDiagnosticPaint.setStrokeWidth(mDensity);
+    }
+
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        boolean userInput = mUserInput;
+        mUserInput = true;
+        try {
+            return super.onKeyDown(keyCode, event);
+        } finally {
+            mUserInput = userInput;
+        }
+    }
+
+    @Override
+    public InputConnection onCreateInputConnection(EditorInfo outAttrs) {
+        InputConnection connection = super.onCreateInputConnection(outAttrs);
+        return connection == null ? null : new UserInputConnection(connection);
     }
 
     @Override
@@ -163,18 +250,104 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
             setPadding(paddingLeft, getPaddingTop(), getPaddingRight(), getPaddingBottom());
         }
         super.onDraw(canvas);
+        drawDiagnostics(canvas);
     }
 
+    // The diagnostics are drawn over the text of the visible lines only, so changing them never touches the text spans
+    private void drawDiagnostics(Canvas canvas) {
+        final Layout layout = getLayout();
+        if (layout == null || mDiagnostics.size() == 0) return;
+
+        final int textTop = getExtendedPaddingTop();
+        final int textLeft = getCompoundPaddingLeft();
+        final int firstLine = layout.getLineForVertical(getScrollY() - textTop);
+        final int lastLine = layout.getLineForVertical(getScrollY() + getHeight() - textTop);
+        final int length = layout.getText().length();
+
+        mVisibleDiagnostics.clear();
+        mDiagnostics.query(layout.getLineStart(firstLine), layout.getLineEnd(lastLine), mVisibleDiagnostics);
+        if (mVisibleDiagnostics.isEmpty()) return;
+
+        // The most important diagnostics are drawn last so they are over the others
+        Collections.sort(mVisibleDiagnostics, new Comparator<Diagnostic>() {
+            @Override
+            public int compare(Diagnostic first, Diagnostic second) {
+                return second.getSeverity().ordinal() - first.getSeverity().ordinal();
+            }
+        });
+
+        final float markerWidth = 3 * mDensity;
+        final float markerLeft = getScrollX() + textLeft - markerWidth - 2 * mDensity;
+        for (Diagnostic diagnostic : mVisibleDiagnostics) {
+            final int start = Math.min(diagnostic.getStart(), length);
+            final int end = Math.min(diagnostic.getEnd(), length);
+            final int startLine = Math.max(layout.getLineForOffset(start), firstLine);
+            final int endLine = Math.min(layout.getLineForOffset(end), lastLine);
+            mDiagnosticPaint.setColor(getDiagnosticColor(diagnostic));
+
+            if (enableLineNumber) {
+                mDiagnosticPaint.setStyle(Paint.Style.FILL);
+                canvas.drawRect(markerLeft, textTop + layout.getLineTop(startLine),
+                        markerLeft + markerWidth, textTop + layout.getLineBottom(endLine), mDiagnosticPaint);
+            }
+
+            mDiagnosticPaint.setStyle(Paint.Style.STROKE);
+            for (int line = startLine; line <= endLine; line++) {
+                float left = layout.getPrimaryHorizontal(Math.max(start, layout.getLineStart(line)));
+                float right = end < layout.getLineEnd(line) || line == layout.getLineCount() - 1
+                        ? layout.getPrimaryHorizontal(end) : layout.getLineRight(line);
+                // An empty range is drawn under the character after it
+                if (right - left < 4 * mDensity) right = left + 4 * mDensity;
+                float bottom = textTop + layout.getLineBottom(line) - 2 * mDensity;
+                drawSquiggle(canvas, textLeft + left, textLeft + right, bottom);
+            }
+        }
+    }
+
+    private void drawSquiggle(Canvas canvas, float left, float right, float bottom) {
+        final float step = 2 * mDensity;
+        mSquigglePath.reset();
+        mSquigglePath.moveTo(left, bottom);
+        boolean up = true;
+        for (float x = left + step; x < right + step; x += step) {
+            mSquigglePath.lineTo(Math.min(x, right), up ? bottom - step : bottom);
+            up = !up;
+        }
+        canvas.drawPath(mSquigglePath, mDiagnosticPaint);
+    }
+
+    /**
+     * @deprecated It blocks the main thread until the search is finished or the pattern timeout,
+     * use {@link #findMatches(String, OnMatchesFoundListener)}
+     */
+    @Deprecated
     @Override
     public List<Token> findMatches(String regex) {
+        cancelSearch();
         matchedTokens.clear();
         if (regex.isEmpty()) return matchedTokens;
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(getText());
-        while (matcher.find()) matchedTokens.add(new Token(matcher.start(), matcher.end()));
+        SearchResult result = waitForSearch(regex, newSearchTask(regex, null, false));
+        if (result != null) matchedTokens.addAll(result.matches);
         return matchedTokens;
     }
 
+    /**
+     * Find all the tokens that match the regex on a background thread and save them as the current
+     * matches, the listener is not called if the text is changed or another search is started first
+     * @param regex The regex used to find tokens
+     * @param listener The listener of the matched tokens
+     * @since 1.3.6
+     */
+    public void findMatches(String regex, OnMatchesFoundListener listener) {
+        cancelSearch();
+        matchedTokens.clear();
+        if (regex.isEmpty()) {
+            listener.onMatchesFound(matchedTokens);
+            return;
+        }
+        startSearch(regex, newSearchTask(regex, null, false), false, listener);
+    }
+
     @Override
     public Token findNextMatch() {
         if (matchedTokens.isEmpty()) return null;
@@ -205,58 +378,279 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
         matchedTokens.clear();
     }
 
+    /**
+     * @deprecated It blocks the main thread until the search is finished or the pattern timeout,
+     * use {@link #replaceFirstMatch(String, String, OnMatchesFoundListener)}
+     */
+    @Deprecated
     @Override
     public void replaceFirstMatch(String regex, String replacement) {
-        Pattern pattern = Pattern.compile(regex);
-        String text = pattern.matcher(getText().toString()).replaceFirst(replacement);
-        setTextHighlighted(text);
+        cancelSearch();
+        SearchResult result = waitForSearch(regex, newSearchTask(regex, replacement, false));
+        if (result != null) setTextHighlighted(result.text);
     }
 
+    /**
+     * @deprecated It blocks the main thread until the search is finished or the pattern timeout,
+     * use {@link #replaceAllMatches(String, String, OnMatchesFoundListener)}
+     */
+    @Deprecated
     @Override
     public void replaceAllMatches(String regex, String replacement) {
-        Pattern pattern = Pattern.compile(regex);
-        String text = pattern.matcher(getText().toString()).replaceAll(replacement);
-        setTextHighlighted(text);
+        cancelSearch();
+        SearchResult result = waitForSearch(regex, newSearchTask(regex, replacement, true));
+        if (result != null) setTextHighlighted(result.text);
+    }
+
+    /**
+     * Replace the first token that matches the regex, the regex runs on a background thread and the
+     * text is replaced on the main thread, it's not replaced if the text is changed first
+     * @param regex The regex used to find the token
+     * @param replacement The replacement of the token like Matcher replaceFirst
+     * @param listener The listener of the replaced token
+     * @since 1.3.6
+     */
+    public void replaceFirstMatch(String regex, String replacement, OnMatchesFoundListener listener) {
+        cancelSearch();
+        startSearch(regex, newSearchTask(regex, replacement, false), true, listener);
     }
 
-    private void highlightSyntax(Editable editable) {
-        if(mSyntaxPatternMap.isEmpty()) return;
+    /**
+     * Replace all the tokens that match the regex, the regex runs on a background thread and the
+     * text is replaced on the main thread, it's not replaced if the text is changed first
+     * @param regex The regex used to find the tokens
+     * @param replacement The replacement of the tokens like Matcher replaceAll
+     * @param listener The listener of the replaced tokens
+     * @since 1.3.6
+     */
+    public void replaceAllMatches(String regex, String replacement, OnMatchesFoundListener listener) {
+        cancelSearch();
+        startSearch(regex, newSearchTask(regex, replacement, true), true, listener);
+    }
+
+    // The search matches, and the replaced text if it's a replace
+    private static final class SearchResult {
+        final List<Token> matches = new ArrayList<>();
+        String text;
+    }
+
+    // Find the matches like Matcher find, or replace them like Matcher replaceFirst and replaceAll if
+    // the replacement is not null, the regex is compiled on the calling thread so its errors are thrown
+    // to the caller, and the task reads the immutable snapshot of the text on the search thread
+    private Callable<SearchResult> newSearchTask(String regex, final String replacement, final boolean replaceAll) {
+        mPatternGuard.check(regex);
+        final Pattern pattern = Pattern.compile(regex);
+        final TextSnapshot snapshot = getSnapshot();
+        return new Callable<SearchResult>() {
+            @Override
+            public SearchResult call() {
+                PatternGuard.GuardedText text = mPatternGuard.guard(snapshot);
+                SearchResult result = new SearchResult();
+                Matcher matcher = pattern.matcher(text);
+                StringBuffer replaced = replacement != null ? new StringBuffer() : null;
+                while (matcher.find()) {
+                    text.checkDeadline();
+                    // The search is cancelled by a newer search
+                    if (Thread.currentThread().isInterrupted()) throw new PatternGuard.PatternTimeoutException();
+                    result.matches.add(new Token(matcher.start(), matcher.end()));
+                    if (replaced == null) continue;
+                    matcher.appendReplacement(replaced, replacement);
+                    if (!replaceAll) break;
+                }
+                if (replaced != null) {
+                    matcher.appendTail(replaced);
+                    result.text = replaced.toString();
+                }
+                return result;
+            }
+        };
+    }
 
-        Set<Map.Entry<Pattern, Integer>> syntaxSet = mSyntaxPatternMap.entrySet();
-        for (Map.Entry<Pattern, Integer> syntax : syntaxSet) {
-            Matcher matcher = syntax.getKey().matcher(editable);
-            while (matcher.find()) {
-                createForegroundColorSpan(editable, matcher, syntax.getValue());
+    // Run the search on the search thread and wait for it until the pattern timeout, then return null,
+    // the matcher of Android copies the text so it can't be stopped and its thread is left to finish
+    private SearchResult waitForSearch(String regex, Callable<SearchResult> search) {
+        Future<SearchResult> task = mSearchWorker.submit(search);
+        if (task == null) {
+            Log.w("CodeView", "Search skipped, the threads of slow patterns are still running: " + regex);
+            return null;
+        }
+        try {
+            return task.get(mPatternGuard.getTimeout(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            mSearchWorker.abandon();
+            mPatternGuard.reportTimeout(regex);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (!(cause instanceof PatternGuard.PatternTimeoutException)) {
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IllegalStateException(cause);
             }
+            mPatternGuard.reportTimeout(regex);
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
         }
+        return null;
+    }
+
+    // Run the search on the search thread and post its result, the search is abandoned after the timeout
+    private void startSearch(final String regex, final Callable<SearchResult> search, final boolean replace,
+                             final OnMatchesFoundListener listener) {
+        final long version = mTextVersion;
+        final Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                if (mSearchTimeout != this) return;
+                mSearchTimeout = null;
+                mSearchTask = null;
+                mSearchWorker.abandon();
+                mPatternGuard.reportTimeout(regex);
+                listener.onMatchesFound(new ArrayList<Token>());
+            }
+        };
+        mSearchTimeout = timeout;
+        mSearchTask = mSearchWorker.submit(new Runnable() {
+            @Override
+            public void run() {
+                SearchResult searchResult;
+                try {
+                    searchResult = search.call();
+                } catch (PatternGuard.PatternTimeoutException e) {
+                    return;
+                } catch (Exception e) {
+                    Log.w("CodeView", "Search failed: " + regex, e);
+                    searchResult = new SearchResult();
+                }
+                final SearchResult result = searchResult;
+                mUpdateHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mSearchTimeout != timeout) return;
+                        mUpdateHandler.removeCallbacks(timeout);
+                        mSearchTimeout = null;
+                        mSearchTask = null;
+                        if (version != mTextVersion) return;
+                        if (replace) {
+                            if (result.text != null) setTextHighlighted(result.text);
+                            listener.onMatchesFound(result.matches);
+                        } else {
+                            matchedTokens.clear();
+                            matchedTokens.addAll(result.matches);
+                            listener.onMatchesFound(matchedTokens);
+                        }
+                    }
+                });
+            }
+        });
+        if (mSearchTask == null) {
+            mSearchTimeout = null;
+            Log.w("CodeView", "Search skipped, the threads of slow patterns are still running: " + regex);
+            listener.onMatchesFound(new ArrayList<Token>());
+            return;
+        }
+        mUpdateHandler.postDelayed(timeout, mPatternGuard.getTimeout());
     }
 
-    private void highlightErrorLines(Editable editable) {
-        if(mErrorHashSet.isEmpty()) return;
-        int maxErrorLineValue = mErrorHashSet.lastKey();
+    private void cancelSearch() {
+        if (mSearchTimeout != null) {
+            mUpdateHandler.removeCallbacks(mSearchTimeout);
+            mSearchTimeout = null;
+        }
+        if (mSearchTask != null) {
+            mSearchTask.cancel(true);
+            mSearchTask = null;
+        }
+    }
 
-        int lineNumber = 0;
-        Matcher matcher = PATTERN_LINE.matcher(editable);
-        while (matcher.find()) {
-            if(mErrorHashSet.containsKey(lineNumber)) {
-                int color = mErrorHashSet.get(lineNumber);
-                createBackgroundColorSpan(editable, matcher, color);
+    // Highlight the full text on the highlighter thread, so a slow pattern never blocks the main thread,
+    // the spans are set on the main thread if the text is not changed meanwhile, otherwise the new
+    // text is highlighted again
+    private void startHighlight() {
+        cancelHighlight();
+        Editable editable = getEditableText();
+        if (!hasSyntaxPatterns() || editable.length() == 0) {
+            removeSyntaxSpans(editable, 0, editable.length() + 1);
+            return;
+        }
+        final long version = mTextVersion;
+        mBackgroundHighlighter.start(getSnapshot(), mSyntaxPatternMap, mTokenPatternMap, mSyntaxGrammar,
+                mSyntaxGrammarTypeIds, mSyntaxPalette, new BackgroundHighlighter.Callback<SpanBuffer>() {
+            @Override
+            SpanBuffer prepare(SpanBuffer spans) {
+                spans.splitSteps(HIGHLIGHT_SPANS_PER_STEP);
+                return spans;
+            }
+
+            @Override
+            void onHighlighted(SpanBuffer spans) {
+                if (version != mTextVersion) {
+                    startHighlight();
+                    return;
+                }
+                mHighlightSpans = spans;
+                mHighlightSpansVersion = version;
+                mHighlightStep = 0;
+                mHighlightStepRunnable.run();
+            }
+        });
+    }
+
+    // Set the spans of the full highlight one step per message, so a big file doesn't block the main
+    // thread while all its spans are set, every step replaces the old spans that start in its part of
+    // the text, the text keeps its old colors until its step is set
+    private final Runnable mHighlightStepRunnable = new Runnable() {
+        @Override
+        public void run() {
+            SpanBuffer spans = mHighlightSpans;
+            if (spans == null) return;
+            if (mHighlightSpansVersion != mTextVersion) {
+                startHighlight();
+                return;
             }
-            lineNumber = lineNumber + 1;
-            if(lineNumber > maxErrorLineValue) break;
+            Editable editable = getEditableText();
+            int step = mHighlightStep++;
+            int stepCount = spans.getStepCount();
+            int start = step < stepCount ? spans.getStepStart(step) : 0;
+            int end = step + 1 < stepCount ? spans.getStepStart(step + 1) : editable.length() + 1;
+            removeSyntaxSpans(editable, start, end);
+            if (step < stepCount) spans.applyStep(editable, step);
+            if (mHighlightStep < stepCount) mUpdateHandler.post(this);
+            else mHighlightSpans = null;
         }
+    };
+
+    // Drop the running highlight and the steps that are not set yet
+    private void cancelHighlight() {
+        mBackgroundHighlighter.cancel();
+        mUpdateHandler.removeCallbacks(mHighlightStepRunnable);
+        mHighlightSpans = null;
     }
 
-    private void createForegroundColorSpan(Editable editable, Matcher matcher, @ColorInt int color) {
-        editable.setSpan(new ForegroundColorSpan(color),
-                matcher.start(), matcher.end(),
-                Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    // Remove the highlighter spans that start between start and end
+    private static void removeSyntaxSpans(Editable editable, int start, int end) {
+        CharacterStyle[] spans = editable.getSpans(start, Math.min(end, editable.length()), CharacterStyle.class);
+        for (CharacterStyle span : spans) {
+            if (!SyntaxHighlighter.isSyntaxSpan(span)) continue;
+            int spanStart = editable.getSpanStart(span);
+            if (spanStart >= start && spanStart < end) editable.removeSpan(span);
+        }
     }
 
-    private void createBackgroundColorSpan(Editable editable, Matcher matcher, @ColorInt int color) {
-        editable.setSpan(new BackgroundColorSpan(color),
-                matcher.start(), matcher.end(),
-                Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    // The range highlight runs on the main thread, it's bounded by the changed lines and
+    // the tokens that cross them, and the guard can stop its patterns only between the matches
+    private void highlightSyntax(Editable editable, int start, int end) {
+        if(!hasSyntaxPatterns()) return;
+        SyntaxHighlighter.highlight(editable, mSyntaxPatternMap, mTokenPatternMap,
+                mSyntaxGrammar, mSyntaxGrammarTypeIds, mSyntaxPalette, mPatternGuard, start, end);
+    }
+
+    private boolean hasSyntaxPatterns() {
+        return !mSyntaxPatternMap.isEmpty() || !mTokenPatternMap.isEmpty() || mSyntaxGrammar != null;
+    }
+
+    private int getDiagnosticColor(Diagnostic diagnostic) {
+        if (diagnostic.getColor() != 0) return diagnostic.getColor();
+        return mSeverityColors[diagnostic.getSeverity().ordinal()];
     }
 
     private void highlightMatchingToken(Token token) {
@@ -271,41 +665,391 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
         getEditableText().removeSpan(currentMatchedToken);
     }
 
-    private Editable highlight(Editable editable) {
-        if(editable.length() == 0) return editable;
-        try {
-            clearSpans(editable);
-            highlightErrorLines(editable);
-            highlightSyntax(editable);
-        }
-        catch (IllegalStateException e) {
-            e.printStackTrace();
-        }
-        return editable;
+    private void highlightMatchingBrackets(int cursor) {
+        clearHighlightingMatchingBrackets();
+        int bracket = mBracketIndex.isBracket(cursor - 1) ? cursor - 1 : cursor;
+        int match = mBracketIndex.findMatchingBracket(bracket);
+        if (match == -1) return;
+
+        Editable editable = getEditableText();
+        currentMatchedBrackets[0] = new BackgroundColorSpan(bracketMatchingColor);
+        currentMatchedBrackets[1] = new BackgroundColorSpan(bracketMatchingColor);
+        editable.setSpan(currentMatchedBrackets[0], bracket, bracket + 1, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        editable.setSpan(currentMatchedBrackets[1], match, match + 1, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
     }
 
-    private void highlightWithoutChange(Editable editable) {
-        modified = false;
-        highlight(editable);
-        modified = true;
+    private void clearHighlightingMatchingBrackets() {
+        Editable editable = getEditableText();
+        for (int i = 0; i < currentMatchedBrackets.length; i++) {
+            if (currentMatchedBrackets[i] == null) continue;
+            editable.removeSpan(currentMatchedBrackets[i]);
+            currentMatchedBrackets[i] = null;
+        }
     }
 
     /**
-     * Replace the current text with new highlighted text
+     * Replace the current text with new text and highlight it on the highlighter thread
      * @param text The new Text
      */
     public void setTextHighlighted(CharSequence text) {
         if (text == null || text.length() == 0) return;
 
+        cancelFileLoading();
         cancelHighlighterRender();
 
         removeAllErrorLines();
 
         modified = false;
-        setText(highlight(new SpannableStringBuilder(text)));
+        setText(text);
+        modified = true;
+        startHighlight();
+    }
+
+    /**
+     * Replace the current text with the content of UTF-8 file, the file is memory mapped
+     * and decoded in pages on a background thread, the first page is shown as soon as it decoded
+     * and the other pages are appended to the text while the user can interact with it
+     * @param file The file to load
+     * @param listener Listener to get the loading progress, can be null
+     * @throws IOException if the file can't be opened
+     * @since 1.3.6
+     */
+    public void loadFile(File file, FileLoadListener listener) throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        startFileLoading(channel, true, listener);
+    }
+
+    /**
+     * Replace the current text with the content of UTF-8 file
+     * @param path The path of the file to load
+     * @param listener Listener to get the loading progress, can be null
+     * @throws IOException if the file can't be opened
+     * @see #loadFile(File, FileLoadListener)
+     * @since 1.3.6
+     */
+    public void loadFile(String path, FileLoadListener listener) throws IOException {
+        loadFile(new File(path), listener);
+    }
+
+    /**
+     * Replace the current text with the content of UTF-8 file channel, the channel is read
+     * from its start and it's not closed after loading
+     * @param channel The file channel to load
+     * @param listener Listener to get the loading progress, can be null
+     * @see #loadFile(File, FileLoadListener)
+     * @since 1.3.6
+     */
+    public void loadFile(FileChannel channel, FileLoadListener listener) {
+        startFileLoading(channel, false, listener);
+    }
+
+    /**
+     * Stop the current file loading task, the loaded part of the file is kept
+     * @since 1.3.6
+     */
+    public void cancelFileLoading() {
+        if (mFileLoader == null) return;
+        mFileLoader.cancel();
+        mFileLoader = null;
+    }
+
+    /**
+     * The text changes while the file is loading are the cleared text and the appended pages
+     * of the file, text watchers can check it to ignore them, for example to not record them
+     * as undo edits
+     * @return {@code true} if there is a file loading task that is not finished yet
+     * @since 1.3.6
+     */
+    public boolean isFileLoading() {
+        return mFileLoader != null;
+    }
+
+    private void startFileLoading(FileChannel channel, boolean closeChannel, final FileLoadListener listener) {
+        cancelFileLoading();
+        cancelHighlighterRender();
+        removeAllErrorLines();
+
+        final TextFileLoader[] loader = new TextFileLoader[1];
+        loader[0] = new TextFileLoader(channel, closeChannel, new TextFileLoader.PageConsumer() {
+            @Override
+            public void onPage(final String page, final long loadedBytes, final long totalBytes) {
+                mUpdateHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (loader[0].isCancelled()) return;
+                        appendLoadedPage(page);
+                        loader[0].onPageConsumed();
+                        if (listener != null) listener.onLoadProgress(loadedBytes, totalBytes);
+                    }
+                });
+            }
+
+            @Override
+            public void onFinished() {
+                mUpdateHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (loader[0].isCancelled()) return;
+                        mFileLoader = null;
+                        if (hasSyntaxPatterns()) {
+                            mUpdateHandler.postDelayed(mUpdateRunnable, mUpdateDelayTime);
+                        }
+                        if (listener != null) listener.onLoadFinished();
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(final IOException exception) {
+                mUpdateHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (loader[0].isCancelled()) return;
+                        mFileLoader = null;
+                        if (listener != null) listener.onLoadFailed(exception);
+                    }
+                });
+            }
+        });
+
+        // The text is cleared after the loader is set so the watchers see it as part of the loading
+        mFileLoader = loader[0];
+        modified = false;
+        setText("");
+        modified = true;
+        getBackgroundExecutor().execute(mFileLoader);
+    }
+
+    private void appendLoadedPage(String page) {
+        Editable editable = getText();
+        int start = editable.length();
+        // The full text is highlighted once after the loading is finished
+        modified = false;
+        editable.append(page);
         modified = true;
+        convertTabs(editable, start, page.length());
+    }
+
+    private ExecutorService getBackgroundExecutor() {
+        if (mBackgroundExecutor == null) mBackgroundExecutor = Executors.newSingleThreadExecutor();
+        return mBackgroundExecutor;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelFileLoading();
+        if (mBackgroundExecutor != null) {
+            mBackgroundExecutor.shutdownNow();
+            mBackgroundExecutor = null;
+        }
+        cancelDiagnostics();
+        if (mDiagnosticsExecutor != null) {
+            mDiagnosticsExecutor.shutdownNow();
+            mDiagnosticsExecutor = null;
+        }
+        cancelCompletions();
+        if (mCompletionExecutor != null) {
+            mCompletionExecutor.shutdownNow();
+            mCompletionExecutor = null;
+        }
+        cancelSearch();
+        mSearchWorker.abandon();
+        cancelHighlight();
+        mBackgroundHighlighter.shutdown();
+    }
+
+    /**
+     * Set the provider that computes the diagnostics of the text, it's called on a background thread
+     * after every change of the text once the user stops editing for the diagnostics delay time,
+     * and its diagnostics replace the current diagnostics on the main thread
+     * @param provider The diagnostics provider, or null to stop computing the diagnostics
+     * @since 1.3.6
+     */
+    public void setDiagnosticsProvider(DiagnosticsProvider provider) {
+        mDiagnosticsProvider = provider;
+        cancelDiagnostics();
+        if (provider != null) updateDiagnostics();
+    }
+
+    /**
+     * Modify the time to wait after the last change of the text before computing the diagnostics
+     * @param time The new delay time in milliseconds
+     * @since 1.3.6
+     */
+    public void setDiagnosticsDelayTime(int time) {
+        mDiagnosticsDelayTime = time;
+    }
+
+    /**
+     * Compute the diagnostics of the current text now, without waiting for the delay time
+     * @since 1.3.6
+     */
+    public void updateDiagnostics() {
+        cancelDiagnostics();
+        if (mDiagnosticsProvider == null) return;
+
+        final DiagnosticsProvider provider = mDiagnosticsProvider;
+        final TextSnapshot snapshot = getSnapshot();
+        mDiagnosticsTask = getDiagnosticsExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                final List<Diagnostic> diagnostics;
+                try {
+                    diagnostics = provider.provideDiagnostics(snapshot);
+                } catch (RuntimeException e) {
+                    Log.w("CodeView", "Diagnostics provider failed", e);
+                    return;
+                }
+                if (diagnostics == null || Thread.currentThread().isInterrupted()) return;
+                mUpdateHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The ranges are of an old text if the text is changed after taking the snapshot
+                        if (snapshot.getVersion() != mTextVersion || provider != mDiagnosticsProvider) return;
+                        mDiagnosticsTask = null;
+                        setDiagnostics(diagnostics);
+                    }
+                });
+            }
+        });
     }
 
+    private void cancelDiagnostics() {
+        mUpdateHandler.removeCallbacks(mDiagnosticsRunnable);
+        if (mDiagnosticsTask == null) return;
+        mDiagnosticsTask.cancel(true);
+        mDiagnosticsTask = null;
+    }
+
+    private ExecutorService getDiagnosticsExecutor() {
+        if (mDiagnosticsExecutor == null) mDiagnosticsExecutor = Executors.newSingleThreadExecutor();
+        return mDiagnosticsExecutor;
+    }
+
+    private final Runnable mDiagnosticsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            updateDiagnostics();
+        }
+    };
+
+    /**
+     * Set the provider of the auto complete codes, it replaces the filtering of the adapter codes, after
+     * every change of the text it's called on a background thread with the word before the cursor and its
+     * codes are shown in the {@link CodeViewAdapter} of this CodeView
+     * @param provider The completion provider, or null to filter the adapter codes again
+     * @since 1.3.6
+     */
+    public void setCompletionProvider(CompletionProvider provider) {
+        mCompletionProvider = provider;
+        mCompletionCache.clear();
+        cancelCompletions();
+    }
+
+    /**
+     * Modify the time to wait after the last change of the text before requesting the completions
+     * @param time The new delay time in milliseconds
+     * @since 1.3.6
+     */
+    public void setCompletionDelayTime(int time) {
+        mCompletionDelayTime = time;
+    }
+
+    @Override
+    protected void replaceText(CharSequence text) {
+        // Inserting the selected code should not request the completions of the inserted word
+        mBlockCompletions = true;
+        super.replaceText(text);
+        mBlockCompletions = false;
+    }
+
+    @Override
+    protected void performFiltering(CharSequence text, int keyCode) {
+        // The provider codes are already for the current word
+        if (mCompletionProvider != null) return;
+        super.performFiltering(text, keyCode);
+    }
+
+    private void requestCompletions() {
+        cancelCompletions();
+        if (mCompletionProvider == null) return;
+        if (!enoughToFilter()) {
+            dismissDropDown();
+            return;
+        }
+
+        final Editable text = getText();
+        final int cursor = getSelectionEnd();
+        final int wordStart = mAutoCompleteTokenizer.findTokenStart(text, cursor);
+        final String prefix = text.subSequence(wordStart, cursor).toString();
+
+        // A longer prefix of the same word is filtered from the codes of the shorter one
+        List<Code> cachedCodes = mCompletionCache.get(wordStart, prefix);
+        if (cachedCodes != null) {
+            showCompletions(cachedCodes);
+            return;
+        }
+
+        final CompletionProvider provider = mCompletionProvider;
+        final TextSnapshot snapshot = getSnapshot();
+        final CompletionResults results = new CompletionResults(mUpdateHandler, new CompletionResults.Listener() {
+            @Override
+            public void onCompletionResults(CompletionResults results, List<Code> codes, boolean finished) {
+                if (results != mCompletionResults) return;
+                showCompletions(codes);
+                if (!finished) return;
+                mCompletionResults = null;
+                mCompletionTask = null;
+                mCompletionCache.put(wordStart, prefix, codes);
+            }
+        });
+        mCompletionResults = results;
+        mCompletionTask = getCompletionExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    provider.provideCompletions(snapshot, cursor, prefix, results);
+                } catch (RuntimeException e) {
+                    Log.w("CodeView", "Completion provider failed", e);
+                    return;
+                }
+                results.finish();
+            }
+        });
+    }
+
+    private void showCompletions(List<Code> codes) {
+        if (!(getAdapter() instanceof CodeViewAdapter)) return;
+        ((CodeViewAdapter) getAdapter()).updateCodes(codes);
+        if (codes.isEmpty()) dismissDropDown();
+        else if (hasFocus()) showDropDown();
+    }
+
+    private void cancelCompletions() {
+        mUpdateHandler.removeCallbacks(mCompletionRunnable);
+        if (mCompletionResults != null) {
+            mCompletionResults.cancel();
+            mCompletionResults = null;
+        }
+        if (mCompletionTask != null) {
+            mCompletionTask.cancel(true);
+            mCompletionTask = null;
+        }
+    }
+
+    private ExecutorService getCompletionExecutor() {
+        if (mCompletionExecutor == null) mCompletionExecutor = Executors.newSingleThreadExecutor();
+        return mCompletionExecutor;
+    }
+
+    private final Runnable mCompletionRunnable = new Runnable() {
+        @Override
+        public void run() {
+            requestCompletions();
+        }
+    };
+
     /**
      * Modify the tab length to use it in auto indenting feature
      * @param length The new tab length value
@@ -320,8 +1064,11 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
      */
     public void setTabWidth(int characters) {
         if (tabWidthInCharacters == characters) return;
+        boolean hadTabWidth = tabWidth > 0;
         tabWidthInCharacters = characters;
         tabWidth = Math.round(getPaint().measureText("m") * characters);
+        // The tabs that typed before enabling the tab width have no spans yet
+        if (!hadTabWidth) convertTabs(getEditableText(), 0, getEditableText().length());
     }
 
     private void clearSpans(Editable editable) {
@@ -332,6 +1079,12 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
         for (int i = foregroundSpans.length; i-- > 0;)
             editable.removeSpan(foregroundSpans[i]);
 
+        SyntaxPalette.TokenSpan[] tokenSpans = editable.getSpans(
+                0, length, SyntaxPalette.TokenSpan.class);
+
+        for (int i = tokenSpans.length; i-- > 0;)
+            editable.removeSpan(tokenSpans[i]);
+
         BackgroundColorSpan[] backgroundSpans = editable.getSpans(
                 0, length, BackgroundColorSpan.class);
 
@@ -340,23 +1093,40 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
     }
 
     /**
-     * Stop the highlighter task
+     * Stop the highlighter task, a highlight that is running on the highlighter thread is dropped
      */
     public void cancelHighlighterRender() {
         mUpdateHandler.removeCallbacks(mUpdateRunnable);
+        cancelHighlight();
     }
 
     private void convertTabs(Editable editable, int start, int count) {
         if (tabWidth < 1) return;
 
-        String s = editable.toString();
+        final int stop = Math.min(start + count, editable.length());
+        if (start > stop) return;
+
+        // Remove the spans that no longer cover a tab, also after deleting, and keep them to be used again
+        boolean[] hasSpan = new boolean[stop - start];
+        TabWidthSpan[] spans = editable.getSpans(start, stop, TabWidthSpan.class);
+        for (TabWidthSpan span : spans) {
+            int spanStart = editable.getSpanStart(span);
+            int spanEnd = editable.getSpanEnd(span);
+            boolean coverTab = spanEnd - spanStart == 1 && editable.charAt(spanStart) == '\t';
+            boolean inRange = spanStart >= start && spanStart < stop;
+            if (!coverTab || (inRange && hasSpan[spanStart - start])) {
+                editable.removeSpan(span);
+                mTabWidthSpansPool.add(span);
+            } else if (inRange) {
+                hasSpan[spanStart - start] = true;
+            }
+        }
 
-        for (int stop = start + count;
-             (start = s.indexOf("\t", start)) > -1 && start < stop;
-             ++start) {
-            editable.setSpan(new CodeView.TabWidthSpan(),
-                    start,
-                    start + 1, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        for (int i = start; i < stop; i++) {
+            if (editable.charAt(i) != '\t' || hasSpan[i - start]) continue;
+            int last = mTabWidthSpansPool.size() - 1;
+            TabWidthSpan span = last >= 0 ? mTabWidthSpansPool.remove(last) : new TabWidthSpan();
+            editable.setSpan(span, i, i + 1, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
         }
     }
 
@@ -367,6 +1137,11 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
     public void setSyntaxPatternsMap(Map<Pattern, Integer> syntaxPatterns) {
         if(!mSyntaxPatternMap.isEmpty()) mSyntaxPatternMap.clear();
         mSyntaxPatternMap.putAll(syntaxPatterns);
+        checkPatterns(syntaxPatterns.keySet());
+    }
+
+    private void checkPatterns(Iterable<Pattern> patterns) {
+        for (Pattern pattern : patterns) mPatternGuard.check(pattern.pattern());
     }
 
     /**
@@ -376,6 +1151,7 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
      */
     public void addSyntaxPattern(Pattern pattern, @ColorInt int Color) {
         mSyntaxPatternMap.put(pattern, Color);
+        mPatternGuard.check(pattern.pattern());
     }
 
     /**
@@ -384,13 +1160,15 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
      */
     public void removeSyntaxPattern(Pattern pattern) {
         mSyntaxPatternMap.remove(pattern);
+        mTokenPatternMap.remove(pattern);
     }
 
     /**
      * @return The current number of patterns in the syntax map
      */
     public int getSyntaxPatternsSize() {
-        return mSyntaxPatternMap.size();
+        int grammarRules = mSyntaxGrammar != null ? mSyntaxGrammar.getRuleCount() : 0;
+        return mSyntaxPatternMap.size() + mTokenPatternMap.size() + grammarRules;
     }
 
     /**
@@ -398,12 +1176,140 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
      */
     public void resetSyntaxPatternList() {
         mSyntaxPatternMap.clear();
+        mTokenPatternMap.clear();
+        mSyntaxGrammar = null;
+        mSyntaxGrammarTypeIds = null;
+        mPatternGuard.enableAll();
+    }
+
+    /**
+     * Add a syntax pattern that highlights its matches as a token type, the color of the token
+     * type comes from the syntax theme so changing the theme doesn't need to highlight the text again
+     * @param pattern Syntax feature pattern
+     * @param tokenType The name of the token type like keyword or comment
+     * @since 1.3.6
+     */
+    public void addSyntaxTokenPattern(Pattern pattern, String tokenType) {
+        mTokenPatternMap.put(pattern, mSyntaxPalette.getTypeId(tokenType));
+        mPatternGuard.check(pattern.pattern());
+    }
+
+    /**
+     * Setup the syntax of your data as a map of patterns with their token types,
+     * the patterns are applied in the map iteration order
+     * @param tokenPatterns Map of Patterns and token types
+     * @since 1.3.6
+     */
+    public void setSyntaxTokenPatternsMap(Map<Pattern, String> tokenPatterns) {
+        mTokenPatternMap.clear();
+        for (Map.Entry<Pattern, String> entry : tokenPatterns.entrySet()) {
+            addSyntaxTokenPattern(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Set the grammar that highlights the text with token types, the grammar rules are applied
+     * in one scan of the text and their colors come from the syntax theme
+     * @param grammar The grammar of the text or null to remove the current grammar
+     * @since 1.3.6
+     */
+    public void setSyntaxGrammar(SyntaxGrammar grammar) {
+        mSyntaxGrammar = grammar;
+        if (grammar == null) {
+            mSyntaxGrammarTypeIds = null;
+            return;
+        }
+        int ruleCount = grammar.getRuleCount();
+        mSyntaxGrammarTypeIds = new int[ruleCount];
+        for (int i = 0; i < ruleCount; i++) {
+            mSyntaxGrammarTypeIds[i] = mSyntaxPalette.getTypeId(grammar.getTokenType(i));
+            mPatternGuard.check(grammar.getRule(i));
+        }
+    }
+
+    /**
+     * Set the maximum time of running one pattern over the text, a syntax pattern that takes more time
+     * is stopped and not used again until the syntax patterns are reset, a search is stopped
+     * with the matches that are found before the timeout, and a replace doesn't change the text
+     * @param timeoutMillis The pattern timeout in milliseconds, the default is one second
+     * @since 1.3.6
+     */
+    public void setPatternTimeout(long timeoutMillis) {
+        mPatternGuard.setTimeout(timeoutMillis);
+    }
+
+    /**
+     * Set a listener to get the warnings of the patterns that can backtrack exponentially
+     * when they are added, and the patterns that are stopped after the pattern timeout
+     * @param listener The patterns errors listener or null
+     * @since 1.3.6
+     */
+    public void setOnPatternErrorListener(OnPatternErrorListener listener) {
+        mPatternGuard.setListener(listener);
+    }
+
+    /**
+     * Change the color of one token type, the highlighted tokens are drawn with the new
+     * color without highlighting the text again
+     * @param tokenType The name of the token type
+     * @param color The new color of the token type
+     * @since 1.3.6
+     */
+    public void setSyntaxTokenColor(String tokenType, @ColorInt int color) {
+        mSyntaxPalette.setColor(tokenType, color);
+        redrawSyntaxColors();
+    }
+
+    /**
+     * Replace the colors of all the token types, the token types that are not in the theme
+     * are drawn with the text color, the highlighted tokens are recolored without running any pattern
+     * @param theme Map of token types and their colors
+     * @since 1.3.6
+     */
+    public void setSyntaxTheme(Map<String, Integer> theme) {
+        mSyntaxPalette.clearColors();
+        for (Map.Entry<String, Integer> entry : theme.entrySet()) {
+            mSyntaxPalette.setColor(entry.getKey(), entry.getValue());
+        }
+        redrawSyntaxColors();
+    }
+
+    // The token spans read their colors from the palette while drawing, but the drawing of the text
+    // is cached so the cached blocks of the visible text are refreshed without changing the layout
+    private void redrawSyntaxColors() {
+        final Editable editable = getEditableText();
+        if (editable == null) return;
+        final Layout layout = getLayout();
+        if (layout == null) {
+            mSyntaxColorRefresher.refresh(editable, 0, editable.length());
+            return;
+        }
+        mSyntaxColorRefresher.refresh(editable, getVisibleTextStart(layout), getVisibleTextEnd(layout));
+    }
+
+    @Override
+    protected void onScrollChanged(int horizontal, int vertical, int oldHorizontal, int oldVertical) {
+        super.onScrollChanged(horizontal, vertical, oldHorizontal, oldVertical);
+        if (!mSyntaxColorRefresher.isPending()) return;
+        final Editable editable = getEditableText();
+        final Layout layout = getLayout();
+        if (editable == null || layout == null) return;
+        mSyntaxColorRefresher.refreshVisible(editable, getVisibleTextStart(layout), getVisibleTextEnd(layout));
+    }
+
+    private int getVisibleTextStart(Layout layout) {
+        return layout.getLineStart(layout.getLineForVertical(getScrollY() - getExtendedPaddingTop()));
+    }
+
+    private int getVisibleTextEnd(Layout layout) {
+        return layout.getLineEnd(layout.getLineForVertical(getScrollY() + getHeight() - getExtendedPaddingTop()));
     }
 
     /**
      * Un highlight all keywords by removing all spans
      */
     public void resetHighlighter() {
+        cancelHighlight();
         clearSpans(getText());
     }
 
@@ -436,37 +1342,147 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
     }
 
     /**
-     * Add New Error to the current set of errors to highlight it
-     * @param lineNum The error line number
+     * Add New Error to the current set of errors to highlight it, the error is a diagnostic
+     * with the range of the line so it moves with the line when the text is changed
+     * @param lineNum The error line number, a line that is not in the text is ignored
      * @param color The color to highlight this error
      */
     public void addErrorLine(int lineNum, int color) {
-        mErrorHashSet.put(lineNum, color);
-        hasErrors = true;
+        LineIndex lineIndex = getLineIndex();
+        if (lineNum < 0 || lineNum >= lineIndex.getLineCount()) return;
+        int start = lineIndex.getLineStart(lineNum);
+        int end = lineIndex.getLineEnd(lineNum);
+        Diagnostic errorLine = new Diagnostic(start, end, Diagnostic.Severity.ERROR, null, color);
+        mDiagnostics.add(errorLine);
+        mErrorLines.add(errorLine);
+        invalidate();
     }
 
     /**
-     * Remove one error by the line number from the error set
+     * Remove the errors that start in the line
      * @param lineNum The error line number to remove it
      */
     public void removeErrorLine(int lineNum) {
-        mErrorHashSet.remove(lineNum);
-        hasErrors = mErrorHashSet.size() > 0;
+        LineIndex lineIndex = getLineIndex();
+        if (lineNum < 0 || lineNum >= lineIndex.getLineCount()) return;
+        mDiagnostics.removeStartingIn(lineIndex.getLineStart(lineNum), lineIndex.getLineEnd(lineNum));
+        invalidate();
     }
 
     /**
-     * Remove all the errors from the errors set and change {@link #hasErrors} to false
+     * Remove all the errors and the diagnostics
      */
     public void removeAllErrorLines() {
-        mErrorHashSet.clear();
-        hasErrors = false;
+        mDiagnostics.clear();
+        mErrorLines.clear();
+        invalidate();
+    }
+
+    // Remove only the errors of addErrorLine, the other diagnostics are moved with the text
+    private void removeErrorLinesOnTextChange() {
+        if (mErrorLines.isEmpty()) return;
+        mDiagnostics.removeAll(mErrorLines);
+        mErrorLines.clear();
+        invalidate();
     }
 
     /**
-     * @return The current number of errors in the Errors set
+     * @return The current number of errors and diagnostics
      */
     public int getErrorsSize() {
-        return mErrorHashSet.size();
+        return mDiagnostics.size();
+    }
+
+    /**
+     * Add a diagnostic, its range is moved with the text when the text is changed
+     * and it's removed when all the text of its range is removed
+     * @param diagnostic The diagnostic to add
+     * @since 1.3.6
+     */
+    public void addDiagnostic(Diagnostic diagnostic) {
+        checkDiagnosticRange(diagnostic);
+        mDiagnostics.add(diagnostic);
+        invalidate();
+    }
+
+    /**
+     * Replace the current diagnostics, like the results of a new analysis of the text
+     * @param diagnostics The new diagnostics
+     * @since 1.3.6
+     */
+    public void setDiagnostics(Collection<Diagnostic> diagnostics) {
+        for (Diagnostic diagnostic : diagnostics) checkDiagnosticRange(diagnostic);
+        mDiagnostics.clear();
+        mErrorLines.clear();
+        for (Diagnostic diagnostic : diagnostics) mDiagnostics.add(diagnostic);
+        invalidate();
+    }
+
+    /**
+     * Remove all the diagnostics
+     * @since 1.3.6
+     */
+    public void removeAllDiagnostics() {
+        mDiagnostics.clear();
+        mErrorLines.clear();
+        invalidate();
+    }
+
+    /**
+     * @return All the diagnostics with their current ranges ordered by their start positions
+     * @since 1.3.6
+     */
+    public List<Diagnostic> getDiagnostics() {
+        List<Diagnostic> diagnostics = new ArrayList<>(mDiagnostics.size());
+        mDiagnostics.query(Integer.MIN_VALUE, Integer.MAX_VALUE, diagnostics);
+        return diagnostics;
+    }
+
+    /**
+     * @param position The position in the text
+     * @return The diagnostics that their ranges contain or touch the position, in O(log n) plus the results
+     * @since 1.3.6
+     */
+    public List<Diagnostic> getDiagnosticsAt(int position) {
+        return getDiagnostics(position, position);
+    }
+
+    /**
+     * @param start The start of the range
+     * @param end The end of the range
+     * @return The diagnostics that their ranges overlap or touch the range, in O(log n) plus the results
+     * @since 1.3.6
+     */
+    public List<Diagnostic> getDiagnostics(int start, int end) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        mDiagnostics.query(start, end, diagnostics);
+        return diagnostics;
+    }
+
+    /**
+     * @return The current number of diagnostics
+     * @since 1.3.6
+     */
+    public int getDiagnosticsSize() {
+        return mDiagnostics.size();
+    }
+
+    /**
+     * Modify the color of the diagnostics of a severity that have no color of their own
+     * @param severity The diagnostics severity
+     * @param color The new color
+     * @since 1.3.6
+     */
+    public void setDiagnosticColor(Diagnostic.Severity severity, @ColorInt int color) {
+        mSeverityColors[severity.ordinal()] = color;
+    }
+
+    private void checkDiagnosticRange(Diagnostic diagnostic) {
+        int length = length();
+        if (diagnostic.getStart() < 0 || diagnostic.getStart() > diagnostic.getEnd() || diagnostic.getEnd() > length) {
+            throw new IndexOutOfBoundsException("diagnostic: " + diagnostic.getStart() + ", "
+                    + diagnostic.getEnd() + ", length: " + length);
+        }
     }
 
     /**
@@ -487,7 +1503,8 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
     }
 
     /**
-     * Enable or disable remove all the current errors when text is changed
+     * Enable or disable remove the errors of addErrorLine when text is changed,
+     * the other diagnostics are kept and moved with the text
      * @param removeErrors True to enable remove current error
      */
     public void setRemoveErrorsWhenTextChanged(boolean removeErrors) {
@@ -495,24 +1512,60 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
     }
 
     /**
-     * Re Highlight the syntax patterns
+     * Re Highlight the syntax patterns on the highlighter thread, the spans are replaced
+     * on the main thread when it's finished
      */
     public void reHighlightSyntax() {
-        highlightSyntax(getEditableText());
+        startHighlight();
+    }
+
+    /**
+     * Re Highlight the syntax patterns only in the lines between start and end
+     * @param start The start of the range
+     * @param end The end of the range
+     * @since 1.3.6
+     */
+    public void reHighlightSyntax(int start, int end) {
+        highlightSyntax(getEditableText(), start, end);
+    }
+
+    /**
+     * Replace a range of the text and highlight only the changed lines, without scheduling
+     * the highlighter to render the full text again, if the old or the new text or the characters
+     * around them have a symbol that can be a block delimiter like {@code /*} the full text is
+     * highlighted again on the highlighter thread
+     * @param start The start of the replaced range
+     * @param end The end of the replaced range
+     * @param text The new text of the range
+     * @since 1.3.6
+     */
+    public void replaceTextHighlighted(int start, int end, CharSequence text) {
+        Editable editable = getEditableText();
+        // Closing a block that opens before the changed lines changes tokens out of the range,
+        // the characters around the range are checked too because removing the range joins them
+        boolean wordsOnly = SyntaxHighlighter.isWordsOnly(editable,
+                Math.max(0, start - 1), Math.min(editable.length(), end + 1))
+                && SyntaxHighlighter.isWordsOnly(text, 0, text.length());
+        modified = false;
+        editable.replace(start, end, text);
+        modified = true;
+        convertTabs(editable, start, text.length());
+        if (wordsOnly) highlightSyntax(editable, start, start + text.length());
+        else startHighlight();
     }
 
     /**
      * Re Highlight the current errors
      */
     public void reHighlightErrors() {
-        highlightErrorLines(getEditableText());
+        invalidate();
     }
 
     /**
      * @return {@code true} if the errors lists is not empty
      */
     public boolean isHasError() {
-        return hasErrors;
+        return mDiagnostics.size() > 0;
     }
 
     /**
@@ -610,7 +1663,8 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
     }
 
     /**
-     * Enable or disable the auto pairs complete feature
+     * Enable or disable the auto pairs complete feature, only the characters that are typed
+     * by the user with the keyboard are completed, not the text that is set or replaced in code
      * @param enable Flag to enable or disable auto pair complete
      * @since 1.3.0
      */
@@ -664,6 +1718,249 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
         mPairCompleteMap.clear();
     }
 
+    /**
+     * Enable or disable the bracket matching feature, when it enabled CodeView keeps an index
+     * of the brackets positions updated with every edit and highlights the matching pair at the cursor
+     * @param enable Flag to enable or disable bracket matching
+     * @since 1.3.6
+     */
+    public void setEnableBracketMatching(boolean enable) {
+        if (enableBracketMatching == enable) return;
+        enableBracketMatching = enable;
+        if (enable) {
+            mBracketIndex.rebuild(getText());
+            highlightMatchingBrackets(getSelectionStart());
+        } else {
+            mBracketIndex.clear();
+            clearHighlightingMatchingBrackets();
+        }
+    }
+
+    /**
+     * @return {@code true} if the bracket matching is enabled
+     * @since 1.3.6
+     */
+    public boolean isBracketMatchingEnabled() {
+        return enableBracketMatching;
+    }
+
+    /**
+     * Set the pairs of brackets to match, the default pairs are (), [] and {}
+     * @param map Map of open brackets and their close brackets
+     * @since 1.3.6
+     */
+    public void setBracketPairsMap(Map<Character, Character> map) {
+        mBracketIndex.setBracketPairs(map);
+        if (enableBracketMatching) mBracketIndex.rebuild(getText());
+    }
+
+    /**
+     * Set the comments syntax of the current language so the brackets inside comments are not matched
+     * @param lineComment The single line comment start or empty string if not supported
+     * @param blockCommentStart The multi line comment start or empty string if not supported
+     * @param blockCommentEnd The multi line comment end or empty string if not supported
+     * @since 1.3.6
+     */
+    public void setBracketMatchingComments(String lineComment, String blockCommentStart, String blockCommentEnd) {
+        mBracketIndex.setComments(lineComment, blockCommentStart, blockCommentEnd);
+        if (enableBracketMatching) mBracketIndex.rebuild(getText());
+    }
+
+    /**
+     * Set the strings quotes of the current language so the brackets inside strings are not matched,
+     * the default quotes are ' and "
+     * @param quotes Set of quotes characters
+     * @since 1.3.6
+     */
+    public void setBracketMatchingQuotes(Set<Character> quotes) {
+        mBracketIndex.setQuotes(quotes);
+        if (enableBracketMatching) mBracketIndex.rebuild(getText());
+    }
+
+    /**
+     * Modify the matching brackets highlighting color
+     * @param color The new color value
+     * @since 1.3.6
+     */
+    public void setBracketMatchingColor(int color) {
+        bracketMatchingColor = color;
+    }
+
+    /**
+     * Find the position of the bracket that match the bracket on the position
+     * @param position The position of open or close bracket
+     * @return The position of the matching bracket, -1 if not found or bracket matching is disabled
+     * @since 1.3.6
+     */
+    public int findMatchingBracket(int position) {
+        if (!enableBracketMatching) return -1;
+        return mBracketIndex.findMatchingBracket(position);
+    }
+
+    /**
+     * Move the cursor to the bracket that match the bracket before or after the cursor
+     * @return {@code true} if the cursor moved to the matching bracket
+     * @since 1.3.6
+     */
+    public boolean jumpToMatchingBracket() {
+        if (!enableBracketMatching) return false;
+        int cursor = getSelectionStart();
+        int bracket = mBracketIndex.isBracket(cursor - 1) ? cursor - 1 : cursor;
+        int match = mBracketIndex.findMatchingBracket(bracket);
+        if (match == -1) return false;
+        // Keep the cursor on the same side of the bracket
+        setSelection(bracket == cursor ? match : match + 1);
+        return true;
+    }
+
+    /**
+     * Find the block comment that contains the position from the comments that are indexed
+     * for the bracket matching, without scanning the text
+     * @param position The position in the text
+     * @return Token with the comment range including its delimiters, or null if the position is
+     * not inside a block comment or bracket matching is disabled
+     * @since 1.3.6
+     */
+    public Token findBlockComment(int position) {
+        if (!enableBracketMatching) return null;
+        int[] range = mBracketIndex.findBlockComment(position, getText().length());
+        if (range == null) return null;
+        return new Token(range[0], range[1]);
+    }
+
+    /**
+     * Set a listener that is called with the source line and column every time the cursor moves
+     * @param listener The source position listener or null to remove the current one
+     * @since 1.3.6
+     */
+    public void setOnSourcePositionChangedListener(OnSourcePositionChangedListener listener) {
+        mSourcePositionListener = listener;
+    }
+
+    /**
+     * @return The number of source lines, the lines are split only by line breaks
+     * @since 1.3.6
+     */
+    public int getSourceLineCount() {
+        return getLineIndex().getLineCount();
+    }
+
+    /**
+     * Find the source line of a position in O(log lines), the lines are split only by line
+     * breaks so a long line that is wrapped on the screen is still one line
+     * @param offset The position in the text
+     * @return The zero based source line that contains the position
+     * @since 1.3.6
+     */
+    public int getSourceLineForOffset(int offset) {
+        return getLineIndex().getLineForOffset(offset);
+    }
+
+    /**
+     * @param offset The position in the text
+     * @return The zero based column of the position in its source line
+     * @since 1.3.6
+     */
+    public int getSourceColumnForOffset(int offset) {
+        LineIndex lineIndex = getLineIndex();
+        return offset - lineIndex.getLineStart(lineIndex.getLineForOffset(offset));
+    }
+
+    /**
+     * @param line The zero based source line
+     * @return The position of the first character of the line
+     * @since 1.3.6
+     */
+    public int getSourceLineStart(int line) {
+        checkSourceLine(line);
+        return getLineIndex().getLineStart(line);
+    }
+
+    /**
+     * @param line The zero based source line
+     * @return The position after the last character of the line without its line break
+     * @since 1.3.6
+     */
+    public int getSourceLineEnd(int line) {
+        checkSourceLine(line);
+        return getLineIndex().getLineEnd(line);
+    }
+
+    private void checkSourceLine(int line) {
+        int lineCount = getLineIndex().getLineCount();
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("line: " + line + ", line count: " + lineCount);
+        }
+    }
+
+    // The index is built on the first use and then updated with every edit
+    private LineIndex getLineIndex() {
+        if (mLineIndex == null) {
+            mLineIndex = new LineIndex();
+            mLineIndex.rebuild(getText());
+        }
+        return mLineIndex;
+    }
+
+    /**
+     * Enable or disable keeping a {@link Rope} document in sync with the text, when it enabled
+     * {@link #getDocument()} is O(1) and the returned document can be read from any thread
+     * @param enable Flag to enable or disable the document model
+     * @since 1.3.6
+     */
+    public void setEnableDocumentModel(boolean enable) {
+        if (enableDocumentModel == enable) return;
+        enableDocumentModel = enable;
+        if (mSnapshotsEnabled) return;
+        mDocument = enable ? Rope.of(getText()) : Rope.EMPTY;
+    }
+
+    /**
+     * @return {@code true} if the document model is enabled
+     * @since 1.3.6
+     */
+    public boolean isDocumentModelEnabled() {
+        return enableDocumentModel;
+    }
+
+    /**
+     * Get an immutable document with the current text, sub sequences of it share the
+     * characters with it so reading ranges of the text never copy the full text
+     * @return The current text as Rope, created from the text if the document model is disabled
+     * @since 1.3.6
+     */
+    public Rope getDocument() {
+        return isDocumentTracked() ? mDocument : Rope.of(getText());
+    }
+
+    /**
+     * Get an immutable snapshot of the current text with its version, the first call copies the text
+     * into a document that is kept in sync with every edit, so the next snapshots are O(1)
+     * and never copy the text on the main thread
+     * @return The snapshot of the current text, the same snapshot is returned until the text is changed
+     * @since 1.3.6
+     */
+    public TextSnapshot getSnapshot() {
+        if (!isDocumentTracked()) mDocument = Rope.of(getText());
+        mSnapshotsEnabled = true;
+        if (mSnapshot == null || mSnapshot.getVersion() != mTextVersion) {
+            mSnapshot = new TextSnapshot(mDocument, mTextVersion);
+        }
+        return mSnapshot;
+    }
+
+    /**
+     * @return The version of the current text, it's increased with every change of the text
+     * @since 1.3.6
+     */
+    public long getTextVersion() {
+        return mTextVersion;
+    }
+
+    private boolean isDocumentTracked() {
+        return enableDocumentModel || mSnapshotsEnabled;
+    }
+
     @Override
     public void showDropDown() {
         final Layout layout = getLayout();
@@ -702,8 +1999,7 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
     private final Runnable mUpdateRunnable = new Runnable() {
         @Override
         public void run() {
-            Editable source = getText();
-            highlightWithoutChange(source);
+            startHighlight();
         }
     };
 
@@ -726,12 +2022,13 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
         }
     };
 
-    private static int getIndent(String charSequence) {
+    private static int getIndent(CharSequence text, int end) {
         int currIndent = 0;
         // if no newline: start from 0
         // has newline: start from next char
-        int i = charSequence.lastIndexOf("\n") + 1;
-        while (i < charSequence.length() && charSequence.charAt(i) == ' ') {
+        int i = end;
+        while (i > 0 && text.charAt(i - 1) != '\n') i--;
+        while (i < end && text.charAt(i) == ' ') {
             i++;
             currIndent++;
         }
@@ -741,15 +2038,20 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
     @Override
     protected void onSelectionChanged(int selStart, int selEnd) {
         super.onSelectionChanged(selStart, selEnd);
-        String charSequence = getText().toString().substring(0, selStart);
-        currentIndentation = getIndent(charSequence);
-        if (charSequence.length() > 0 &&
-                indentationStarts.contains(charSequence.charAt(charSequence.length() - 1))) {
+        if (enableBracketMatching) highlightMatchingBrackets(selStart);
+        if (selStart < 0) return;
+        if (mSourcePositionListener != null) {
+            LineIndex lineIndex = getLineIndex();
+            int line = lineIndex.getLineForOffset(selStart);
+            mSourcePositionListener.onSourcePositionChanged(line, selStart - lineIndex.getLineStart(line));
+        }
+        Editable text = getText();
+        currentIndentation = getIndent(text, selStart);
+        if (selStart > 0 && indentationStarts.contains(text.charAt(selStart - 1))) {
 //            Log.d("CodeView", "Add indent");
             currentIndentation += tabLength;
         }
 //        Log.d("CodeView", "indent: " + currentIndentation);
-//        Log.d("CodeView", "charSequence: " + charSequence);
     }
 
     private final TextWatcher mEditorTextWatcher = new TextWatcher() {
@@ -765,54 +2067,61 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
 
         @Override
         public void onTextChanged(CharSequence charSequence, int start, int before, int count) {
+            if (enableBracketMatching) mBracketIndex.onTextChanged(charSequence, start, before, count);
+            if (isDocumentTracked()) mDocument = mDocument.replace(start, start + before, charSequence, start, start + count);
+            if (mLineIndex != null) mLineIndex.onTextChanged(charSequence, start, before, count);
+            mDiagnostics.onTextChanged(start, before, count);
+            mTextVersion++;
+            mCompletionCache.onTextChanged(start, before, count);
+            mSyntaxColorRefresher.onTextChanged();
+            if (mDiagnosticsProvider != null) {
+                // Many changes in a row need one analysis of the last text
+                cancelDiagnostics();
+                mUpdateHandler.postDelayed(mDiagnosticsRunnable, mDiagnosticsDelayTime);
+            }
+
             if (!modified) return;
 
             if(highlightWhileTextChanging) {
-                if (mSyntaxPatternMap.size() > 0) {
+                if (hasSyntaxPatterns()) {
                     convertTabs(getEditableText(), start, count);
+                    // Many changes in a row, like toggling comments on many lines, need one highlight
+                    cancelHighlighterRender();
                     mUpdateHandler.postDelayed(mUpdateRunnable, mUpdateDelayTime);
                 }
             }
 
-            if (mRemoveErrorsWhenTextChanged) removeAllErrorLines();
+            if (mRemoveErrorsWhenTextChanged) removeErrorLinesOnTextChange();
 
-            if (count == 1 && (enableAutoIndentation || enablePairComplete)) {
-                char currentChar = charSequence.charAt(start);
+            if (mCompletionProvider != null) {
+                cancelCompletions();
+                if (!mBlockCompletions) mUpdateHandler.postDelayed(mCompletionRunnable, mCompletionDelayTime);
+            }
 
-                if (enableAutoIndentation) {
-//                    if (indentationStarts.contains(currentChar)) {
-//                        currentIndentation += tabLength;
-//                    } else if (indentationEnds.contains(currentChar))
-//                        currentIndentation -= tabLength;
-                }
+            if (count == 1 && enableAutoIndentation) {
+                char currentChar = charSequence.charAt(start);
 
-                if (enablePairComplete) {
-                    Character pairValue = mPairCompleteMap.get(currentChar);
-                    if (pairValue != null) {
-                        modified = false;
-                        int selectionEnd = getSelectionEnd();
-                        getText().insert(selectionEnd, pairValue.toString());
-                        if (enablePairCompleteCenterCursor) setSelection(selectionEnd);
-                        if (enableAutoIndentation) {
-//                            if (indentationStarts.contains(pairValue))
-//                                currentIndentation += tabLength;
-//                            else if (indentationEnds.contains(pairValue))
-//                                currentIndentation -= tabLength;
-                        }
-                        modified = true;
-                    }
-                }
+//                if (indentationStarts.contains(currentChar)) {
+//                    currentIndentation += tabLength;
+//                } else if (indentationEnds.contains(currentChar))
+//                    currentIndentation -= tabLength;
             }
         }
 
         @Override
         public void afterTextChanged(Editable editable) {
+            if (pairCompleteCursorPosition != -1) {
+                int position = pairCompleteCursorPosition;
+                pairCompleteCursorPosition = -1;
+                setSelection(position);
+            }
+
             if(!highlightWhileTextChanging) {
                 if (!modified) return;
 
                 cancelHighlighterRender();
 
-                if (mSyntaxPatternMap.size() > 0) {
+                if (hasSyntaxPatterns()) {
                     convertTabs(getEditableText(), start, count);
                     mUpdateHandler.postDelayed(mUpdateRunnable, mUpdateDelayTime);
                 }
@@ -820,6 +2129,27 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
         }
     };
 
+    /**
+     * Mark the text committed by the input method as user input
+     */
+    private final class UserInputConnection extends InputConnectionWrapper {
+
+        UserInputConnection(InputConnection target) {
+            super(target, true);
+        }
+
+        @Override
+        public boolean commitText(CharSequence text, int newCursorPosition) {
+            boolean userInput = mUserInput;
+            mUserInput = true;
+            try {
+                return super.commitText(text, newCursorPosition);
+            } finally {
+                mUserInput = userInput;
+            }
+        }
+    }
+
     private final class TabWidthSpan extends ReplacementSpan {
 
         @Override
@@ -862,6 +2192,25 @@ public class CodeView extends AppCompatMultiAutoCompleteTextView implements Find
         }
     };
 
+    /**
+     * Insert the pair with the typed character in the same edit, so the text watchers
+     * and the highlighter are triggered only once for both of them
+     */
+    private final InputFilter mPairCompleteFilter = new InputFilter() {
+
+        @Override
+        public CharSequence filter(CharSequence source, int start, int end,
+                                   Spanned dest, int dStart, int dEnd) {
+            if (!mUserInput || !modified || !enablePairComplete || end - start != 1) return null;
+
+            Character pairValue = mPairCompleteMap.get(source.charAt(start));
+            if (pairValue == null) return null;
+
+            if (enablePairCompleteCenterCursor) pairCompleteCursorPosition = dStart + 1;
+            return new StringBuilder(2).append(source.charAt(start)).append(pairValue.charValue());
+        }
+    };
+
     private CharSequence applyIndentation(CharSequence source, int indentation) {
         StringBuilder sourceCode = new StringBuilder();
         sourceCode.append(source);
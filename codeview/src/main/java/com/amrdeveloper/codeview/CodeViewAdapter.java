@@ -93,12 +93,12 @@ public class CodeViewAdapter extends BaseAdapter implements Filterable {
     }
 
     /**
-     * Update the current code list with new list
+     * Update the current code list with new list, the next filtering uses the new list
      * @param newCodeList The new code list
      */
     public void updateCodes(List<Code> newCodeList) {
-        codeList.clear();
-        codeList.addAll(newCodeList);
+        codeList = new ArrayList<>(newCodeList);
+        originalCodes = null;
         notifyDataSetChanged();
     }
 
@@ -106,7 +106,8 @@ public class CodeViewAdapter extends BaseAdapter implements Filterable {
      * Clear the current code list and notify data set changed
      */
     public void clearCodes() {
-        codeList.clear();
+        codeList = new ArrayList<>();
+        originalCodes = null;
         notifyDataSetChanged();
     }
 
@@ -0,0 +1,379 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.amrdeveloper.codeview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Layout;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.util.AttributeSet;
+
+import androidx.annotation.ColorInt;
+import androidx.appcompat.widget.AppCompatTextView;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * CodeViewer is a read only view to display highlighted code, it has no editing machinery
+ * such as text watchers, input filters or auto complete, the syntax highlighting is done once
+ * on a background thread into an immutable text and the plain text is shown until it's ready
+ *
+ * Every viewer has its own highlighter thread, it's stopped when the view is detached, and the
+ * patterns have the same timeout as the patterns of CodeView
+ *
+ * @since 1.3.6
+ */
+public class CodeViewer extends AppCompatTextView {
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Map<Pattern, Integer> mSyntaxPatternMap = new HashMap<>();
+    private final Map<Pattern, Integer> mTokenPatternMap = new LinkedHashMap<>();
+    private final SyntaxPalette mSyntaxPalette = new SyntaxPalette();
+    private final SyntaxColorRefresher mSyntaxColorRefresher = new SyntaxColorRefresher();
+    private SyntaxGrammar mSyntaxGrammar;
+    private int[] mSyntaxGrammarTypeIds;
+    private final PatternGuard mPatternGuard = new PatternGuard();
+    private final BackgroundHighlighter mBackgroundHighlighter =
+            new BackgroundHighlighter(mPatternGuard, mMainHandler, "CodeViewer highlighter");
+    private boolean mHighlightOnAttach = false;
+
+    private CharSequence code = "";
+
+    private Rect lineNumberRect;
+    private Paint lineNumberPaint;
+    private boolean enableLineNumber = false;
+    private int lineNumberDigits = 0;
+
+    public CodeViewer(Context context) {
+        super(context);
+        initViewer();
+    }
+
+    public CodeViewer(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        initViewer();
+    }
+
+    public CodeViewer(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        initViewer();
+    }
+
+    private void initViewer() {
+        setHorizontallyScrolling(true);
+        // Use the highlighted text as it's without copying it into a new Spannable
+        setSpannableFactory(mSpannableFactory);
+
+        lineNumberRect = new Rect();
+        lineNumberPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        lineNumberPaint.setStyle(Paint.Style.FILL);
+    }
+
+    /**
+     * Show the code, the plain code is shown directly and replaced by the highlighted one
+     * after it's highlighted on the background thread
+     * @param text The code to show
+     */
+    public void setCode(CharSequence text) {
+        code = text == null ? "" : text;
+        mBackgroundHighlighter.cancel();
+        mSyntaxColorRefresher.clear();
+        setText(code);
+
+        if (!hasSyntaxPatterns() || code.length() == 0) return;
+
+        final String source = code.toString();
+        mBackgroundHighlighter.start(source, mSyntaxPatternMap, mTokenPatternMap, mSyntaxGrammar,
+                mSyntaxGrammarTypeIds, mSyntaxPalette, new BackgroundHighlighter.Callback<Spannable>() {
+            @Override
+            Spannable prepare(SpanBuffer spans) {
+                Spannable highlighted = new SpannableString(source);
+                spans.applyTo(highlighted);
+                return highlighted;
+            }
+
+            @Override
+            void onHighlighted(Spannable highlighted) {
+                mSyntaxColorRefresher.clear();
+                setText(highlighted, BufferType.SPANNABLE);
+            }
+        });
+    }
+
+    /**
+     * @return The current code without highlighting
+     */
+    public CharSequence getCode() {
+        return code;
+    }
+
+    /**
+     * Setup the syntax of your data as a map of patterns with their colors
+     * @param syntaxPatterns Map of Patterns and Colors
+     */
+    public void setSyntaxPatternsMap(Map<Pattern, Integer> syntaxPatterns) {
+        mSyntaxPatternMap.clear();
+        mSyntaxPatternMap.putAll(syntaxPatterns);
+        for (Pattern pattern : syntaxPatterns.keySet()) mPatternGuard.check(pattern.pattern());
+    }
+
+    /**
+     * Add Single syntax as a Pattern with one Color
+     * @param pattern Syntax feature pattern
+     * @param color Colors used when highlighting the pattern
+     */
+    public void addSyntaxPattern(Pattern pattern, @ColorInt int color) {
+        mSyntaxPatternMap.put(pattern, color);
+        mPatternGuard.check(pattern.pattern());
+    }
+
+    /**
+     * Add a syntax pattern that highlights its matches as a token type, the color of the token
+     * type comes from the syntax theme
+     * @param pattern Syntax feature pattern
+     * @param tokenType The name of the token type like keyword or comment
+     */
+    public void addSyntaxTokenPattern(Pattern pattern, String tokenType) {
+        mTokenPatternMap.put(pattern, mSyntaxPalette.getTypeId(tokenType));
+        mPatternGuard.check(pattern.pattern());
+    }
+
+    /**
+     * Setup the syntax of your data as a map of patterns with their token types,
+     * the patterns are applied in the map iteration order
+     * @param tokenPatterns Map of Patterns and token types
+     */
+    public void setSyntaxTokenPatternsMap(Map<Pattern, String> tokenPatterns) {
+        mTokenPatternMap.clear();
+        for (Map.Entry<Pattern, String> entry : tokenPatterns.entrySet()) {
+            addSyntaxTokenPattern(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Set the grammar that highlights the code with token types, the same grammar
+     * can be shared with the CodeView of the same language
+     * @param grammar The grammar of the code or null to remove the current grammar
+     */
+    public void setSyntaxGrammar(SyntaxGrammar grammar) {
+        mSyntaxGrammar = grammar;
+        if (grammar == null) {
+            mSyntaxGrammarTypeIds = null;
+            return;
+        }
+        int ruleCount = grammar.getRuleCount();
+        mSyntaxGrammarTypeIds = new int[ruleCount];
+        for (int i = 0; i < ruleCount; i++) {
+            mSyntaxGrammarTypeIds[i] = mSyntaxPalette.getTypeId(grammar.getTokenType(i));
+            mPatternGuard.check(grammar.getRule(i));
+        }
+    }
+
+    /**
+     * Set the maximum time of running one pattern over the code, a pattern that takes more time
+     * is stopped and not used again until the syntax patterns are reset
+     * @param timeoutMillis The pattern timeout in milliseconds, the default is one second
+     */
+    public void setPatternTimeout(long timeoutMillis) {
+        mPatternGuard.setTimeout(timeoutMillis);
+    }
+
+    /**
+     * Set a listener to get the warnings of the patterns that can backtrack exponentially
+     * when they are added, and the patterns that are stopped after the pattern timeout
+     * @param listener The patterns errors listener or null
+     */
+    public void setOnPatternErrorListener(OnPatternErrorListener listener) {
+        mPatternGuard.setListener(listener);
+    }
+
+    /**
+     * Change the color of one token type, the code is drawn with the new color
+     * without highlighting it again
+     * @param tokenType The name of the token type
+     * @param color The new color of the token type
+     */
+    public void setSyntaxTokenColor(String tokenType, @ColorInt int color) {
+        mSyntaxPalette.setColor(tokenType, color);
+        redrawSyntaxColors();
+    }
+
+    /**
+     * Replace the colors of all the token types, the token types that are not in the theme
+     * are drawn with the text color
+     * @param theme Map of token types and their colors
+     */
+    public void setSyntaxTheme(Map<String, Integer> theme) {
+        mSyntaxPalette.clearColors();
+        for (Map.Entry<String, Integer> entry : theme.entrySet()) {
+            mSyntaxPalette.setColor(entry.getKey(), entry.getValue());
+        }
+        redrawSyntaxColors();
+    }
+
+    // The drawing of a selectable text is cached like in CodeView, so the visible text is refreshed
+    private void redrawSyntaxColors() {
+        final CharSequence text = getText();
+        final Layout layout = getLayout();
+        if (!(text instanceof Spannable) || layout == null) {
+            invalidate();
+            return;
+        }
+        mSyntaxColorRefresher.refresh((Spannable) text, getVisibleTextStart(layout), getVisibleTextEnd(layout));
+    }
+
+    @Override
+    protected void onScrollChanged(int horizontal, int vertical, int oldHorizontal, int oldVertical) {
+        super.onScrollChanged(horizontal, vertical, oldHorizontal, oldVertical);
+        if (!mSyntaxColorRefresher.isPending()) return;
+        final CharSequence text = getText();
+        final Layout layout = getLayout();
+        if (!(text instanceof Spannable) || layout == null) return;
+        mSyntaxColorRefresher.refreshVisible((Spannable) text, getVisibleTextStart(layout), getVisibleTextEnd(layout));
+    }
+
+    private int getVisibleTextStart(Layout layout) {
+        return layout.getLineStart(layout.getLineForVertical(getScrollY() - getExtendedPaddingTop()));
+    }
+
+    private int getVisibleTextEnd(Layout layout) {
+        return layout.getLineEnd(layout.getLineForVertical(getScrollY() + getHeight() - getExtendedPaddingTop()));
+    }
+
+    /**
+     * Remove all syntax patterns, token patterns and the grammar
+     */
+    public void resetSyntaxPatternList() {
+        mSyntaxPatternMap.clear();
+        mTokenPatternMap.clear();
+        mSyntaxGrammar = null;
+        mSyntaxGrammarTypeIds = null;
+        mPatternGuard.enableAll();
+    }
+
+    /**
+     * Highlight the current code again with the current syntax patterns
+     */
+    public void reHighlightSyntax() {
+        setCode(code);
+    }
+
+    /**
+     * Enable or disable the line number feature
+     * @param enableLineNumber Flag to enable or disable line number
+     */
+    public void setEnableLineNumber(boolean enableLineNumber) {
+        this.enableLineNumber = enableLineNumber;
+        lineNumberDigits = 0;
+        invalidate();
+    }
+
+    /**
+     * Modify the line number text color
+     * @param color The new color value
+     */
+    public void setLineNumberTextColor(int color) {
+        lineNumberPaint.setColor(color);
+    }
+
+    /**
+     * Modify the line number text size
+     * @param size The new size value
+     */
+    public void setLineNumberTextSize(float size) {
+        lineNumberPaint.setTextSize(size);
+    }
+
+    /**
+     * Modify the typeface of line number
+     * @param typeface The typeface to be set
+     */
+    public void setLineNumberTypeface(Typeface typeface) {
+        lineNumberPaint.setTypeface(typeface);
+    }
+
+    private boolean hasSyntaxPatterns() {
+        return !mSyntaxPatternMap.isEmpty() || !mTokenPatternMap.isEmpty() || mSyntaxGrammar != null;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // The highlight that was stopped by detaching the view, like a recycled list item
+        if (mHighlightOnAttach) {
+            mHighlightOnAttach = false;
+            reHighlightSyntax();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mHighlightOnAttach = mBackgroundHighlighter.isRunning();
+        mBackgroundHighlighter.shutdown();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final Layout layout = getLayout();
+        if (enableLineNumber && layout != null) {
+            final int lineCount = layout.getLineCount();
+            final int digits = (int) (Math.log10(Math.max(1, lineCount)) + 1);
+            if (digits != lineNumberDigits) {
+                lineNumberDigits = digits;
+                setPadding(40 + digits * 10, getPaddingTop(), getPaddingRight(), getPaddingBottom());
+            }
+
+            // Lines are never wrapped so every layout line is a source line,
+            // and only the visible lines are drawn
+            canvas.getClipBounds(lineNumberRect);
+            final int offset = getExtendedPaddingTop();
+            final int firstLine = layout.getLineForVertical(lineNumberRect.top - offset);
+            final int lastLine = layout.getLineForVertical(lineNumberRect.bottom - offset);
+            for (int i = firstLine; i <= lastLine; i++) {
+                int baseline = layout.getLineBaseline(i) + offset;
+                canvas.drawText(" " + (i + 1), getScrollX(), baseline, lineNumberPaint);
+            }
+        }
+        super.onDraw(canvas);
+    }
+
+    private final Spannable.Factory mSpannableFactory = new Spannable.Factory() {
+        @Override
+        public Spannable newSpannable(CharSequence source) {
+            if (source instanceof Spannable) return (Spannable) source;
+            return super.newSpannable(source);
+        }
+    };
+}
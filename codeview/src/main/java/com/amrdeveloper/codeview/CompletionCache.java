@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache of the last finished completion request, its codes are used for the longer prefixes
+ * of the same word as long as the text is changed only inside that word
+ *
+ * The region of the word starts at the word start and grows and shrinks with the edits inside it,
+ * any edit outside the region can change the completions so it drops the cache
+ *
+ * @since 1.3.6
+ */
+final class CompletionCache {
+
+    private List<Code> codes;
+    private String prefix;
+    private int regionStart;
+    private int regionEnd;
+
+    void put(int wordStart, String prefix, List<Code> codes) {
+        this.codes = codes;
+        this.prefix = prefix;
+        this.regionStart = wordStart;
+        this.regionEnd = wordStart + prefix.length();
+    }
+
+    /**
+     * @return The cached codes filtered by the prefix, or null if the cache is not for this word
+     * or the prefix doesn't refine the cached prefix
+     */
+    List<Code> get(int wordStart, String newPrefix) {
+        if (codes == null || wordStart != regionStart || !newPrefix.startsWith(prefix)) return null;
+        if (newPrefix.length() == prefix.length()) return codes;
+
+        // The same matching as CodeViewAdapter filter
+        String filterPattern = newPrefix.toLowerCase();
+        List<Code> filtered = new ArrayList<>();
+        for (Code code : codes) {
+            if (code.getCodePrefix().toLowerCase().contains(filterPattern)) filtered.add(code);
+        }
+        return filtered;
+    }
+
+    void clear() {
+        codes = null;
+        prefix = null;
+    }
+
+    void onTextChanged(int start, int before, int count) {
+        if (codes == null) return;
+        if (start < regionStart || start + before > regionEnd) {
+            clear();
+            return;
+        }
+        regionEnd += count - before;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+/**
+ * Interface used to provide the auto complete codes of the word before the cursor, like the
+ * names from a language server or a parser, CodeView calls it on a background thread and shows
+ * the results in its {@link CodeViewAdapter}
+ *
+ * When the user continues typing the same word, the codes of the shorter prefix are filtered
+ * by CodeView without calling the provider again
+ *
+ * @since 1.3.6
+ */
+public interface CompletionProvider {
+
+    /**
+     * Called on a background thread, the codes can be added to the results in batches and every
+     * batch is shown while the provider is still running, if the user changes the text before the
+     * provider is finished the results are cancelled and the thread is interrupted
+     * @param snapshot The text to complete, it never changes so it can be read without locking
+     * @param cursor The cursor position in the snapshot text
+     * @param prefix The part of the word before the cursor
+     * @param results The results to add the codes to
+     */
+    void provideCompletions(TextSnapshot snapshot, int cursor, String prefix, CompletionResults results);
+}
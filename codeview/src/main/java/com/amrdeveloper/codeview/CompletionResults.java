@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The codes of one completion request, the provider adds them from its background thread and
+ * they are shown on the main thread, many batches that are added before the main thread shows
+ * the first one are shown together
+ *
+ * @since 1.3.6
+ */
+public final class CompletionResults {
+
+    interface Listener {
+        void onCompletionResults(CompletionResults results, List<Code> codes, boolean finished);
+    }
+
+    private final Handler handler;
+    private final Listener listener;
+    private final List<Code> codes = new ArrayList<>();
+    private volatile boolean cancelled;
+    private boolean finished;
+    private boolean publishPosted;
+
+    CompletionResults(Handler handler, Listener listener) {
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    /**
+     * Add one code to the results
+     */
+    public void add(Code code) {
+        synchronized (codes) {
+            codes.add(code);
+        }
+        postPublish();
+    }
+
+    /**
+     * Add a batch of codes to the results
+     */
+    public void addAll(Collection<? extends Code> newCodes) {
+        synchronized (codes) {
+            codes.addAll(newCodes);
+        }
+        postPublish();
+    }
+
+    /**
+     * @return {@code true} if the text is changed and the results will not be shown,
+     * so the provider can stop early
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    void finish() {
+        synchronized (codes) {
+            finished = true;
+        }
+        postPublish();
+    }
+
+    private void postPublish() {
+        synchronized (codes) {
+            if (cancelled || publishPosted) return;
+            publishPosted = true;
+        }
+        handler.post(publishRunnable);
+    }
+
+    private final Runnable publishRunnable = new Runnable() {
+        @Override
+        public void run() {
+            List<Code> currentCodes;
+            boolean isFinished;
+            synchronized (codes) {
+                publishPosted = false;
+                currentCodes = new ArrayList<>(codes);
+                isFinished = finished;
+            }
+            if (!cancelled) listener.onCompletionResults(CompletionResults.this, currentCodes, isFinished);
+        }
+    };
+}
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+/**
+ * Diagnostic is a message about a range of the source code like an error or a warning,
+ * CodeView moves the diagnostics ranges with the text when it's changed
+ *
+ * @since 1.3.6
+ */
+public class Diagnostic {
+
+    /**
+     * The importance of a diagnostic, every severity has its own color
+     */
+    public enum Severity {
+        ERROR,
+        WARNING,
+        INFO,
+        HINT
+    }
+
+    private final int start;
+    private final int end;
+    private final Severity severity;
+    private final String message;
+    private final int color;
+
+    /**
+     * @param start The start position of the range
+     * @param end The end position of the range
+     * @param severity The diagnostic severity
+     * @param message The diagnostic message, can be null
+     */
+    public Diagnostic(int start, int end, Severity severity, String message) {
+        this(start, end, severity, message, 0);
+    }
+
+    /**
+     * @param start The start position of the range
+     * @param end The end position of the range
+     * @param severity The diagnostic severity
+     * @param message The diagnostic message, can be null
+     * @param color The color of this diagnostic, or 0 to use the color of its severity
+     */
+    public Diagnostic(int start, int end, Severity severity, String message, int color) {
+        this.start = start;
+        this.end = end;
+        this.severity = severity;
+        this.message = message;
+        this.color = color;
+    }
+
+    /**
+     * @return The start position of the diagnostic range
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return The end position of the diagnostic range
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The color of this diagnostic, or 0 if it uses the color of its severity
+     */
+    public int getColor() {
+        return color;
+    }
+
+    /**
+     * @return The same diagnostic with a new range
+     */
+    Diagnostic withRange(int start, int end) {
+        if (start == this.start && end == this.end) return this;
+        return new Diagnostic(start, end, severity, message, color);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Interval tree of the diagnostics ranges, it's a treap ordered by the ranges starts where every node
+ * knows the max end of its subtree, so the diagnostics of a position or a range are found in O(log n + k)
+ *
+ * A text change shifts all the ranges after it by adding a lazy delta to their subtree root, only the
+ * ranges that cross the changed text are updated one by one, a range that its text is removed is dropped
+ *
+ * @since 1.3.6
+ */
+final class DiagnosticTree {
+
+    private static final class Node {
+        final Diagnostic diagnostic;
+        final int priority;
+        int start;
+        int end;
+        int maxEnd;
+        int size;
+        // Pending shift of the children ranges
+        int delta;
+        Node left;
+        Node right;
+
+        Node(Diagnostic diagnostic, int start, int end, int priority) {
+            this.diagnostic = diagnostic;
+            this.start = start;
+            this.end = end;
+            this.priority = priority;
+            this.maxEnd = end;
+            this.size = 1;
+        }
+    }
+
+    private final Random random = new Random();
+    private Node root;
+
+    int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    void clear() {
+        root = null;
+    }
+
+    void add(Diagnostic diagnostic) {
+        Node node = new Node(diagnostic, diagnostic.getStart(), diagnostic.getEnd(), random.nextInt());
+        Node[] parts = split(root, node.start);
+        root = merge(merge(parts[0], node), parts[1]);
+    }
+
+    /**
+     * Remove the diagnostics that start between start and end
+     * @return The number of the removed diagnostics
+     */
+    int removeStartingIn(int start, int end) {
+        Node[] parts = split(root, start);
+        Node[] rightParts = split(parts[1], end + 1);
+        root = merge(parts[0], rightParts[1]);
+        return rightParts[0] == null ? 0 : rightParts[0].size;
+    }
+
+    /**
+     * Remove the diagnostics that are in the set, the tree is built again from the other diagnostics
+     * @return The number of the removed diagnostics
+     */
+    int removeAll(Set<Diagnostic> diagnostics) {
+        if (root == null || diagnostics.isEmpty()) return 0;
+        List<Node> nodes = new ArrayList<>(root.size);
+        collect(root, nodes);
+        root = null;
+        int removed = 0;
+        for (Node node : nodes) {
+            if (diagnostics.contains(node.diagnostic)) {
+                removed++;
+                continue;
+            }
+            // The nodes are in the order of their starts so every node is merged after the tree
+            node.left = null;
+            node.right = null;
+            update(node);
+            root = merge(root, node);
+        }
+        return removed;
+    }
+
+    /**
+     * Add the diagnostics that their ranges touch the range between start and end to the result
+     * in the order of their starts
+     */
+    void query(int start, int end, List<Diagnostic> result) {
+        query(root, start, end, result);
+    }
+
+    private static void query(Node node, int start, int end, List<Diagnostic> result) {
+        if (node == null || node.maxEnd < start) return;
+        push(node);
+        query(node.left, start, end, result);
+        if (node.start > end) return;
+        if (node.end >= start) result.add(node.diagnostic.withRange(node.start, node.end));
+        query(node.right, start, end, result);
+    }
+
+    /**
+     * Update the ranges after {@code before} characters starting from {@code start} are replaced
+     * by {@code count} new characters
+     */
+    void onTextChanged(int start, int before, int count) {
+        if (root == null) return;
+        int delta = count - before;
+        int removedEnd = start + before;
+
+        Node[] parts = split(root, start);
+        Node[] rightParts = split(parts[1], removedEnd);
+        Node left = parts[0];
+        Node removed = rightParts[0];
+        Node after = rightParts[1];
+
+        // The ranges after the change are shifted together
+        shift(after, delta);
+
+        // The ranges that start before the change may end inside or after it
+        updateEnds(left, start, removedEnd, delta);
+
+        // The ranges that start in the removed text start at the change, or are dropped if all their text is removed
+        if (removed != null) {
+            List<Node> nodes = new ArrayList<>(removed.size);
+            collect(removed, nodes);
+            for (Node node : nodes) {
+                boolean empty = node.start == node.end;
+                int newEnd = shiftEnd(node.end, start, removedEnd, delta);
+                if (newEnd <= start && !empty) continue;
+                Node moved = new Node(node.diagnostic, start, Math.max(start, newEnd), node.priority);
+                left = merge(left, moved);
+            }
+        }
+        root = merge(left, after);
+    }
+
+    // The new end of a range that ends after the change start
+    private static int shiftEnd(int end, int start, int removedEnd, int delta) {
+        if (end > removedEnd || (end == removedEnd && end > start)) return end + delta;
+        return Math.min(end, start);
+    }
+
+    private static void updateEnds(Node node, int start, int removedEnd, int delta) {
+        if (node == null || node.maxEnd <= start) return;
+        push(node);
+        updateEnds(node.left, start, removedEnd, delta);
+        updateEnds(node.right, start, removedEnd, delta);
+        node.end = shiftEnd(node.end, start, removedEnd, delta);
+        update(node);
+    }
+
+    private static void collect(Node node, List<Node> nodes) {
+        if (node == null) return;
+        push(node);
+        collect(node.left, nodes);
+        nodes.add(node);
+        collect(node.right, nodes);
+    }
+
+    private static void shift(Node node, int delta) {
+        if (node == null || delta == 0) return;
+        node.start += delta;
+        node.end += delta;
+        node.maxEnd += delta;
+        node.delta += delta;
+    }
+
+    private static void push(Node node) {
+        if (node.delta == 0) return;
+        shift(node.left, node.delta);
+        shift(node.right, node.delta);
+        node.delta = 0;
+    }
+
+    private static void update(Node node) {
+        node.size = 1;
+        node.maxEnd = node.end;
+        if (node.left != null) {
+            node.size += node.left.size;
+            node.maxEnd = Math.max(node.maxEnd, node.left.maxEnd);
+        }
+        if (node.right != null) {
+            node.size += node.right.size;
+            node.maxEnd = Math.max(node.maxEnd, node.right.maxEnd);
+        }
+    }
+
+    // Split the tree to the ranges that start before the key and the ranges that start at it or after it
+    private static Node[] split(Node node, int key) {
+        if (node == null) return new Node[] {null, null};
+        push(node);
+        if (node.start < key) {
+            Node[] parts = split(node.right, key);
+            node.right = parts[0];
+            update(node);
+            parts[0] = node;
+            return parts;
+        } else {
+            Node[] parts = split(node.left, key);
+            node.left = parts[1];
+            update(node);
+            parts[1] = node;
+            return parts;
+        }
+    }
+
+    // Merge two trees where all the ranges of the first tree start before or with the ranges of the second
+    private static Node merge(Node first, Node second) {
+        if (first == null) return second;
+        if (second == null) return first;
+        if (first.priority > second.priority) {
+            push(first);
+            first.right = merge(first.right, second);
+            update(first);
+            return first;
+        } else {
+            push(second);
+            second.left = merge(first, second.left);
+            update(second);
+            return second;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+import java.util.List;
+
+/**
+ * Interface used to compute the diagnostics of the text like a linter or a compiler,
+ * CodeView calls it on a background thread after the user stops editing for a while
+ *
+ * @since 1.3.6
+ */
+public interface DiagnosticsProvider {
+
+    /**
+     * Called on a background thread with a snapshot of the text, if the text is changed
+     * before the diagnostics are ready the thread is interrupted and the result is ignored,
+     * so a long analysis can check {@link Thread#isInterrupted()} to stop early
+     * @param snapshot The text to analyze, it never changes so it can be read without locking
+     * @return The diagnostics with ranges in the snapshot text
+     */
+    List<Diagnostic> provideDiagnostics(TextSnapshot snapshot);
+}
@@ -0,0 +1,54 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.amrdeveloper.codeview;
+
+import java.io.IOException;
+
+/**
+ * Interface used to listen to the progress of loading a file into CodeView,
+ * all the methods are called on the main thread
+ *
+ * @since 1.3.6
+ */
+public interface FileLoadListener {
+
+    /**
+     * Called after every loaded page of the file is added to the text
+     * @param loadedBytes The number of bytes loaded until now
+     * @param totalBytes The file size in bytes
+     */
+    void onLoadProgress(long loadedBytes, long totalBytes);
+
+    /**
+     * Called after the full file is loaded
+     */
+    void onLoadFinished();
+
+    /**
+     * Called if reading the file failed, the loaded part of the file is kept
+     * @param exception The reading exception
+     */
+    void onLoadFailed(IOException exception);
+}
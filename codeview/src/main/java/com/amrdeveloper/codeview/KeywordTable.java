@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+import java.util.Map;
+
+/**
+ * Perfect hash table of words, the table size and the hash seed are chosen when it's built so every
+ * word has its own slot, then looking up a word from the text is one hash and one compare without
+ * creating a string for it
+ *
+ * @since 1.3.6
+ */
+final class KeywordTable {
+
+    private static final int SEED_ATTEMPTS = 64;
+
+    private final String[] slotWords;
+    private final int[] slotValues;
+    private final int seed;
+    private final int minLength;
+    private final int maxLength;
+
+    /**
+     * @param words Map of the words and their values
+     */
+    KeywordTable(Map<String, Integer> words) {
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (String word : words.keySet()) {
+            min = Math.min(min, word.length());
+            max = Math.max(max, word.length());
+        }
+        minLength = min;
+        maxLength = max;
+
+        int size = Integer.highestOneBit(Math.max(1, words.size()) * 2 - 1) << 1;
+        while (true) {
+            for (int seed = 1; seed <= SEED_ATTEMPTS; seed++) {
+                String[] candidateWords = new String[size];
+                int[] candidateValues = new int[size];
+                if (fill(words, seed, candidateWords, candidateValues)) {
+                    this.seed = seed;
+                    this.slotWords = candidateWords;
+                    this.slotValues = candidateValues;
+                    return;
+                }
+            }
+            size <<= 1;
+        }
+    }
+
+    // Put every word in its slot, return false if two words have the same slot
+    private static boolean fill(Map<String, Integer> words, int seed, String[] slotWords, int[] slotValues) {
+        int mask = slotWords.length - 1;
+        for (Map.Entry<String, Integer> entry : words.entrySet()) {
+            String word = entry.getKey();
+            int slot = hash(word, 0, word.length(), seed) & mask;
+            if (slotWords[slot] != null) return false;
+            slotWords[slot] = word;
+            slotValues[slot] = entry.getValue();
+        }
+        return true;
+    }
+
+    /**
+     * @return The value of the word between start and end of the text, or -1 if it's not in the table
+     */
+    int get(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length < minLength || length > maxLength) return -1;
+        int slot = hash(text, start, end, seed) & (slotWords.length - 1);
+        String word = slotWords[slot];
+        if (word == null || word.length() != length) return -1;
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != text.charAt(start + i)) return -1;
+        }
+        return slotValues[slot];
+    }
+
+    private static int hash(CharSequence text, int start, int end, int seed) {
+        int hash = seed;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ text.charAt(i)) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+}
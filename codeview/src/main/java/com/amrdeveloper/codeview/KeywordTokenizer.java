@@ -33,14 +33,15 @@ public class KeywordTokenizer implements MultiAutoCompleteTextView.Tokenizer {
 
     @Override
     public int findTokenStart(CharSequence charSequence, int cursor) {
-        String sequenceStr = charSequence.toString();
-        sequenceStr = sequenceStr.substring(0, cursor);
+        int index = 0;
+        for (int i = cursor - 1; i > 0; i--) {
+            char c = charSequence.charAt(i);
+            if (c == ' ' || c == '\n' || c == '(') {
+                index = i;
+                break;
+            }
+        }
 
-        int spaceIndex = sequenceStr.lastIndexOf(" ");
-        int lineIndex = sequenceStr.lastIndexOf("\n");
-        int bracketIndex = sequenceStr.lastIndexOf("(");
-
-        int index = Math.max(0, Math.max(spaceIndex, Math.max(lineIndex, bracketIndex)));
         if(index == 0) return 0;
         return (index + 1 < charSequence.length()) ? index + 1 : index;
     }
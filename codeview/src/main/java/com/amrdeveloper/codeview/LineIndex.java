@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.amrdeveloper.codeview;
+
+/**
+ * Incremental index of the source lines start positions, the lines are split only by
+ * line breaks so they are not changed by the view width like the layout lines
+ *
+ * The starts are stored in a gap buffer, the starts before the gap are absolute positions and
+ * the starts after it are relative to the end of text, so an edit only moves the gap to the
+ * edited line and the following lines are shifted without updating them
+ *
+ * @since 1.3.6
+ */
+final class LineIndex {
+
+    private int[] starts = new int[64];
+    private int gapStart = 1;
+    private int gapEnd = starts.length;
+    private int textLength = 0;
+
+    /**
+     * Drop the current index and scan the full text again
+     */
+    void rebuild(CharSequence text) {
+        gapStart = 1;
+        gapEnd = starts.length;
+        textLength = text.length();
+        starts[0] = 0;
+        insertLineStarts(text, 0, textLength);
+    }
+
+    /**
+     * Update the index after {@code before} characters starting from {@code start}
+     * are replaced by {@code count} new characters, with the same arguments as
+     * {@link android.text.TextWatcher#onTextChanged(CharSequence, int, int, int)}
+     */
+    void onTextChanged(CharSequence text, int start, int before, int count) {
+        moveGap(getLineForOffset(start) + 1);
+
+        // The lines that start after removed line breaks are removed
+        while (gapEnd < starts.length && starts[gapEnd] + textLength <= start + before) gapEnd++;
+
+        textLength += count - before;
+        insertLineStarts(text, start, start + count);
+    }
+
+    /**
+     * @return The number of source lines, an empty text has one line
+     */
+    int getLineCount() {
+        return starts.length - (gapEnd - gapStart);
+    }
+
+    /**
+     * @return The line that contains the offset, in O(log lines)
+     */
+    int getLineForOffset(int offset) {
+        int low = 0;
+        int high = getLineCount() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (getLineStart(mid) <= offset) low = mid;
+            else high = mid - 1;
+        }
+        return low;
+    }
+
+    /**
+     * @return The start position of the line
+     */
+    int getLineStart(int line) {
+        if (line < gapStart) return starts[line];
+        return starts[line + gapEnd - gapStart] + textLength;
+    }
+
+    /**
+     * @return The end position of the line without its line break
+     */
+    int getLineEnd(int line) {
+        if (line + 1 >= getLineCount()) return textLength;
+        return getLineStart(line + 1) - 1;
+    }
+
+    private void insertLineStarts(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) != '\n') continue;
+            if (gapStart == gapEnd) grow();
+            starts[gapStart++] = i + 1;
+        }
+    }
+
+    private void moveGap(int index) {
+        while (gapStart > index) {
+            gapStart--;
+            gapEnd--;
+            starts[gapEnd] = starts[gapStart] - textLength;
+        }
+        while (gapStart < index) {
+            starts[gapStart] = starts[gapEnd] + textLength;
+            gapStart++;
+            gapEnd++;
+        }
+    }
+
+    private void grow() {
+        int[] grown = new int[starts.length * 2];
+        int tail = starts.length - gapEnd;
+        System.arraycopy(starts, 0, grown, 0, gapStart);
+        System.arraycopy(starts, gapEnd, grown, grown.length - tail, tail);
+        gapEnd = grown.length - tail;
+        starts = grown;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+/**
+ * Interface used to listen to the problems of the syntax and search patterns,
+ * all the methods are called on the main thread
+ *
+ * @since 1.3.6
+ */
+public interface OnPatternErrorListener {
+
+    /**
+     * Called when a pattern is added that can take exponential time on some texts,
+     * like a repeated group that has another repeated part (a+)+
+     * @param regex The regex of the pattern
+     * @param warning The description of the problem
+     */
+    void onPatternWarning(String regex, String warning);
+
+    /**
+     * Called when a pattern is stopped because it took more time than the pattern timeout,
+     * a syntax pattern is not used again until the patterns are reset
+     * @param regex The regex of the pattern
+     * @param timeoutMillis The pattern timeout in milliseconds
+     */
+    void onPatternTimeout(String regex, long timeoutMillis);
+}
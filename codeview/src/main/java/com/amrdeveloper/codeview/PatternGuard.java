@@ -0,0 +1,391 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Keep a bad pattern from freezing the editor, every pattern runs over a text that stops it with
+ * PatternTimeoutException after the timeout, the pattern is then disabled and reported, and the
+ * patterns are checked when they are added for repeated groups that can backtrack exponentially
+ *
+ * The text checks the time while the matcher reads its characters, but the matcher of Android copies
+ * the text before matching it, so there the time is only checked between the matches, a pattern that
+ * is slow on one match is stopped by running it on a PatternWorker and abandoning its thread after
+ * the timeout, the guard of a background highlight keeps its running pattern for that
+ *
+ * @since 1.3.6
+ */
+final class PatternGuard {
+
+    static final long DEFAULT_TIMEOUT = 1000;
+
+    private static final String TAG = "CodeView";
+    private static final int STEPS_PER_CHECK = 1024;
+
+    // The guards of the background passes share the disabled patterns and report through their parent
+    private final PatternGuard parent;
+    private final Map<Object, Boolean> disabledPatterns;
+    private volatile long timeoutMillis = DEFAULT_TIMEOUT;
+    private OnPatternErrorListener listener;
+    private Handler mainHandler;
+    private volatile GuardedText running;
+
+    PatternGuard() {
+        parent = null;
+        disabledPatterns = Collections.synchronizedMap(new IdentityHashMap<Object, Boolean>());
+    }
+
+    private PatternGuard(PatternGuard parent) {
+        this.parent = parent;
+        disabledPatterns = parent.disabledPatterns;
+        timeoutMillis = parent.timeoutMillis;
+    }
+
+    /**
+     * @return A guard for one pass of the patterns on a background thread, it shares the disabled
+     * patterns of this guard and keeps the text of its running pattern
+     */
+    PatternGuard newPass() {
+        return new PatternGuard(this);
+    }
+
+    void setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    long getTimeout() {
+        return timeoutMillis;
+    }
+
+    void setListener(OnPatternErrorListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return A text that stops the matcher after the timeout
+     */
+    GuardedText guard(CharSequence text) {
+        return guard(null, text);
+    }
+
+    /**
+     * @param pattern A Pattern or a SyntaxGrammar
+     * @return A text that stops the matcher of the pattern after the timeout, it's the running text
+     * of this guard until it's released
+     */
+    GuardedText guard(Object pattern, CharSequence text) {
+        GuardedText guardedText = new GuardedText(pattern, text, SystemClock.uptimeMillis() + timeoutMillis);
+        running = guardedText;
+        return guardedText;
+    }
+
+    /**
+     * Called when the pattern of the text is finished
+     */
+    void release(GuardedText text) {
+        if (running == text) running = null;
+    }
+
+    /**
+     * @return The text of the pattern that is running now or null
+     */
+    GuardedText getRunning() {
+        return running;
+    }
+
+    /**
+     * @param pattern A Pattern or a SyntaxGrammar
+     * @return true if the pattern took more than the timeout before
+     */
+    boolean isDisabled(Object pattern) {
+        return disabledPatterns.containsKey(pattern);
+    }
+
+    /**
+     * Disable the pattern after its timeout and report it
+     * @param pattern A Pattern or a SyntaxGrammar
+     */
+    void disable(Object pattern) {
+        disabledPatterns.put(pattern, Boolean.TRUE);
+        reportTimeout(describe(pattern));
+    }
+
+    void enableAll() {
+        disabledPatterns.clear();
+    }
+
+    /**
+     * Log the timeout and report it to the listener on the main thread
+     */
+    void reportTimeout(final String regex) {
+        if (parent != null) {
+            parent.reportTimeout(regex);
+            return;
+        }
+        Log.w(TAG, "Pattern stopped after " + timeoutMillis + "ms: " + regex);
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            if (listener != null) listener.onPatternTimeout(regex, timeoutMillis);
+            return;
+        }
+        synchronized (this) {
+            if (mainHandler == null) mainHandler = new Handler(Looper.getMainLooper());
+        }
+        final long timeout = timeoutMillis;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (listener != null) listener.onPatternTimeout(regex, timeout);
+            }
+        });
+    }
+
+    /**
+     * @param pattern A Pattern or a SyntaxGrammar
+     * @return The regex of the pattern or the name of the grammar
+     */
+    static String describe(Object pattern) {
+        if (pattern instanceof SyntaxGrammar) return "grammar " + ((SyntaxGrammar) pattern).getName();
+        if (pattern instanceof Pattern) return ((Pattern) pattern).pattern();
+        return String.valueOf(pattern);
+    }
+
+    /**
+     * Report the regex if it has a repeated group that contains another repeated part
+     */
+    void check(String regex) {
+        String warning = findNestedQuantifier(regex);
+        if (warning == null) return;
+        Log.w(TAG, warning + ": " + regex);
+        if (listener != null) listener.onPatternWarning(regex, warning);
+    }
+
+    /**
+     * Find a repeated group that contains a repeated part like (a+)+, (\w*\s?)* or (.*,){12}, the matcher
+     * can try every way to split the text between the two quantifiers before it fails, possessive
+     * quantifiers and atomic groups don't backtrack so they are not reported
+     * @return The description of the nested quantifier or null if there is no one
+     */
+    static String findNestedQuantifier(String regex) {
+        int length = regex.length();
+        // The groups stack, the root is the whole regex
+        boolean[] repeats = new boolean[length + 1];
+        boolean[] atomic = new boolean[length + 1];
+        int[] starts = new int[length + 1];
+        int depth = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < length && regex.charAt(i + 1) == 'Q') {
+                    int quoteEnd = regex.indexOf("\\E", i + 2);
+                    i = quoteEnd == -1 ? length : quoteEnd + 1;
+                } else {
+                    i++;
+                }
+            } else if (c == '[') {
+                i = skipCharacterClass(regex, i);
+            } else if (c == '(') {
+                depth++;
+                repeats[depth] = false;
+                atomic[depth] = regex.startsWith("?>", i + 1);
+                starts[depth] = i;
+            } else if (c == ')' && depth > 0) {
+                boolean groupRepeats = repeats[depth] && !atomic[depth];
+                int groupStart = starts[depth];
+                depth--;
+                int quantifierEnd = quantifierEnd(regex, i + 1);
+                boolean quantified = isBacktrackingRepeat(regex, i + 1, quantifierEnd);
+                if (quantified && groupRepeats) {
+                    return "Nested quantifier in " + regex.substring(groupStart, quantifierEnd)
+                            + " can backtrack catastrophically";
+                }
+                repeats[depth] |= groupRepeats || quantified;
+                i = quantifierEnd - 1;
+            } else if (c == '*' || c == '+' || c == '{') {
+                int quantifierEnd = quantifierEnd(regex, i);
+                if (isBacktrackingRepeat(regex, i, quantifierEnd)) repeats[depth] = true;
+                if (quantifierEnd > i) i = quantifierEnd - 1;
+            }
+        }
+        return null;
+    }
+
+    // The end of the character class that starts at the index
+    private static int skipCharacterClass(String regex, int start) {
+        int length = regex.length();
+        int depth = 0;
+        int i = start;
+        while (i < length) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+                // A closing bracket right after the opening is a character of the class
+                if (i + 1 < length && regex.charAt(i + 1) == '^') i++;
+                if (i + 1 < length && regex.charAt(i + 1) == ']') i++;
+            } else if (c == ']') {
+                depth--;
+                if (depth == 0) return i;
+            }
+            i++;
+        }
+        return length;
+    }
+
+    // The end of the quantifier that starts at the index with its lazy or possessive suffix,
+    // or the index if there is no quantifier
+    private static int quantifierEnd(String regex, int index) {
+        int length = regex.length();
+        if (index >= length) return index;
+        char c = regex.charAt(index);
+        int end;
+        if (c == '*' || c == '+' || c == '?') {
+            end = index + 1;
+        } else if (c == '{') {
+            int close = regex.indexOf('}', index);
+            if (close == -1 || !isRepeatRange(regex.substring(index + 1, close))) return index;
+            end = close + 1;
+        } else {
+            return index;
+        }
+        if (end < length && (regex.charAt(end) == '?' || regex.charAt(end) == '+')) end++;
+        return end;
+    }
+
+    // A quantifier that can repeat more than once and gives back its characters when the match fails
+    private static boolean isBacktrackingRepeat(String regex, int start, int end) {
+        if (end == start) return false;
+        if (end - start > 1 && regex.charAt(end - 1) == '+') return false;
+        char c = regex.charAt(start);
+        if (c == '?') return false;
+        if (c != '{') return true;
+        String range = regex.substring(start + 1, regex.indexOf('}', start));
+        int comma = range.indexOf(',');
+        String max = comma == -1 ? range : range.substring(comma + 1);
+        if (max.isEmpty()) return true;
+        try {
+            return Integer.parseInt(max) > 1;
+        } catch (NumberFormatException e) {
+            // Larger than an int, so it's as unbounded as {n,}
+            return true;
+        }
+    }
+
+    private static boolean isRepeatRange(String range) {
+        if (range.isEmpty()) return false;
+        boolean comma = false;
+        for (int i = 0; i < range.length(); i++) {
+            char c = range.charAt(i);
+            if (c == ',' && !comma && i > 0) comma = true;
+            else if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Thrown from the guarded text when a pattern takes more time than the timeout
+     */
+    static final class PatternTimeoutException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        PatternTimeoutException() {
+            super("Pattern timeout");
+        }
+    }
+
+    /**
+     * A text that throws PatternTimeoutException from charAt after the deadline
+     */
+    static final class GuardedText implements CharSequence {
+
+        private final Object pattern;
+        private final CharSequence text;
+        private final long deadline;
+        private int steps;
+
+        GuardedText(Object pattern, CharSequence text, long deadline) {
+            this.pattern = pattern;
+            this.text = text;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return The pattern that runs over the text, or null for a search
+         */
+        Object getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return The uptime in milliseconds after which the pattern is stopped
+         */
+        long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * @throws PatternTimeoutException if the deadline is passed
+         */
+        void checkDeadline() {
+            if (SystemClock.uptimeMillis() > deadline) throw new PatternTimeoutException();
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++steps == STEPS_PER_CHECK) {
+                steps = 0;
+                checkDeadline();
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
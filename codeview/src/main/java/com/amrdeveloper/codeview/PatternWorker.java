@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.amrdeveloper.codeview;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Background thread that runs the patterns of the highlighter or the search, a regex can't be stopped
+ * after its timeout because the matcher of Android copies the text and never checks the interrupts,
+ * so the thread of a slow pattern is abandoned to finish alone and the next tasks run on a new thread
+ *
+ * The abandoned threads of all the views are counted until they end, and no new thread is started
+ * while there are too many of them, so a bad pattern can't pile up threads that burn the CPU
+ *
+ * @since 1.3.6
+ */
+final class PatternWorker {
+
+    static final int MAX_ABANDONED_THREADS = 4;
+
+    private static final List<Thread> abandonedThreads = new ArrayList<>();
+
+    private final String name;
+    private ExecutorService executor;
+    private volatile Thread thread;
+
+    PatternWorker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return The future of the task, or null if a new thread is needed while
+     * too many abandoned threads are still running
+     */
+    Future<?> submit(Runnable task) {
+        ExecutorService worker = getExecutor();
+        return worker != null ? worker.submit(task) : null;
+    }
+
+    /**
+     * @return The future of the task, or null if a new thread is needed while
+     * too many abandoned threads are still running
+     */
+    <T> Future<T> submit(Callable<T> task) {
+        ExecutorService worker = getExecutor();
+        return worker != null ? worker.submit(task) : null;
+    }
+
+    /**
+     * Leave the current thread to finish its task alone, the queued tasks are dropped
+     * and the next task starts a new thread
+     */
+    void abandon() {
+        if (executor == null) return;
+        executor.shutdownNow();
+        executor = null;
+        Thread current = thread;
+        thread = null;
+        if (current == null) return;
+        synchronized (abandonedThreads) {
+            abandonedThreads.add(current);
+        }
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor != null) return executor;
+        if (countAbandonedThreads() >= MAX_ABANDONED_THREADS) return null;
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread worker = new Thread(runnable, name);
+                thread = worker;
+                return worker;
+            }
+        });
+        return executor;
+    }
+
+    // The abandoned threads that are still running, an idle thread ends right after it's abandoned
+    static int countAbandonedThreads() {
+        synchronized (abandonedThreads) {
+            Iterator<Thread> iterator = abandonedThreads.iterator();
+            while (iterator.hasNext()) {
+                if (!iterator.next().isAlive()) iterator.remove();
+            }
+            return abandonedThreads.size();
+        }
+    }
+}
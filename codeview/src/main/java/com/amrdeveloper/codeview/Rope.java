@@ -0,0 +1,342 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.amrdeveloper.codeview;
+
+/**
+ * Rope is an immutable text document stored as a balanced tree of small chunks
+ *
+ * Insert, delete and sub sequence are O(log n) and never copy the full text, every edit
+ * returns a new Rope that shares the unchanged chunks with the old one, so keeping old
+ * versions or reading them from other threads is safe and cheap
+ *
+ * @since 1.3.6
+ */
+public final class Rope implements CharSequence {
+
+    private static final int MAX_LEAF_LENGTH = 512;
+
+    public static final Rope EMPTY = new Rope(null);
+
+    private final Node root;
+
+    // The last leaf used by charAt to make sequential reads O(1)
+    private volatile LeafCursor lastLeaf;
+
+    private Rope(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Create a new Rope with the content of the text
+     * @param text The source text
+     * @return Rope with the same characters as the text
+     */
+    public static Rope of(CharSequence text) {
+        if (text instanceof Rope) return (Rope) text;
+        return of(text, 0, text.length());
+    }
+
+    /**
+     * Create a new Rope with a range of the text
+     * @param text The source text
+     * @param start The start of the range
+     * @param end The end of the range
+     * @return Rope with the same characters as the range of the text
+     */
+    public static Rope of(CharSequence text, int start, int end) {
+        if (start == end) return EMPTY;
+        return new Rope(build(text, start, end));
+    }
+
+    @Override
+    public int length() {
+        return length(root);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length());
+        }
+
+        LeafCursor cursor = lastLeaf;
+        if (cursor != null && index >= cursor.start && index < cursor.start + cursor.leaf.chars.length) {
+            return cursor.leaf.chars[index - cursor.start];
+        }
+
+        Node node = root;
+        int start = 0;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            int leftLength = branch.left.length;
+            if (index - start < leftLength) {
+                node = branch.left;
+            } else {
+                start += leftLength;
+                node = branch.right;
+            }
+        }
+
+        Leaf leaf = (Leaf) node;
+        lastLeaf = new LeafCursor(leaf, start);
+        return leaf.chars[index - start];
+    }
+
+    @Override
+    public Rope subSequence(int start, int end) {
+        checkRange(start, end);
+        if (start == 0 && end == length()) return this;
+        Node[] parts = split(root, end);
+        return new Rope(split(parts[0], start)[1]);
+    }
+
+    /**
+     * @return New Rope after inserting the text on the index
+     */
+    public Rope insert(int index, CharSequence text) {
+        return replace(index, index, text, 0, text.length());
+    }
+
+    /**
+     * @return New Rope after deleting the characters between start and end
+     */
+    public Rope delete(int start, int end) {
+        return replace(start, end, "", 0, 0);
+    }
+
+    /**
+     * @return New Rope after replacing the characters between start and end with text
+     */
+    public Rope replace(int start, int end, CharSequence text) {
+        return replace(start, end, text, 0, text.length());
+    }
+
+    /**
+     * @return New Rope after replacing the characters between start and end with
+     * the characters between textStart and textEnd of the text
+     */
+    public Rope replace(int start, int end, CharSequence text, int textStart, int textEnd) {
+        checkRange(start, end);
+        if (start == end && textStart == textEnd) return this;
+        Node[] tail = split(root, end);
+        Node[] head = split(tail[0], start);
+        Node middle = textStart == textEnd ? null : build(text, textStart, textEnd);
+        return new Rope(join(join(head[0], middle), tail[1]));
+    }
+
+    /**
+     * @return New Rope that contains this Rope followed by the other one
+     */
+    public Rope concat(Rope other) {
+        if (other.root == null) return this;
+        if (root == null) return other;
+        return new Rope(join(root, other.root));
+    }
+
+    /**
+     * Copy characters from this Rope into the destination array without creating a string
+     */
+    public void getChars(int start, int end, char[] destination, int destinationStart) {
+        checkRange(start, end);
+        copy(root, start, end, destination, destinationStart);
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length()];
+        copy(root, 0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length());
+        }
+    }
+
+    private abstract static class Node {
+        final int length;
+        final int height;
+
+        Node(int length, int height) {
+            this.length = length;
+            this.height = height;
+        }
+    }
+
+    private static final class Leaf extends Node {
+        final char[] chars;
+
+        Leaf(char[] chars) {
+            super(chars.length, 0);
+            this.chars = chars;
+        }
+    }
+
+    private static final class Branch extends Node {
+        final Node left;
+        final Node right;
+
+        Branch(Node left, Node right) {
+            super(left.length + right.length, Math.max(left.height, right.height) + 1);
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static final class LeafCursor {
+        final Leaf leaf;
+        final int start;
+
+        LeafCursor(Leaf leaf, int start) {
+            this.leaf = leaf;
+            this.start = start;
+        }
+    }
+
+    private static int length(Node node) {
+        return node == null ? 0 : node.length;
+    }
+
+    private static int height(Node node) {
+        return node == null ? -1 : node.height;
+    }
+
+    private static Node build(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length <= MAX_LEAF_LENGTH) {
+            char[] chars = new char[length];
+            if (text instanceof String) {
+                ((String) text).getChars(start, end, chars, 0);
+            } else if (text instanceof Rope) {
+                ((Rope) text).getChars(start, end, chars, 0);
+            } else {
+                for (int i = 0; i < length; i++) chars[i] = text.charAt(start + i);
+            }
+            return new Leaf(chars);
+        }
+        int leaves = (length + MAX_LEAF_LENGTH - 1) / MAX_LEAF_LENGTH;
+        int middle = start + (leaves / 2) * MAX_LEAF_LENGTH;
+        return new Branch(build(text, start, middle), build(text, middle, end));
+    }
+
+    private static Node join(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+
+        if (left instanceof Leaf && right instanceof Leaf && left.length + right.length <= MAX_LEAF_LENGTH) {
+            char[] chars = new char[left.length + right.length];
+            System.arraycopy(((Leaf) left).chars, 0, chars, 0, left.length);
+            System.arraycopy(((Leaf) right).chars, 0, chars, left.length, right.length);
+            return new Leaf(chars);
+        }
+
+        if (left.height > right.height + 1) {
+            Branch branch = (Branch) left;
+            return balance(branch.left, join(branch.right, right));
+        }
+
+        if (right.height > left.height + 1) {
+            Branch branch = (Branch) right;
+            return balance(join(left, branch.left), branch.right);
+        }
+
+        return new Branch(left, right);
+    }
+
+    /**
+     * Create a branch from two nodes that their heights differ by two at most
+     */
+    private static Node balance(Node left, Node right) {
+        if (left.height > right.height + 1) {
+            Branch branch = (Branch) left;
+            if (height(branch.left) >= height(branch.right)) {
+                return new Branch(branch.left, new Branch(branch.right, right));
+            }
+            Branch inner = (Branch) branch.right;
+            return new Branch(new Branch(branch.left, inner.left), new Branch(inner.right, right));
+        }
+
+        if (right.height > left.height + 1) {
+            Branch branch = (Branch) right;
+            if (height(branch.right) >= height(branch.left)) {
+                return new Branch(new Branch(left, branch.left), branch.right);
+            }
+            Branch inner = (Branch) branch.left;
+            return new Branch(new Branch(left, inner.left), new Branch(inner.right, branch.right));
+        }
+
+        return new Branch(left, right);
+    }
+
+    /**
+     * Split the node into the characters before the index and the characters after it
+     */
+    private static Node[] split(Node node, int index) {
+        if (node == null) return new Node[]{null, null};
+        if (index <= 0) return new Node[]{null, node};
+        if (index >= node.length) return new Node[]{node, null};
+
+        if (node instanceof Leaf) {
+            char[] chars = ((Leaf) node).chars;
+            char[] left = new char[index];
+            char[] right = new char[chars.length - index];
+            System.arraycopy(chars, 0, left, 0, index);
+            System.arraycopy(chars, index, right, 0, right.length);
+            return new Node[]{new Leaf(left), new Leaf(right)};
+        }
+
+        Branch branch = (Branch) node;
+        int leftLength = branch.left.length;
+        if (index < leftLength) {
+            Node[] parts = split(branch.left, index);
+            return new Node[]{parts[0], join(parts[1], branch.right)};
+        }
+        if (index > leftLength) {
+            Node[] parts = split(branch.right, index - leftLength);
+            return new Node[]{join(branch.left, parts[0]), parts[1]};
+        }
+        return new Node[]{branch.left, branch.right};
+    }
+
+    private static void copy(Node node, int start, int end, char[] destination, int destinationStart) {
+        if (node == null || start >= end) return;
+        if (node instanceof Leaf) {
+            System.arraycopy(((Leaf) node).chars, start, destination, destinationStart, end - start);
+            return;
+        }
+
+        Branch branch = (Branch) node;
+        int leftLength = branch.left.length;
+        if (start < leftLength) {
+            copy(branch.left, start, Math.min(end, leftLength), destination, destinationStart);
+        }
+        if (end > leftLength) {
+            int rightStart = Math.max(start, leftLength);
+            copy(branch.right, rightStart - leftLength, end - leftLength,
+                    destination, destinationStart + rightStart - start);
+        }
+    }
+}
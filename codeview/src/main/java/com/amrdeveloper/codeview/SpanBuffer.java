@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.amrdeveloper.codeview;
+
+import android.text.Spannable;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * The spans of a highlight that runs on a background thread, the highlighter adds its spans here
+ * over an immutable text instead of the editor text, then they are set on the editor text
+ * on the main thread, it only keeps the spans in order so adding a span is O(1)
+ *
+ * The spans can be split into steps ordered by their positions, so the main thread can set them
+ * one step per message instead of blocking on all the spans of a big text
+ *
+ * @since 1.3.6
+ */
+final class SpanBuffer implements Spannable {
+
+    private final CharSequence text;
+    private Object[] spans = new Object[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int count;
+    private int[] stepStarts = new int[1];
+    private int[] stepEnds = new int[1];
+    private int stepCount;
+
+    SpanBuffer(CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * @return The number of spans
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Set all the spans on the target text as exclusive spans
+     */
+    void applyTo(Spannable target) {
+        for (int i = 0; i < count; i++) {
+            target.setSpan(spans[i], starts[i], ends[i], Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+    }
+
+    /**
+     * Order the spans by their starts and split them into steps of at least spansPerStep spans,
+     * the spans that overlap are always in the same step and keep their order in it, so setting
+     * the steps one by one draws the same text as setting all the spans in their order
+     */
+    void splitSteps(int spansPerStep) {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) keys[i] = ((long) starts[i] << 32) | i;
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[i] = (int) keys[i];
+
+        stepStarts = new int[count / Math.max(1, spansPerStep) + 1];
+        stepEnds = new int[stepStarts.length];
+        stepCount = 0;
+        int stepStart = 0;
+        int maxEnd = 0;
+        for (int i = 0; i < count; i++) {
+            int index = order[i];
+            if (i - stepStart >= spansPerStep && starts[index] >= maxEnd) {
+                Arrays.sort(order, stepStart, i);
+                stepEnds[stepCount++] = i;
+                stepStarts[stepCount] = starts[index];
+                stepStart = i;
+            }
+            maxEnd = Math.max(maxEnd, ends[index]);
+        }
+        if (count > 0) {
+            Arrays.sort(order, stepStart, count);
+            stepEnds[stepCount++] = count;
+        }
+
+        Object[] orderedSpans = new Object[count];
+        int[] orderedStarts = new int[count];
+        int[] orderedEnds = new int[count];
+        for (int i = 0; i < count; i++) {
+            orderedSpans[i] = spans[order[i]];
+            orderedStarts[i] = starts[order[i]];
+            orderedEnds[i] = ends[order[i]];
+        }
+        spans = orderedSpans;
+        starts = orderedStarts;
+        ends = orderedEnds;
+    }
+
+    /**
+     * @return The number of steps after splitSteps
+     */
+    int getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * @return The text position where the step starts, the steps after it have no span that starts
+     * before it and the steps before it have no span that ends after it
+     */
+    int getStepStart(int step) {
+        return stepStarts[step];
+    }
+
+    /**
+     * Set the spans of the step on the target text as exclusive spans
+     */
+    void applyStep(Spannable target, int step) {
+        int from = step == 0 ? 0 : stepEnds[step - 1];
+        for (int i = from; i < stepEnds[step]; i++) {
+            target.setSpan(spans[i], starts[i], ends[i], Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+    }
+
+    // An empty match can't be an exclusive span of the editor text, so it's not kept
+    @Override
+    public void setSpan(Object what, int start, int end, int flags) {
+        if (start >= end) return;
+        if (count == spans.length) {
+            int capacity = count * 2;
+            Object[] grownSpans = new Object[capacity];
+            int[] grownStarts = new int[capacity];
+            int[] grownEnds = new int[capacity];
+            System.arraycopy(spans, 0, grownSpans, 0, count);
+            System.arraycopy(starts, 0, grownStarts, 0, count);
+            System.arraycopy(ends, 0, grownEnds, 0, count);
+            spans = grownSpans;
+            starts = grownStarts;
+            ends = grownEnds;
+        }
+        spans[count] = what;
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    @Override
+    public void removeSpan(Object what) {
+        int index = indexOf(what);
+        if (index == -1) return;
+        int moved = count - index - 1;
+        System.arraycopy(spans, index + 1, spans, index, moved);
+        System.arraycopy(starts, index + 1, starts, index, moved);
+        System.arraycopy(ends, index + 1, ends, index, moved);
+        spans[--count] = null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] getSpans(int start, int end, Class<T> type) {
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            if (isInRange(i, start, end) && type.isInstance(spans[i])) found++;
+        }
+        T[] result = (T[]) Array.newInstance(type, found);
+        found = 0;
+        for (int i = 0; i < count; i++) {
+            if (isInRange(i, start, end) && type.isInstance(spans[i])) result[found++] = (T) spans[i];
+        }
+        return result;
+    }
+
+    @Override
+    public int getSpanStart(Object tag) {
+        int index = indexOf(tag);
+        return index == -1 ? -1 : starts[index];
+    }
+
+    @Override
+    public int getSpanEnd(Object tag) {
+        int index = indexOf(tag);
+        return index == -1 ? -1 : ends[index];
+    }
+
+    @Override
+    public int getSpanFlags(Object tag) {
+        return indexOf(tag) == -1 ? 0 : Spannable.SPAN_EXCLUSIVE_EXCLUSIVE;
+    }
+
+    @Override
+    public int nextSpanTransition(int start, int limit, Class type) {
+        for (int i = 0; i < count; i++) {
+            if (type != null && !type.isInstance(spans[i])) continue;
+            if (starts[i] > start && starts[i] < limit) limit = starts[i];
+            if (ends[i] > start && ends[i] < limit) limit = ends[i];
+        }
+        return limit;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    private int indexOf(Object span) {
+        for (int i = 0; i < count; i++) {
+            if (spans[i] == span) return i;
+        }
+        return -1;
+    }
+
+    // Like the spans of the editor text, the spans that touch the range are in it
+    private boolean isInRange(int index, int start, int end) {
+        return starts[index] <= end && ends[index] >= start;
+    }
+}
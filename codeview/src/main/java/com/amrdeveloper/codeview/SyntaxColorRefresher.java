@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+import android.text.Spannable;
+import android.text.TextPaint;
+import android.text.style.CharacterStyle;
+
+/**
+ * Redraw the token spans after their palette colors are changed, the text view draws the text
+ * from cached blocks that are recorded again only when the text or the spans under them change,
+ * so setting and removing a span that changes nothing records the blocks of its range again
+ * without a layout pass, only the visible range is refreshed and the parts that are scrolled
+ * into the view are refreshed later until the whole text is drawn with the new colors
+ *
+ * @since 1.3.6
+ */
+final class SyntaxColorRefresher {
+
+    private final CharacterStyle refreshSpan = new CharacterStyle() {
+        @Override
+        public void updateDrawState(TextPaint textPaint) {
+        }
+    };
+
+    private boolean pending = false;
+    private int refreshedStart = 0;
+    private int refreshedEnd = 0;
+
+    /**
+     * Refresh the visible range after a color change, the other text is refreshed when it's visible
+     */
+    void refresh(Spannable text, int visibleStart, int visibleEnd) {
+        pending = true;
+        refreshedStart = 0;
+        refreshedEnd = 0;
+        refreshVisible(text, visibleStart, visibleEnd);
+    }
+
+    /**
+     * Refresh the part of the visible range that is not refreshed since the last color change
+     */
+    void refreshVisible(Spannable text, int visibleStart, int visibleEnd) {
+        if (!pending) return;
+        final int length = text.length();
+        final int start = Math.max(0, Math.min(visibleStart, length));
+        final int end = Math.max(start, Math.min(visibleEnd, length));
+
+        if (refreshedStart == refreshedEnd || end < refreshedStart || start > refreshedEnd) {
+            // The refreshed ranges are kept as one range, so a separated range replaces it
+            refreshRange(text, start, end);
+            refreshedStart = start;
+            refreshedEnd = end;
+        } else {
+            if (start < refreshedStart) refreshRange(text, start, refreshedStart);
+            if (end > refreshedEnd) refreshRange(text, refreshedEnd, end);
+            refreshedStart = Math.min(start, refreshedStart);
+            refreshedEnd = Math.max(end, refreshedEnd);
+        }
+
+        if (refreshedStart == 0 && refreshedEnd == length) pending = false;
+    }
+
+    /**
+     * The refreshed range is moved by the text change, so it's forgotten and the visible
+     * text is refreshed again, the changed text is drawn again by the change itself
+     */
+    void onTextChanged() {
+        refreshedStart = 0;
+        refreshedEnd = 0;
+    }
+
+    /**
+     * Stop refreshing after the whole text is replaced, the new text is drawn with the new colors
+     */
+    void clear() {
+        pending = false;
+        refreshedStart = 0;
+        refreshedEnd = 0;
+    }
+
+    boolean isPending() {
+        return pending;
+    }
+
+    private void refreshRange(Spannable text, int start, int end) {
+        if (start >= end) return;
+        text.setSpan(refreshSpan, start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.removeSpan(refreshSpan);
+    }
+}
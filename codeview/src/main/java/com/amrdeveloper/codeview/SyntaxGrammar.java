@@ -0,0 +1,415 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SyntaxGrammar is an ordered list of token rules that is compiled into one lexer, the rules are
+ * joined into a single pattern so the text is scanned once for all the token types instead of once
+ * for every syntax pattern, and a table of the rules groups finds the rule of every match
+ *
+ * At every position the rules are tried in their order and the first one that matches wins, so a token
+ * is never highlighted again by a later rule, for example a keyword inside a comment or a string,
+ * the rules must not use numbered back references because their groups are renumbered when they are joined
+ *
+ * The words rules like the keywords are not joined as regex alternations, the lexer matches one word
+ * at the position of the first words rule and finds it in a perfect hash table of all the words,
+ * so a word costs one lookup however many keywords the language has
+ *
+ * The grammar is immutable and compiled only once when it's first used, so one grammar can be shared
+ * by all the views of the same language
+ *
+ * @since 1.3.6
+ */
+public final class SyntaxGrammar {
+
+    private final String name;
+    private final Rule[] rules;
+    private volatile Lexer lexer;
+
+    /**
+     * @param name The name of the grammar like the language name
+     * @param rules Map of the rules regex and their token types, ordered by the rules priority
+     */
+    public SyntaxGrammar(String name, Map<String, String> rules) {
+        this.name = name;
+        this.rules = new Rule[rules.size()];
+        int index = 0;
+        for (Map.Entry<String, String> rule : rules.entrySet()) {
+            this.rules[index++] = Rule.match(rule.getKey(), rule.getValue());
+        }
+    }
+
+    /**
+     * @param name The name of the grammar like the language name
+     * @param rules List of the rules ordered by their priority
+     */
+    public SyntaxGrammar(String name, List<Rule> rules) {
+        this.name = name;
+        this.rules = rules.toArray(new Rule[0]);
+    }
+
+    /**
+     * @return The name of the grammar
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The number of the grammar rules
+     */
+    public int getRuleCount() {
+        return rules.length;
+    }
+
+    /**
+     * @param index The rule index in the priority order
+     * @return The regex of the rule
+     */
+    public String getRule(int index) {
+        return rules[index].getRegex();
+    }
+
+    /**
+     * @param index The rule index in the priority order
+     * @return The token type of the rule
+     */
+    public String getTokenType(int index) {
+        return rules[index].getTokenType();
+    }
+
+    /**
+     * Compile the rules if they are not compiled yet, it's done on the first highlight but it can
+     * be called earlier from a background thread to keep the compiling out of the UI thread
+     * @throws java.util.regex.PatternSyntaxException if one of the rules is not a valid regex
+     */
+    public void compile() {
+        getLexer();
+    }
+
+    Lexer getLexer() {
+        Lexer compiled = lexer;
+        if (compiled == null) {
+            synchronized (this) {
+                compiled = lexer;
+                if (compiled == null) {
+                    compiled = new Lexer(rules, 0, true);
+                    lexer = compiled;
+                }
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * A grammar rule, a regex or a set of words that have the same token type
+     */
+    public static final class Rule {
+
+        private final String tokenType;
+        private final String regex;
+        private final String[] words;
+
+        private Rule(String tokenType, String regex, String[] words) {
+            this.tokenType = tokenType;
+            this.regex = regex;
+            this.words = words;
+        }
+
+        /**
+         * @param regex The regex of the tokens
+         * @param tokenType The token type of the matches
+         * @return A rule that matches the regex
+         */
+        public static Rule match(String regex, String tokenType) {
+            return new Rule(tokenType, regex, null);
+        }
+
+        /**
+         * @param words The words like the language keywords
+         * @param tokenType The token type of the words
+         * @return A rule that matches the words when they are not a part of longer words
+         */
+        public static Rule words(Collection<String> words, String tokenType) {
+            return new Rule(tokenType, joinWords(words), words.toArray(new String[0]));
+        }
+
+        public String getTokenType() {
+            return tokenType;
+        }
+
+        /**
+         * @return The regex of the rule, for a words rule it's the alternation of its words
+         */
+        public String getRegex() {
+            return regex;
+        }
+
+        // The words boundaries are checked only at their letters, so words like #include can be matched
+        private static String joinWords(Collection<String> words) {
+            StringBuilder regex = new StringBuilder("(?:");
+            boolean first = true;
+            for (String word : words) {
+                if (word.isEmpty()) continue;
+                if (!first) regex.append('|');
+                if (isWordChar(word.charAt(0))) regex.append("\\b");
+                regex.append(Pattern.quote(word));
+                if (isWordChar(word.charAt(word.length() - 1))) regex.append("\\b");
+                first = false;
+            }
+            return regex.append(')').toString();
+        }
+    }
+
+    /**
+     * Receive the tokens of the lexer in the text order
+     */
+    interface TokenCallback {
+        void onToken(int rule, int start, int end);
+    }
+
+    /**
+     * The compiled rules, one pattern that has a group around every rule, the rule of every group,
+     * and the words table, the rules after the first words rule are compiled again without their table
+     * words in a second lexer that is tried at the start of the words that are not in the table, then
+     * the text after the word start is scanned again because the word can have tokens inside it
+     */
+    static final class Lexer {
+
+        private static final int WORD_RULE = -1;
+        private static final String WORD_CHARS = "\\p{L}\\p{N}_";
+
+        private final Pattern pattern;
+        private final int[] groups;
+        private final int[] groupRules;
+        private final KeywordTable words;
+        private final int firstWordsRule;
+        private final Lexer wordFallback;
+
+        private Lexer(Rule[] rules, int from, boolean matchWords) {
+            List<String> alternatives = new ArrayList<>();
+            List<Integer> alternativeRules = new ArrayList<>();
+            Map<String, Integer> tableWords = new HashMap<>();
+            StringBuilder wordStarts = new StringBuilder();
+            int firstWordsRule = -1;
+
+            for (int i = from; i < rules.length; i++) {
+                Rule rule = rules[i];
+                if (rule.words == null) {
+                    alternatives.add(rule.regex);
+                    alternativeRules.add(i);
+                    continue;
+                }
+
+                // The words that are not made of letters, digits and underscores stay in a regex
+                List<String> otherWords = new ArrayList<>();
+                for (String word : rule.words) {
+                    if (!isWord(word)) {
+                        otherWords.add(word);
+                    } else if (matchWords && !tableWords.containsKey(word)) {
+                        tableWords.put(word, i);
+                        if (wordStarts.indexOf(word.substring(0, 1)) == -1) wordStarts.append(word.charAt(0));
+                    }
+                }
+                if (!otherWords.isEmpty()) {
+                    alternatives.add(Rule.joinWords(otherWords));
+                    alternativeRules.add(i);
+                }
+                if (matchWords && firstWordsRule == -1 && !tableWords.isEmpty()) {
+                    firstWordsRule = i;
+                    alternatives.add(null);
+                    alternativeRules.add(WORD_RULE);
+                }
+            }
+
+            // The word alternative starts with the first letters of the table words to not match any other word
+            int wordAlternative = alternativeRules.indexOf(WORD_RULE);
+            if (wordAlternative != -1) {
+                String wordRegex = "(?<![" + WORD_CHARS + "])[" + wordStarts + "][" + WORD_CHARS + "]*+";
+                alternatives.set(wordAlternative, wordRegex);
+            }
+
+            StringBuilder joined = new StringBuilder();
+            for (int i = 0; i < alternatives.size(); i++) {
+                if (i > 0) joined.append('|');
+                joined.append('(').append(alternatives.get(i)).append(')');
+            }
+            pattern = Pattern.compile(joined.toString());
+            groups = new int[alternatives.size()];
+            groupRules = new int[alternatives.size()];
+            for (int i = 0; i < groupRules.length; i++) groupRules[i] = alternativeRules.get(i);
+
+            // The groups are counted without compiling the rules, if the count is wrong because of an
+            // unusual regex the rules are compiled one by one to get their exact number of groups
+            if (numberGroups(alternatives, false) != pattern.matcher("").groupCount()) {
+                numberGroups(alternatives, true);
+            }
+
+            words = tableWords.isEmpty() ? null : new KeywordTable(tableWords);
+            this.firstWordsRule = firstWordsRule;
+            wordFallback = firstWordsRule != -1 && firstWordsRule + 1 < rules.length
+                    ? new Lexer(rules, firstWordsRule + 1, false)
+                    : null;
+        }
+
+        // Set the group number of every alternative and return the number of all the groups
+        private int numberGroups(List<String> alternatives, boolean compileAlternatives) {
+            int group = 1;
+            for (int i = 0; i < groups.length; i++) {
+                groups[i] = group;
+                String alternative = alternatives.get(i);
+                group += 1 + (compileAlternatives
+                        ? Pattern.compile(alternative).matcher("").groupCount()
+                        : countGroups(alternative));
+            }
+            return group - 1;
+        }
+
+        /**
+         * Find the tokens between start and end, the text outside the range is used only
+         * to check the boundaries of the tokens
+         */
+        void tokenize(CharSequence text, int start, int end, TokenCallback callback) {
+            tokenize(text, start, end, end, callback);
+        }
+
+        /**
+         * Find the tokens that start between start and end, the tokens can continue until the limit
+         */
+        void tokenize(CharSequence text, int start, int end, int limit, TokenCallback callback) {
+            Matcher matcher = pattern.matcher(text);
+            matcher.useTransparentBounds(true);
+            matcher.region(start, limit);
+            Matcher fallbackMatcher = null;
+            while (matcher.find()) {
+                int tokenStart = matcher.start();
+                int tokenEnd = matcher.end();
+                if (tokenStart >= end) break;
+                if (tokenStart == tokenEnd) continue;
+                int rule = matchedRule(matcher);
+                if (rule != WORD_RULE) {
+                    callback.onToken(rule, tokenStart, tokenEnd);
+                    continue;
+                }
+
+                int wordRule = words.get(text, tokenStart, tokenEnd);
+                if (wordRule == firstWordsRule) {
+                    callback.onToken(wordRule, tokenStart, tokenEnd);
+                    continue;
+                }
+
+                // The rules after the first words rule may match at the word start before a later words
+                // rule, and if the word is not in the table the other rules may match inside the word
+                // like they do without the words table
+                int fallbackRule = -1;
+                int fallbackEnd = tokenStart;
+                if (wordFallback != null) {
+                    if (fallbackMatcher == null) {
+                        fallbackMatcher = wordFallback.pattern.matcher(text);
+                        fallbackMatcher.useTransparentBounds(true);
+                    }
+                    fallbackMatcher.region(tokenStart, limit);
+                    if (fallbackMatcher.lookingAt() && fallbackMatcher.end() > tokenStart) {
+                        fallbackRule = wordFallback.matchedRule(fallbackMatcher);
+                        fallbackEnd = fallbackMatcher.end();
+                    }
+                }
+                if (wordRule != -1 && (fallbackRule == -1 || wordRule < fallbackRule)) {
+                    callback.onToken(wordRule, tokenStart, tokenEnd);
+                    continue;
+                }
+
+                int next = tokenStart + 1;
+                if (fallbackRule != -1) {
+                    callback.onToken(fallbackRule, tokenStart, fallbackEnd);
+                    next = fallbackEnd;
+                }
+                matcher.region(next, limit);
+            }
+        }
+
+        // The rule of the current match, or WORD_RULE for a word that should be found in the table
+        private int matchedRule(Matcher matcher) {
+            for (int i = 0; i < groups.length; i++) {
+                if (matcher.start(groups[i]) != -1) return groupRules[i];
+            }
+            return WORD_RULE;
+        }
+
+        private static boolean isWord(String word) {
+            if (word.isEmpty()) return false;
+            for (int i = 0; i < word.length(); i++) {
+                if (!isWordChar(word.charAt(i))) return false;
+            }
+            return true;
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    // Count the capturing groups of a regex, the escaped characters, quoted text,
+    // characters classes and non capturing groups are skipped
+    static int countGroups(String regex) {
+        int groups = 0;
+        int classDepth = 0;
+        int length = regex.length();
+        for (int i = 0; i < length; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < length && regex.charAt(i + 1) == 'Q') {
+                    int quoteEnd = regex.indexOf("\\E", i + 2);
+                    if (quoteEnd == -1) break;
+                    i = quoteEnd + 1;
+                } else {
+                    i++;
+                }
+            } else if (c == '[') {
+                classDepth++;
+            } else if (c == ']' && classDepth > 0) {
+                classDepth--;
+            } else if (c == '(' && classDepth == 0) {
+                if (i + 1 == length || regex.charAt(i + 1) != '?') {
+                    groups++;
+                } else if (i + 3 < length && regex.charAt(i + 2) == '<') {
+                    // Named group, but not a look behind
+                    char next = regex.charAt(i + 3);
+                    if (next != '=' && next != '!') groups++;
+                }
+            }
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+import android.text.Spannable;
+import android.text.style.CharacterStyle;
+import android.text.style.ForegroundColorSpan;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Apply the syntax patterns colors on a text, shared by CodeView and CodeViewer
+ *
+ * The patterns run over a guarded text when there is a pattern guard, a pattern that takes more
+ * than the guard timeout is stopped and disabled, and the other patterns are still applied,
+ * the full text is highlighted on a background thread into a SpanBuffer by BackgroundHighlighter
+ *
+ * @since 1.3.6
+ */
+final class SyntaxHighlighter {
+
+    private SyntaxHighlighter() {
+    }
+
+    /**
+     * Add a foreground color span for every match of the syntax patterns
+     * @param text The text to highlight
+     * @param syntaxPatterns Map of Patterns and Colors
+     */
+    static void highlight(Spannable text, Map<Pattern, Integer> syntaxPatterns) {
+        highlight(text, syntaxPatterns, null, null, 0, text.length(), text.length(), null);
+    }
+
+    /**
+     * Add a foreground color span for every match of the syntax patterns
+     * @param text The text to highlight
+     * @param syntaxPatterns Map of Patterns and Colors
+     * @param guard The guard of the patterns time or null
+     */
+    static void highlight(Spannable text, Map<Pattern, Integer> syntaxPatterns, PatternGuard guard) {
+        highlight(text, syntaxPatterns, null, guard, 0, text.length(), text.length(), null);
+    }
+
+    /**
+     * Add a token span for every match of the token patterns, the spans take their colors
+     * from the palette when they are drawn
+     * @param text The text to highlight
+     * @param tokenPatterns Map of Patterns and token type ids of the palette
+     * @param palette The palette of the token types colors
+     * @param guard The guard of the patterns time or null
+     */
+    static void highlightTokens(Spannable text, Map<Pattern, Integer> tokenPatterns,
+                                SyntaxPalette palette, PatternGuard guard) {
+        highlight(text, tokenPatterns, palette, guard, 0, text.length(), text.length(), null);
+    }
+
+    /**
+     * Add a token span for every token of the grammar, the text is scanned once for all the rules
+     * @param text The text to highlight
+     * @param grammar The grammar of the text
+     * @param typeIds The palette token type id of every grammar rule
+     * @param palette The palette of the token types colors
+     * @param guard The guard of the patterns time or null
+     */
+    static void highlightGrammar(Spannable text, SyntaxGrammar grammar, int[] typeIds,
+                                 SyntaxPalette palette, PatternGuard guard) {
+        highlightGrammar(text, grammar, typeIds, palette, guard, 0, text.length(), text.length());
+    }
+
+    /**
+     * Highlight only the lines between start and end, the range is extended to cover the old
+     * spans that cross it so a token that was cut by the change is highlighted again, and a new
+     * token that ends after the range like an opened block comment is highlighted to its end
+     * then the text that it covers is highlighted again until no token crosses the range end
+     * @param text The text to highlight
+     * @param syntaxPatterns Map of Patterns and Colors
+     * @param tokenPatterns Map of Patterns and token type ids of the palette
+     * @param grammar The grammar of the text or null
+     * @param typeIds The palette token type id of every grammar rule
+     * @param palette The palette of the token types colors
+     * @param guard The guard of the patterns time or null
+     * @param start The start of the changed range
+     * @param end The end of the changed range
+     */
+    static void highlight(Spannable text, Map<Pattern, Integer> syntaxPatterns,
+                          Map<Pattern, Integer> tokenPatterns, SyntaxGrammar grammar, int[] typeIds,
+                          SyntaxPalette palette, PatternGuard guard, int start, int end) {
+        int length = text.length();
+        start = Math.max(0, Math.min(start, length));
+        end = Math.max(start, Math.min(end, length));
+        while (start > 0 && text.charAt(start - 1) != '\n') start--;
+        while (end < length && text.charAt(end) != '\n') end++;
+
+        // Every pattern and the grammar continue after their last token like in one scan of the text
+        Map<Pattern, Integer> syntaxEnds = new HashMap<>();
+        Map<Pattern, Integer> tokenEnds = new HashMap<>();
+        int grammarEnd = 0;
+        boolean firstPass = true;
+        while (firstPass || start < end) {
+            boolean extended = true;
+            while (extended) {
+                extended = false;
+                CharacterStyle[] spans = text.getSpans(start, end, CharacterStyle.class);
+                for (CharacterStyle span : spans) {
+                    if (!isSyntaxSpan(span)) continue;
+                    int spanStart = text.getSpanStart(span);
+                    int spanEnd = text.getSpanEnd(span);
+                    // In the first pass a span that touches the range can be cut by the change
+                    if (firstPass ? spanEnd < start || spanStart > end : spanEnd <= start || spanStart >= end) continue;
+                    // After the first pass the spans that start before the range are the new tokens
+                    if (spanStart < start && !firstPass) continue;
+                    text.removeSpan(span);
+                    if (spanStart < start) {
+                        start = spanStart;
+                        extended = true;
+                    }
+                    if (spanEnd > end) {
+                        end = spanEnd;
+                        extended = true;
+                    }
+                }
+            }
+
+            int reach = highlight(text, syntaxPatterns, null, guard, start, end, length, syntaxEnds);
+            reach = Math.max(reach, highlight(text, tokenPatterns, palette, guard, start, end, length, tokenEnds));
+            if (grammar != null) {
+                grammarEnd = highlightGrammar(text, grammar, typeIds, palette, guard,
+                        Math.max(start, grammarEnd), end, length);
+                reach = Math.max(reach, grammarEnd);
+            }
+            start = end;
+            end = reach;
+            firstPass = false;
+        }
+    }
+
+    /**
+     * @return {@code true} if the span is a color span or a token span of the highlighter
+     */
+    static boolean isSyntaxSpan(Object span) {
+        return span instanceof ForegroundColorSpan || span instanceof SyntaxPalette.TokenSpan;
+    }
+
+    /**
+     * @param text The text to check
+     * @param start The start of the range
+     * @param end The end of the range
+     * @return {@code true} if the range has only letters, digits and whitespaces, so it can't
+     * open or close a block like a comment that starts before the range
+     */
+    static boolean isWordsOnly(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c) && !Character.isWhitespace(c) && c != '_') return false;
+        }
+        return true;
+    }
+
+    // Highlight the tokens that start between start and end and return the end of the last token
+    private static int highlightGrammar(final Spannable text, SyntaxGrammar grammar, final int[] typeIds,
+                                        final SyntaxPalette palette, PatternGuard guard,
+                                        int start, int end, int limit) {
+        final int[] reach = {start};
+        if (guard != null && guard.isDisabled(grammar)) return reach[0];
+        final PatternGuard.GuardedText guardedText = guard != null ? guard.guard(grammar, text) : null;
+        try {
+            grammar.getLexer().tokenize(guardedText != null ? guardedText : text, start, end, limit,
+                    new SyntaxGrammar.TokenCallback() {
+                @Override
+                public void onToken(int rule, int tokenStart, int tokenEnd) {
+                    if (guardedText != null) guardedText.checkDeadline();
+                    Object span = new SyntaxPalette.TokenSpan(palette, typeIds[rule]);
+                    text.setSpan(span, tokenStart, tokenEnd, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    reach[0] = Math.max(reach[0], tokenEnd);
+                }
+            });
+        } catch (PatternGuard.PatternTimeoutException e) {
+            guard.disable(grammar);
+        } finally {
+            if (guard != null) guard.release(guardedText);
+        }
+        return reach[0];
+    }
+
+    // Add a color span for every match that starts between start and end, or a token span if there
+    // is a palette, the matches can continue until the limit, return the end of the last match,
+    // the last match end of every pattern is kept in matchEnds if it's not null
+    private static int highlight(Spannable text, Map<Pattern, Integer> patterns, SyntaxPalette palette,
+                                 PatternGuard guard, int start, int end, int limit,
+                                 Map<Pattern, Integer> matchEnds) {
+        int reach = start;
+        for (Map.Entry<Pattern, Integer> syntax : patterns.entrySet()) {
+            // A background pass that is cancelled stops before its next pattern
+            if (Thread.currentThread().isInterrupted()) break;
+            Pattern pattern = syntax.getKey();
+            if (guard != null && guard.isDisabled(pattern)) continue;
+            Integer lastEnd = matchEnds != null ? matchEnds.get(pattern) : null;
+            int from = lastEnd != null ? Math.max(start, lastEnd) : start;
+            if (from >= end) continue;
+
+            PatternGuard.GuardedText guardedText = guard != null ? guard.guard(pattern, text) : null;
+            Matcher matcher = pattern.matcher(guardedText != null ? guardedText : text);
+            matcher.region(from, limit);
+            matcher.useTransparentBounds(true);
+            int value = syntax.getValue();
+            try {
+                while (matcher.find() && matcher.start() < end) {
+                    if (guardedText != null) guardedText.checkDeadline();
+                    Object span = palette == null
+                            ? new ForegroundColorSpan(value)
+                            : new SyntaxPalette.TokenSpan(palette, value);
+                    text.setSpan(span, matcher.start(), matcher.end(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    reach = Math.max(reach, matcher.end());
+                    if (matchEnds != null) matchEnds.put(pattern, matcher.end());
+                }
+            } catch (PatternGuard.PatternTimeoutException e) {
+                guard.disable(pattern);
+            } finally {
+                if (guard != null) guard.release(guardedText);
+            }
+        }
+        return reach;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.amrdeveloper.codeview;
+
+import android.text.TextPaint;
+import android.text.style.CharacterStyle;
+import android.text.style.UpdateAppearance;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Table of token types and their colors, the token types are given small ids so the spans
+ * can read their color from an array while drawing, changing a color recolors every span
+ * of its token type without touching the spans
+ *
+ * @since 1.3.6
+ */
+final class SyntaxPalette {
+
+    private final Map<String, Integer> typeIds = new HashMap<>();
+    private int[] colors = new int[16];
+    private boolean[] hasColor = new boolean[16];
+
+    /**
+     * @return The id of the token type, a new id is created for a new type
+     */
+    int getTypeId(String tokenType) {
+        Integer id = typeIds.get(tokenType);
+        if (id != null) return id;
+        int newId = typeIds.size();
+        typeIds.put(tokenType, newId);
+        if (newId == colors.length) {
+            int[] grownColors = new int[colors.length * 2];
+            boolean[] grownHasColor = new boolean[colors.length * 2];
+            System.arraycopy(colors, 0, grownColors, 0, colors.length);
+            System.arraycopy(hasColor, 0, grownHasColor, 0, hasColor.length);
+            colors = grownColors;
+            hasColor = grownHasColor;
+        }
+        return newId;
+    }
+
+    void setColor(String tokenType, int color) {
+        int id = getTypeId(tokenType);
+        colors[id] = color;
+        hasColor[id] = true;
+    }
+
+    void clearColors() {
+        for (int i = 0; i < hasColor.length; i++) hasColor[i] = false;
+    }
+
+    /**
+     * Span that draws its token with the current palette color of its type, a type
+     * without color is drawn with the text color, it's not a parcelable span so it's
+     * not copied with the text to the clipboard
+     */
+    static final class TokenSpan extends CharacterStyle implements UpdateAppearance {
+
+        private final SyntaxPalette palette;
+        private final int typeId;
+
+        TokenSpan(SyntaxPalette palette, int typeId) {
+            this.palette = palette;
+            this.typeId = typeId;
+        }
+
+        @Override
+        public void updateDrawState(TextPaint textPaint) {
+            if (palette.hasColor[typeId]) textPaint.setColor(palette.colors[typeId]);
+        }
+    }
+}
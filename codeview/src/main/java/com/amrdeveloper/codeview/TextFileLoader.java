@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.amrdeveloper.codeview;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Decode UTF-8 file into pages of text, the file is memory mapped in windows so only
+ * the current window is mapped and no full copy of the file bytes is created
+ *
+ * @since 1.3.6
+ */
+final class TextFileLoader implements Runnable {
+
+    /**
+     * Receive the decoded pages, called on the loader thread, the next page is not delivered
+     * until {@link #onPageConsumed()} is called for the last one
+     */
+    interface PageConsumer {
+        void onPage(String page, long loadedBytes, long totalBytes);
+        void onFinished();
+        void onFailed(IOException exception);
+    }
+
+    // Small first page so the first screen is shown as soon as possible
+    private static final int FIRST_PAGE_SIZE = 8 * 1024;
+    private static final int PAGE_SIZE = 64 * 1024;
+    private static final long WINDOW_SIZE = 4 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final boolean closeChannel;
+    private final PageConsumer consumer;
+    private volatile boolean cancelled = false;
+
+    // One page is decoded while the last page is consumed, so a slow consumer is never flooded
+    private final Semaphore pendingPages = new Semaphore(1);
+
+    TextFileLoader(FileChannel channel, boolean closeChannel, PageConsumer consumer) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.consumer = consumer;
+    }
+
+    void cancel() {
+        cancelled = true;
+        pendingPages.release();
+    }
+
+    /**
+     * Called by the consumer after the last delivered page is used
+     */
+    void onPageConsumed() {
+        pendingPages.release();
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void run() {
+        try {
+            decode();
+            if (!cancelled) consumer.onFinished();
+        } catch (IOException e) {
+            if (!cancelled) consumer.onFailed(e);
+        } finally {
+            if (closeChannel) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void decode() throws IOException {
+        final long size = channel.size();
+        final CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        CharBuffer page = CharBuffer.allocate(FIRST_PAGE_SIZE);
+        long offset = 0;
+
+        while (offset < size && !cancelled) {
+            long length = Math.min(WINDOW_SIZE, size - offset);
+            boolean endOfInput = offset + length == size;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+
+            while (!cancelled) {
+                CoderResult result = decoder.decode(window, page, endOfInput);
+                if (result.isOverflow()) {
+                    page = deliver(page, offset + window.position(), size);
+                    continue;
+                }
+                // Underflow, the window is consumed except an incomplete character on its end
+                break;
+            }
+
+            if (window.position() == 0 && !endOfInput) {
+                throw new IOException("Can't decode the file at offset " + offset);
+            }
+            offset += window.position();
+
+            if (endOfInput) {
+                decoder.flush(page);
+                break;
+            }
+        }
+
+        if (!cancelled && page.position() > 0) deliver(page, size, size);
+    }
+
+    private CharBuffer deliver(CharBuffer page, long loadedBytes, long totalBytes) {
+        try {
+            pendingPages.acquire();
+        } catch (InterruptedException e) {
+            cancelled = true;
+            Thread.currentThread().interrupt();
+        }
+        if (cancelled) return page;
+
+        page.flip();
+        consumer.onPage(page.toString(), loadedBytes, totalBytes);
+        if (page.capacity() != PAGE_SIZE) return CharBuffer.allocate(PAGE_SIZE);
+        page.clear();
+        return page;
+    }
+}
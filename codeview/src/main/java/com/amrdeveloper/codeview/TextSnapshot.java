@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 AmrDeveloper (Amr Hesham)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.amrdeveloper.codeview;
+
+/**
+ * Immutable view of the CodeView text at one version, taking a snapshot is O(1) because it shares
+ * the characters with the document instead of copying them, so it can be taken after every change
+ * and read later from any thread without locking
+ *
+ * @since 1.3.6
+ */
+public final class TextSnapshot implements CharSequence {
+
+    private final Rope text;
+    private final long version;
+
+    TextSnapshot(Rope text, long version) {
+        this.text = text;
+        this.version = version;
+    }
+
+    /**
+     * @return The version of the text, it's increased with every change of the text so two snapshots
+     * with the same version of the same CodeView have the same text
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The text of the snapshot as Rope
+     */
+    public Rope getText() {
+        return text;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return text.charAt(index);
+    }
+
+    @Override
+    public Rope subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    /**
+     * Copy characters from the snapshot into the destination array without creating a string
+     */
+    public void getChars(int start, int end, char[] destination, int destinationStart) {
+        text.getChars(start, end, destination, destinationStart);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,160 @@
+package com.amrdeveloper.codeview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BracketIndexTest {
+
+    private static final String ALPHABET = "(){}[]ab \n\"'/*\\";
+
+    private BracketIndex index;
+
+    @Before
+    public void setUp() {
+        index = new BracketIndex();
+        index.setComments("//", "/*", "*/");
+    }
+
+    @Test
+    public void findMatchingBracket_nestedPairs() {
+        String text = "a(b[c]{d})e";
+        index.rebuild(text);
+        assertEquals(9, index.findMatchingBracket(1));
+        assertEquals(1, index.findMatchingBracket(9));
+        assertEquals(5, index.findMatchingBracket(3));
+        assertEquals(8, index.findMatchingBracket(6));
+        assertEquals(-1, index.findMatchingBracket(0));
+    }
+
+    @Test
+    public void findMatchingBracket_mismatchedPair() {
+        index.rebuild("(]");
+        assertEquals(-1, index.findMatchingBracket(0));
+        assertEquals(-1, index.findMatchingBracket(1));
+    }
+
+    @Test
+    public void rebuild_skipsStringsAndComments() {
+        index.rebuild("(\")\" // )\n/* ( */ )");
+        assertEquals(2, index.size());
+        assertEquals(18, index.findMatchingBracket(0));
+    }
+
+    @Test
+    public void rebuild_stringEndsAtLineEndAfterBackslash() {
+        index.rebuild("'a\\\n()");
+        assertEquals(2, index.size());
+        assertEquals(5, index.findMatchingBracket(4));
+    }
+
+    @Test
+    public void findBlockComment_unclosedCommentTakesTheRest() {
+        index.rebuild("a /* b");
+        assertArrayEquals(new int[]{2, 6}, index.findBlockComment(4, 6));
+        assertNull(index.findBlockComment(0, 6));
+    }
+
+    @Test
+    public void onTextChanged_matchesFullScan() {
+        Random random = new Random(26);
+        for (int run = 0; run < 300; run++) {
+            StringBuilder text = new StringBuilder(RandomText.of(random, random.nextInt(60), ALPHABET));
+            index.rebuild(text);
+            for (int edit = 0; edit < 40; edit++) {
+                int start = random.nextInt(text.length() + 1);
+                int before = random.nextInt(Math.min(5, text.length() - start) + 1);
+                String inserted = RandomText.of(random, random.nextInt(5), ALPHABET);
+                text.replace(start, start + before, inserted);
+                index.onTextChanged(text, start, before, inserted.length());
+                assertSameAsFullScan(text);
+            }
+        }
+    }
+
+    private void assertSameAsFullScan(CharSequence text) {
+        List<Integer> brackets = new ArrayList<>();
+        List<int[]> comments = new ArrayList<>();
+        naiveScan(text, brackets, comments);
+        Map<Integer, Integer> matches = naiveMatches(text, brackets);
+
+        assertEquals(text.toString(), brackets.size(), index.size());
+        for (int position = 0; position <= text.length(); position++) {
+            boolean isBracket = matches.containsKey(position);
+            assertEquals(text + " @" + position, isBracket, index.isBracket(position));
+            int expected = isBracket ? matches.get(position) : -1;
+            assertEquals(text + " @" + position, expected, index.findMatchingBracket(position));
+
+            // An unclosed comment contains the end of the text too
+            int[] expectedComment = null;
+            for (int[] comment : comments) {
+                boolean unclosed = comment[1] == text.length() && !text.toString().startsWith("*/", comment[1] - 2);
+                boolean inside = position < comment[1] || (unclosed && position == comment[1]);
+                if (comment[0] <= position && inside) expectedComment = comment;
+            }
+            assertArrayEquals(text + " @" + position, expectedComment, index.findBlockComment(position, text.length()));
+        }
+    }
+
+    // The brackets outside strings and comments, scanning the full text from its start
+    private static void naiveScan(CharSequence text, List<Integer> brackets, List<int[]> comments) {
+        String value = text.toString();
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (value.startsWith("/*", i)) {
+                int end = value.indexOf("*/", i + 2);
+                int commentEnd = end == -1 ? value.length() : end + 2;
+                comments.add(new int[]{i, commentEnd});
+                i = commentEnd;
+            } else if (value.startsWith("//", i)) {
+                int end = value.indexOf('\n', i);
+                i = end == -1 ? value.length() : end;
+            } else if (c == '"' || c == '\'') {
+                i++;
+                while (i < value.length()) {
+                    char s = value.charAt(i);
+                    if (s == '\n') break;
+                    else if (s == '\\' && i + 1 < value.length() && value.charAt(i + 1) != '\n') i += 2;
+                    else if (s == c) { i++; break; }
+                    else i++;
+                }
+                i = Math.min(i, value.length());
+            } else {
+                if ("()[]{}".indexOf(c) >= 0) brackets.add(i);
+                i++;
+            }
+        }
+    }
+
+    // Every bracket matches the first bracket that returns to its depth if they are a pair
+    private static Map<Integer, Integer> naiveMatches(CharSequence text, List<Integer> brackets) {
+        Map<Integer, Integer> matches = new HashMap<>();
+        for (int i = 0; i < brackets.size(); i++) {
+            char bracket = text.charAt(brackets.get(i));
+            boolean open = "([{".indexOf(bracket) >= 0;
+            int depth = 0;
+            int match = -1;
+            for (int j = i; open ? j < brackets.size() : j >= 0; j += open ? 1 : -1) {
+                boolean isOpen = "([{".indexOf(text.charAt(brackets.get(j))) >= 0;
+                depth += isOpen == open ? 1 : -1;
+                if (depth == 0) {
+                    char other = text.charAt(brackets.get(j));
+                    char openChar = open ? bracket : other;
+                    char closeChar = open ? other : bracket;
+                    if ("([{".indexOf(openChar) == ")]}".indexOf(closeChar)) match = brackets.get(j);
+                    break;
+                }
+            }
+            matches.put(brackets.get(i), match);
+        }
+        return matches;
+    }
+}
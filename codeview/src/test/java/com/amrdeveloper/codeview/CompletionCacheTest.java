@@ -0,0 +1,104 @@
+package com.amrdeveloper.codeview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompletionCacheTest {
+
+    private static final List<Code> CODES = Arrays.<Code>asList(
+            new Keyword("print"), new Keyword("Println"), new Keyword("private"), new Keyword("sprint"));
+
+    @Test
+    public void get_samePrefixReturnsTheCachedCodes() {
+        CompletionCache cache = new CompletionCache();
+        cache.put(4, "pr", CODES);
+        assertSame(CODES, cache.get(4, "pr"));
+    }
+
+    @Test
+    public void get_longerPrefixFiltersTheCodes() {
+        CompletionCache cache = new CompletionCache();
+        cache.put(4, "pr", CODES);
+        cache.onTextChanged(6, 0, 2);
+        assertEquals(Arrays.asList("print", "Println", "sprint"), prefixes(cache.get(4, "prin")));
+    }
+
+    @Test
+    public void get_otherWordOrShorterPrefixMisses() {
+        CompletionCache cache = new CompletionCache();
+        assertNull(cache.get(4, "pr"));
+        cache.put(4, "pr", CODES);
+        assertNull(cache.get(5, "pr"));
+        assertNull(cache.get(4, "p"));
+        assertNull(cache.get(4, "xy"));
+    }
+
+    @Test
+    public void onTextChanged_editInsideTheWordKeepsTheCache() {
+        CompletionCache cache = new CompletionCache();
+        cache.put(4, "pri", CODES);
+        // Delete the last letter then type two letters at the word end
+        cache.onTextChanged(6, 1, 0);
+        cache.onTextChanged(6, 0, 2);
+        assertNotNull(cache.get(4, "prin"));
+    }
+
+    @Test
+    public void onTextChanged_editOutsideTheWordDropsTheCache() {
+        CompletionCache cache = new CompletionCache();
+        cache.put(4, "pr", CODES);
+        cache.onTextChanged(3, 0, 1);
+        assertNull(cache.get(4, "pr"));
+
+        cache.put(4, "pr", CODES);
+        cache.onTextChanged(7, 1, 0);
+        assertNull(cache.get(4, "pr"));
+
+        // Removing the word start
+        cache.put(4, "pr", CODES);
+        cache.onTextChanged(3, 2, 0);
+        assertNull(cache.get(4, "pr"));
+    }
+
+    @Test
+    public void get_cacheIsUsedOnlyIfTheTextAroundTheWordIsNotChanged() {
+        Random random = new Random(50);
+        for (int run = 0; run < 1000; run++) {
+            StringBuilder text = new StringBuilder(RandomText.of(random, 5 + random.nextInt(20), "abc"));
+            int wordStart = random.nextInt(text.length() - 2);
+            int wordEnd = wordStart + 1 + random.nextInt(2);
+            String prefix = text.substring(wordStart, wordEnd);
+            String before = text.substring(0, wordStart);
+            String after = text.substring(wordEnd);
+
+            CompletionCache cache = new CompletionCache();
+            cache.put(wordStart, prefix, CODES);
+            for (int edit = 0; edit < 5; edit++) {
+                int start = random.nextInt(text.length() + 1);
+                int removed = random.nextInt(Math.min(2, text.length() - start) + 1);
+                String inserted = RandomText.of(random, random.nextInt(3), "abc");
+                text.replace(start, start + removed, inserted);
+                cache.onTextChanged(start, removed, inserted.length());
+
+                if (text.length() < before.length() + after.length()) continue;
+                String word = text.substring(wordStart, text.length() - after.length());
+                if (cache.get(wordStart, word) != null) {
+                    assertTrue(text.toString().startsWith(before));
+                    assertTrue(text.toString().endsWith(after));
+                }
+            }
+        }
+    }
+
+    private static List<String> prefixes(List<Code> codes) {
+        List<String> prefixes = new ArrayList<>();
+        for (Code code : codes) prefixes.add(code.getCodePrefix());
+        return prefixes;
+    }
+}
@@ -0,0 +1,191 @@
+package com.amrdeveloper.codeview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class DiagnosticTreeTest {
+
+    @Test
+    public void onTextChanged_typingInsideTheRangeGrowsIt() {
+        DiagnosticTree tree = new DiagnosticTree();
+        tree.add(diagnostic(0, 4, 8));
+        tree.onTextChanged(6, 0, 3);
+        assertEquals("[0:4-11]", ranges(tree));
+    }
+
+    @Test
+    public void onTextChanged_rangeAfterTheChangeIsShifted() {
+        DiagnosticTree tree = new DiagnosticTree();
+        tree.add(diagnostic(0, 10, 12));
+        // The range that starts in the removed text starts at the change
+        tree.add(diagnostic(1, 4, 9));
+        tree.onTextChanged(2, 5, 1);
+        assertEquals("[0:6-8, 1:2-5]", ranges(tree));
+    }
+
+    @Test
+    public void onTextChanged_rangeOfRemovedTextIsDropped() {
+        DiagnosticTree tree = new DiagnosticTree();
+        tree.add(diagnostic(0, 4, 8));
+        tree.add(diagnostic(1, 0, 2));
+        tree.onTextChanged(3, 6, 0);
+        assertEquals("[1:0-2]", ranges(tree));
+    }
+
+    @Test
+    public void removeStartingIn_keepsTheOtherRanges() {
+        DiagnosticTree tree = new DiagnosticTree();
+        tree.add(diagnostic(0, 0, 10));
+        tree.add(diagnostic(1, 5, 6));
+        tree.add(diagnostic(2, 7, 9));
+        assertEquals(2, tree.removeStartingIn(5, 7));
+        assertEquals("[0:0-10]", ranges(tree));
+    }
+
+    @Test
+    public void removeAll_removesOnlyTheGivenDiagnostics() {
+        DiagnosticTree tree = new DiagnosticTree();
+        Diagnostic errorLine = diagnostic(0, 0, 4);
+        tree.add(errorLine);
+        tree.add(diagnostic(1, 2, 3));
+        tree.add(diagnostic(2, 5, 9));
+        tree.onTextChanged(0, 0, 2);
+        assertEquals(1, tree.removeAll(Collections.singleton(errorLine)));
+        assertEquals("[1:4-5, 2:7-11]", ranges(tree));
+        assertEquals(0, tree.removeAll(Collections.<Diagnostic>emptySet()));
+    }
+
+    @Test
+    public void operations_matchNaiveRanges() {
+        Random random = new Random(45);
+        for (int run = 0; run < 300; run++) {
+            DiagnosticTree tree = new DiagnosticTree();
+            List<int[]> expected = new ArrayList<>();
+            List<Diagnostic> diagnostics = new ArrayList<>();
+            int length = random.nextInt(50);
+            for (int operation = 0; operation < 60; operation++) {
+                int action = random.nextInt(10);
+                if (action < 4) {
+                    int start = random.nextInt(length + 1);
+                    int end = start + random.nextInt(Math.min(8, length - start) + 1);
+                    Diagnostic diagnostic = diagnostic(diagnostics.size(), start, end);
+                    diagnostics.add(diagnostic);
+                    tree.add(diagnostic);
+                    expected.add(new int[]{diagnostics.size() - 1, start, end});
+                } else if (action < 8) {
+                    int start = random.nextInt(length + 1);
+                    int before = random.nextInt(Math.min(6, length - start) + 1);
+                    int count = random.nextInt(6);
+                    tree.onTextChanged(start, before, count);
+                    naiveTextChanged(expected, start, before, count);
+                    length += count - before;
+                } else if (action == 8) {
+                    int start = random.nextInt(length + 1);
+                    int end = start + random.nextInt(5);
+                    int removed = 0;
+                    for (int i = expected.size() - 1; i >= 0; i--) {
+                        int rangeStart = expected.get(i)[1];
+                        if (rangeStart >= start && rangeStart <= end) {
+                            expected.remove(i);
+                            removed++;
+                        }
+                    }
+                    assertEquals(removed, tree.removeStartingIn(start, end));
+                } else {
+                    Set<Diagnostic> removedSet = new HashSet<>();
+                    for (Diagnostic diagnostic : diagnostics) {
+                        if (random.nextInt(3) == 0) removedSet.add(diagnostic);
+                    }
+                    int removed = 0;
+                    for (int i = expected.size() - 1; i >= 0; i--) {
+                        if (removedSet.contains(diagnostics.get(expected.get(i)[0]))) {
+                            expected.remove(i);
+                            removed++;
+                        }
+                    }
+                    assertEquals(removed, tree.removeAll(removedSet));
+                }
+                assertSameRanges(expected, tree, random, length);
+            }
+        }
+    }
+
+    // The change moves a range like the text of its start and its end
+    private static void naiveTextChanged(List<int[]> ranges, int start, int before, int count) {
+        int removedEnd = start + before;
+        int delta = count - before;
+        for (int i = ranges.size() - 1; i >= 0; i--) {
+            int[] range = ranges.get(i);
+            if (range[1] >= removedEnd) {
+                range[1] += delta;
+                range[2] += delta;
+            } else if (range[1] < start) {
+                range[2] = naiveEnd(range[2], start, removedEnd, delta);
+            } else {
+                boolean empty = range[1] == range[2];
+                int end = naiveEnd(range[2], start, removedEnd, delta);
+                if (end <= start && !empty) {
+                    ranges.remove(i);
+                    continue;
+                }
+                range[1] = start;
+                range[2] = Math.max(start, end);
+            }
+        }
+    }
+
+    // An end after the removed text moves with the text, an end inside it moves to the change start
+    private static int naiveEnd(int end, int start, int removedEnd, int delta) {
+        if (end > removedEnd || (end == removedEnd && end > start)) return end + delta;
+        return Math.min(end, start);
+    }
+
+    private static void assertSameRanges(List<int[]> expected, DiagnosticTree tree, Random random, int length) {
+        assertEquals(expected.size(), tree.size());
+        assertEquals(naiveRanges(expected, Integer.MIN_VALUE, Integer.MAX_VALUE), ranges(tree));
+        int start = random.nextInt(length + 1);
+        int end = start + random.nextInt(10);
+        List<Diagnostic> result = new ArrayList<>();
+        tree.query(start, end, result);
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(result.get(i - 1).getStart() <= result.get(i).getStart());
+        }
+        assertEquals(naiveRanges(expected, start, end), sorted(result));
+    }
+
+    private static String naiveRanges(List<int[]> ranges, int start, int end) {
+        List<String> result = new ArrayList<>();
+        for (int[] range : ranges) {
+            if (range[2] >= start && range[1] <= end) result.add(range[0] + ":" + range[1] + "-" + range[2]);
+        }
+        Collections.sort(result);
+        return result.toString();
+    }
+
+    private static String ranges(DiagnosticTree tree) {
+        List<Diagnostic> result = new ArrayList<>();
+        tree.query(Integer.MIN_VALUE, Integer.MAX_VALUE, result);
+        return sorted(result);
+    }
+
+    private static String sorted(List<Diagnostic> diagnostics) {
+        List<String> result = new ArrayList<>();
+        for (Diagnostic diagnostic : diagnostics) {
+            result.add(diagnostic.getMessage() + ":" + diagnostic.getStart() + "-" + diagnostic.getEnd());
+        }
+        Collections.sort(result);
+        return result.toString();
+    }
+
+    private static Diagnostic diagnostic(int id, int start, int end) {
+        return new Diagnostic(start, end, Diagnostic.Severity.WARNING, String.valueOf(id));
+    }
+}
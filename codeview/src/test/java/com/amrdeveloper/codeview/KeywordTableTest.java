@@ -0,0 +1,54 @@
+package com.amrdeveloper.codeview;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KeywordTableTest {
+
+    @Test
+    public void get_wordsInsideTheText() {
+        Map<String, Integer> words = new HashMap<>();
+        words.put("if", 1);
+        words.put("int", 2);
+        KeywordTable table = new KeywordTable(words);
+        String text = "x int if";
+        assertEquals(2, table.get(text, 2, 5));
+        assertEquals(1, table.get(text, 6, 8));
+        assertEquals(-1, table.get(text, 2, 4));
+        assertEquals(-1, table.get(text, 0, 1));
+    }
+
+    @Test
+    public void get_emptyTable() {
+        KeywordTable table = new KeywordTable(Collections.<String, Integer>emptyMap());
+        assertEquals(-1, table.get("if", 0, 2));
+        assertEquals(-1, table.get("if", 0, 0));
+    }
+
+    @Test
+    public void get_matchesHashMap() {
+        Random random = new Random(43);
+        for (int run = 0; run < 200; run++) {
+            Map<String, Integer> words = new HashMap<>();
+            int count = random.nextInt(random.nextInt(10) == 0 ? 2000 : 60);
+            for (int i = 0; i < count; i++) words.put(RandomText.of(random, 1 + random.nextInt(6), "abcd"), i);
+            KeywordTable table = new KeywordTable(words);
+
+            for (Map.Entry<String, Integer> entry : words.entrySet()) {
+                String text = " " + entry.getKey() + " ";
+                assertEquals(entry.getKey(), (int) entry.getValue(), table.get(text, 1, text.length() - 1));
+            }
+            for (int i = 0; i < 200; i++) {
+                String word = RandomText.of(random, 1 + random.nextInt(6), "abcd");
+                Integer expected = words.get(word);
+                assertEquals(word, expected == null ? -1 : expected, table.get(word, 0, word.length()));
+            }
+        }
+    }
+}
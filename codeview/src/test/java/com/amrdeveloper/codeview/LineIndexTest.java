@@ -0,0 +1,108 @@
+package com.amrdeveloper.codeview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LineIndexTest {
+
+    // A quarter of the characters are line breaks
+    private static final String ALPHABET = "aaa\n";
+
+    @Test
+    public void rebuild_emptyTextHasOneLine() {
+        LineIndex index = new LineIndex();
+        index.rebuild("");
+        assertEquals(1, index.getLineCount());
+        assertEquals(0, index.getLineStart(0));
+        assertEquals(0, index.getLineEnd(0));
+        assertEquals(0, index.getLineForOffset(0));
+    }
+
+    @Test
+    public void rebuild_linesOfTheText() {
+        LineIndex index = new LineIndex();
+        index.rebuild("ab\n\ncd\n");
+        assertEquals(4, index.getLineCount());
+        assertEquals(3, index.getLineStart(1));
+        assertEquals(3, index.getLineEnd(1));
+        assertEquals(4, index.getLineStart(2));
+        assertEquals(6, index.getLineEnd(2));
+        assertEquals(7, index.getLineStart(3));
+        assertEquals(7, index.getLineEnd(3));
+        assertEquals(0, index.getLineForOffset(2));
+        assertEquals(2, index.getLineForOffset(6));
+        assertEquals(3, index.getLineForOffset(7));
+    }
+
+    @Test
+    public void onTextChanged_removingLineBreaksJoinsTheLines() {
+        LineIndex index = new LineIndex();
+        StringBuilder text = new StringBuilder("a\nb\nc\nd");
+        index.rebuild(text);
+        text.replace(1, 5, "");
+        index.onTextChanged(text, 1, 4, 0);
+        assertEquals(2, index.getLineCount());
+        assertEquals(2, index.getLineStart(1));
+        assertEquals(3, index.getLineEnd(1));
+    }
+
+    @Test
+    public void onTextChanged_manyLinesGrowTheIndex() {
+        LineIndex index = new LineIndex();
+        StringBuilder text = new StringBuilder("x");
+        index.rebuild(text);
+        for (int i = 0; i < 500; i++) {
+            text.insert(0, "\n");
+            index.onTextChanged(text, 0, 0, 1);
+        }
+        assertSameAsFullScan(index, text);
+    }
+
+    @Test
+    public void onTextChanged_matchesFullScan() {
+        Random random = new Random(39);
+        LineIndex index = new LineIndex();
+        for (int run = 0; run < 300; run++) {
+            StringBuilder text = new StringBuilder(RandomText.of(random, random.nextInt(200), ALPHABET));
+            index.rebuild(text);
+            assertSameAsFullScan(index, text);
+            for (int edit = 0; edit < 50; edit++) {
+                int start = random.nextInt(text.length() + 1);
+                int before = random.nextInt(Math.min(10, text.length() - start) + 1);
+                String inserted = RandomText.of(random, random.nextInt(random.nextInt(10) == 0 ? 150 : 6), ALPHABET);
+                text.replace(start, start + before, inserted);
+                index.onTextChanged(text, start, before, inserted.length());
+                assertSameAsFullScan(index, text);
+            }
+        }
+    }
+
+    private static void assertSameAsFullScan(LineIndex index, CharSequence text) {
+        List<Integer> starts = naiveLineStarts(text);
+        assertEquals(text.toString(), starts.size(), index.getLineCount());
+        for (int line = 0; line < starts.size(); line++) {
+            int end = line + 1 < starts.size() ? starts.get(line + 1) - 1 : text.length();
+            assertEquals(text + " line " + line, (int) starts.get(line), index.getLineStart(line));
+            assertEquals(text + " line " + line, end, index.getLineEnd(line));
+        }
+        int line = 0;
+        for (int offset = 0; offset <= text.length(); offset++) {
+            while (line + 1 < starts.size() && starts.get(line + 1) <= offset) line++;
+            assertEquals(text + " @" + offset, line, index.getLineForOffset(offset));
+        }
+    }
+
+    private static List<Integer> naiveLineStarts(CharSequence text) {
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') starts.add(i + 1);
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,62 @@
+package com.amrdeveloper.codeview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PatternGuardTest {
+
+    @Test
+    public void findNestedQuantifier_repeatedGroupWithRepeatedPart() {
+        assertNotNull(PatternGuard.findNestedQuantifier("(a+)+"));
+        assertNotNull(PatternGuard.findNestedQuantifier("(\\w*\\s?)*"));
+        assertNotNull(PatternGuard.findNestedQuantifier("(.*,){12}"));
+        assertNotNull(PatternGuard.findNestedQuantifier("x((a+)b)*y"));
+        assertNotNull(PatternGuard.findNestedQuantifier("(a{2,})+"));
+    }
+
+    @Test
+    public void findNestedQuantifier_describesTheGroup() {
+        assertEquals("Nested quantifier in (b*)+ can backtrack catastrophically",
+                PatternGuard.findNestedQuantifier("a(b*)+c"));
+    }
+
+    @Test
+    public void findNestedQuantifier_safePatterns() {
+        assertNull(PatternGuard.findNestedQuantifier("a+b*c?"));
+        assertNull(PatternGuard.findNestedQuantifier("(a+)?"));
+        assertNull(PatternGuard.findNestedQuantifier("(a+){1}"));
+        assertNull(PatternGuard.findNestedQuantifier("(ab)+"));
+        assertNull(PatternGuard.findNestedQuantifier("/\\*(?:.|\\n)*?\\*/"));
+    }
+
+    @Test
+    public void findNestedQuantifier_possessiveAndAtomicGroupsDontBacktrack() {
+        assertNull(PatternGuard.findNestedQuantifier("(a++)+"));
+        assertNull(PatternGuard.findNestedQuantifier("(a+)++"));
+        assertNull(PatternGuard.findNestedQuantifier("(?>a+)+"));
+    }
+
+    @Test
+    public void findNestedQuantifier_skipsEscapedAndClassCharacters() {
+        assertNull(PatternGuard.findNestedQuantifier("\\(a+\\)+"));
+        assertNull(PatternGuard.findNestedQuantifier("[(a+)]+"));
+        assertNull(PatternGuard.findNestedQuantifier("[]+(]+"));
+        assertNull(PatternGuard.findNestedQuantifier("\\Q(a+)+\\E"));
+    }
+
+    @Test
+    public void findNestedQuantifier_repeatLargerThanInt() {
+        assertNull(PatternGuard.findNestedQuantifier("a{1,99999999999}"));
+        assertNotNull(PatternGuard.findNestedQuantifier("(a{1,99999999999})+"));
+        assertNotNull(PatternGuard.findNestedQuantifier("(a+){99999999999}"));
+    }
+
+    @Test
+    public void findNestedQuantifier_unclosedParts() {
+        assertNull(PatternGuard.findNestedQuantifier("(a+"));
+        assertNull(PatternGuard.findNestedQuantifier("a{1,"));
+        assertNull(PatternGuard.findNestedQuantifier("[a+"));
+        assertNull(PatternGuard.findNestedQuantifier("\\"));
+    }
+}
@@ -0,0 +1,101 @@
+package com.amrdeveloper.codeview;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PatternWorkerTest {
+
+    @Test
+    public void abandon_nextTaskRunsOnANewThread() throws Exception {
+        PatternWorker worker = new PatternWorker("test");
+        final Thread[] threads = new Thread[2];
+        worker.submit(new Runnable() {
+            @Override
+            public void run() {
+                threads[0] = Thread.currentThread();
+            }
+        }).get();
+        worker.abandon();
+        worker.submit(new Runnable() {
+            @Override
+            public void run() {
+                threads[1] = Thread.currentThread();
+            }
+        }).get();
+        assertNotSame(threads[0], threads[1]);
+        worker.abandon();
+    }
+
+    @Test
+    public void submit_refusesNewThreadsWhileTooManyAbandonedThreadsRun() throws Exception {
+        waitForAbandonedThreads();
+        PatternWorker running = new PatternWorker("test");
+        running.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+
+        // Like a regex the tasks don't stop when they are interrupted
+        final CountDownLatch started = new CountDownLatch(PatternWorker.MAX_ABANDONED_THREADS);
+        final boolean[] released = {false};
+        for (int i = 0; i < PatternWorker.MAX_ABANDONED_THREADS; i++) {
+            PatternWorker worker = new PatternWorker("test");
+            assertNotNull(worker.submit(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    while (!isReleased(released)) Thread.yield();
+                }
+            }));
+            worker.abandon();
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        PatternWorker worker = new PatternWorker("test");
+        assertNull(worker.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+        // A worker that has its thread already keeps it
+        Future<?> task = running.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        assertNotNull(task);
+        task.get();
+
+        synchronized (released) {
+            released[0] = true;
+        }
+        waitForAbandonedThreads();
+        assertNotNull(worker.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+        worker.abandon();
+        running.abandon();
+    }
+
+    private static boolean isReleased(boolean[] released) {
+        synchronized (released) {
+            return released[0];
+        }
+    }
+
+    private static void waitForAbandonedThreads() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (PatternWorker.countAbandonedThreads() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.amrdeveloper.codeview;
+
+import java.util.Random;
+
+/**
+ * Random texts of the characters of an alphabet for the tests that compare random edits with a naive model
+ */
+final class RandomText {
+
+    static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+
+    private RandomText() {
+    }
+
+    static String of(Random random, int length, String alphabet) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return text.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.amrdeveloper.codeview;
+
+import android.text.Spannable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spannable of a text length that records the spans that are set and removed
+ */
+final class RecordingSpannable implements Spannable {
+
+    final List<Object> spans = new ArrayList<>();
+    final List<Integer> starts = new ArrayList<>();
+    final List<Integer> ends = new ArrayList<>();
+    final List<Object> removedSpans = new ArrayList<>();
+    private final int length;
+
+    RecordingSpannable(int length) {
+        this.length = length;
+    }
+
+    @Override
+    public void setSpan(Object what, int start, int end, int flags) {
+        spans.add(what);
+        starts.add(start);
+        ends.add(end);
+    }
+
+    @Override
+    public void removeSpan(Object what) {
+        removedSpans.add(what);
+    }
+
+    @Override
+    public <T> T[] getSpans(int start, int end, Class<T> type) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getSpanStart(Object tag) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getSpanEnd(Object tag) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getSpanFlags(Object tag) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int nextSpanTransition(int start, int limit, Class type) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        throw new UnsupportedOperationException();
+    }
+}
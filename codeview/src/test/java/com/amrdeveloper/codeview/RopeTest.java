@@ -0,0 +1,86 @@
+package com.amrdeveloper.codeview;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RopeTest {
+
+    @Test
+    public void of_keepsTheText() {
+        String text = RandomText.of(new Random(29), 5000, RandomText.LETTERS);
+        Rope rope = Rope.of(text);
+        assertEquals(text.length(), rope.length());
+        assertEquals(text, rope.toString());
+        assertEquals(text.substring(1000, 3000), rope.subSequence(1000, 3000).toString());
+        assertSame(Rope.EMPTY, Rope.of(""));
+    }
+
+    @Test
+    public void replace_keepsTheOldVersion() {
+        Rope rope = Rope.of("hello world");
+        Rope edited = rope.replace(0, 5, "goodbye");
+        assertEquals("hello world", rope.toString());
+        assertEquals("goodbye world", edited.toString());
+        assertEquals("goodbye world!", edited.concat(Rope.of("!")).toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void charAt_outOfRange() {
+        Rope.of("abc").charAt(3);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void replace_invalidRange() {
+        Rope.of("abc").replace(2, 1, "x");
+    }
+
+    @Test
+    public void edits_matchStringBuilder() {
+        Random random = new Random(29);
+        for (int run = 0; run < 50; run++) {
+            StringBuilder expected = new StringBuilder(RandomText.of(random, random.nextInt(3000), RandomText.LETTERS));
+            Rope rope = Rope.of(expected);
+            for (int edit = 0; edit < 200; edit++) {
+                int start = random.nextInt(expected.length() + 1);
+                int end = start + random.nextInt(Math.min(700, expected.length() - start) + 1);
+                String text = RandomText.of(random, random.nextInt(random.nextInt(10) == 0 ? 1500 : 20), RandomText.LETTERS);
+                int textStart = random.nextInt(text.length() + 1);
+                int textEnd = textStart + random.nextInt(text.length() - textStart + 1);
+
+                expected.replace(start, end, text.substring(textStart, textEnd));
+                rope = rope.replace(start, end, text, textStart, textEnd);
+                assertEquals(expected.length(), rope.length());
+            }
+            assertSameText(expected, rope, random);
+        }
+    }
+
+    @Test
+    public void getChars_matchStringBuilder() {
+        Random random = new Random(30);
+        String text = RandomText.of(random, 4000, RandomText.LETTERS);
+        Rope rope = Rope.of(text.substring(0, 1500)).concat(Rope.of(text.substring(1500)));
+        for (int i = 0; i < 100; i++) {
+            int start = random.nextInt(text.length() + 1);
+            int end = start + random.nextInt(text.length() - start + 1);
+            char[] chars = new char[end - start + 2];
+            rope.getChars(start, end, chars, 1);
+            assertEquals(text.substring(start, end), new String(chars, 1, end - start));
+        }
+    }
+
+    private static void assertSameText(CharSequence expected, Rope rope, Random random) {
+        assertEquals(expected.toString(), rope.toString());
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.charAt(i), rope.charAt(i));
+        }
+        for (int i = 0; i < 20; i++) {
+            int start = random.nextInt(expected.length() + 1);
+            int end = start + random.nextInt(expected.length() - start + 1);
+            assertEquals(expected.subSequence(start, end).toString(), rope.subSequence(start, end).toString());
+        }
+    }
+}
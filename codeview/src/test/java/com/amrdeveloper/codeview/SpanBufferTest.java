@@ -0,0 +1,67 @@
+package com.amrdeveloper.codeview;
+
+import android.text.Spannable;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpanBufferTest {
+
+    @Test
+    public void setSpan_emptySpansAreNotKept() {
+        SpanBuffer buffer = new SpanBuffer("abc");
+        buffer.setSpan("a", 1, 1, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        buffer.setSpan("b", 1, 2, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        assertEquals(1, buffer.size());
+        assertEquals(-1, buffer.getSpanStart("a"));
+        assertEquals(1, buffer.getSpanStart("b"));
+    }
+
+    @Test
+    public void splitSteps_stepsKeepTheOverlappingSpansTogether() {
+        Random random = new Random(30);
+        for (int run = 0; run < 300; run++) {
+            int length = 1 + random.nextInt(200);
+            SpanBuffer buffer = new SpanBuffer(new String(new char[length]));
+            List<int[]> added = new ArrayList<>();
+            int count = random.nextInt(100);
+            for (int i = 0; i < count; i++) {
+                int start = random.nextInt(length);
+                int end = start + 1 + random.nextInt(random.nextInt(10) == 0 ? length - start : Math.min(5, length - start));
+                buffer.setSpan(i, start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+                added.add(new int[]{start, end});
+            }
+            int spansPerStep = 1 + random.nextInt(10);
+            buffer.splitSteps(spansPerStep);
+
+            List<Integer> seen = new ArrayList<>();
+            int stepCount = buffer.getStepCount();
+            assertEquals(count == 0, stepCount == 0);
+            for (int step = 0; step < stepCount; step++) {
+                RecordingSpannable target = new RecordingSpannable(length);
+                buffer.applyStep(target, step);
+                if (step + 1 < stepCount) assertTrue(target.spans.size() >= spansPerStep);
+                int stepStart = buffer.getStepStart(step);
+                int nextStart = step + 1 < stepCount ? buffer.getStepStart(step + 1) : Integer.MAX_VALUE;
+                for (int i = 0; i < target.spans.size(); i++) {
+                    int id = (Integer) target.spans.get(i);
+                    int[] range = added.get(id);
+                    assertEquals(range[0], (int) target.starts.get(i));
+                    assertEquals(range[1], (int) target.ends.get(i));
+                    // Every span starts in its step and the next steps don't overlap it
+                    assertTrue(range[0] >= stepStart && range[0] < nextStart);
+                    assertTrue(range[1] <= nextStart);
+                    // The spans keep their order of adding in a step
+                    if (i > 0) assertTrue(id > (Integer) target.spans.get(i - 1));
+                    seen.add(id);
+                }
+            }
+            assertEquals(count, seen.size());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.amrdeveloper.codeview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SyntaxColorRefresherTest {
+
+    @Test
+    public void refresh_setsAndRemovesOneSpanOverTheVisibleText() {
+        SyntaxColorRefresher refresher = new SyntaxColorRefresher();
+        RecordingSpannable text = new RecordingSpannable(100);
+        refresher.refresh(text, 20, 40);
+        assertEquals(1, text.spans.size());
+        assertEquals(20, (int) text.starts.get(0));
+        assertEquals(40, (int) text.ends.get(0));
+        assertEquals(text.spans, text.removedSpans);
+        assertTrue(refresher.isPending());
+    }
+
+    @Test
+    public void refreshVisible_refreshesOnlyTheNewlyVisibleText() {
+        SyntaxColorRefresher refresher = new SyntaxColorRefresher();
+        RecordingSpannable text = new RecordingSpannable(100);
+        refresher.refresh(text, 20, 40);
+        refresher.refreshVisible(text, 30, 50);
+        refresher.refreshVisible(text, 25, 45);
+        refresher.refreshVisible(text, 0, 30);
+        assertEquals(Arrays.asList(20, 40, 0), text.starts);
+        assertEquals(Arrays.asList(40, 50, 20), text.ends);
+    }
+
+    @Test
+    public void refreshVisible_stopsWhenTheWholeTextIsRefreshed() {
+        SyntaxColorRefresher refresher = new SyntaxColorRefresher();
+        RecordingSpannable text = new RecordingSpannable(100);
+        refresher.refresh(text, 0, 60);
+        refresher.refreshVisible(text, 50, 120);
+        assertFalse(refresher.isPending());
+        refresher.refreshVisible(text, 0, 100);
+        assertEquals(Arrays.asList(60, 100), text.ends);
+    }
+
+    @Test
+    public void onTextChanged_visibleTextIsRefreshedAgain() {
+        SyntaxColorRefresher refresher = new SyntaxColorRefresher();
+        RecordingSpannable text = new RecordingSpannable(100);
+        refresher.refresh(text, 20, 40);
+        refresher.onTextChanged();
+        refresher.refreshVisible(text, 20, 40);
+        assertEquals(Arrays.asList(20, 20), text.starts);
+
+        refresher.clear();
+        refresher.refreshVisible(text, 50, 60);
+        assertEquals(2, text.spans.size());
+    }
+
+    @Test
+    public void refreshVisible_everyVisibleRangeIsRefreshedAfterTheColorChange() {
+        Random random = new Random(41);
+        for (int run = 0; run < 300; run++) {
+            int length = random.nextInt(200);
+            RecordingSpannable text = new RecordingSpannable(length);
+            SyntaxColorRefresher refresher = new SyntaxColorRefresher();
+            boolean[] refreshed = new boolean[length];
+            for (int scroll = 0; scroll < 20; scroll++) {
+                int start = random.nextInt(length + 1);
+                int end = start + random.nextInt(40);
+                int firstSpan = text.spans.size();
+                if (scroll == 0) refresher.refresh(text, start, end);
+                else refresher.refreshVisible(text, start, end);
+                for (int i = firstSpan; i < text.spans.size(); i++) {
+                    assertTrue(text.starts.get(i) < text.ends.get(i));
+                    for (int j = text.starts.get(i); j < text.ends.get(i); j++) refreshed[j] = true;
+                }
+                for (int i = start; i < Math.min(end, length); i++) assertTrue(refreshed[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.amrdeveloper.codeview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class SyntaxGrammarTest {
+
+    private static final String ALPHABET = "ifntx12 /*\"+\n";
+
+    @Test
+    public void tokenize_wordsTableFindsTheWords() {
+        SyntaxGrammar grammar = new SyntaxGrammar("test", Arrays.asList(
+                SyntaxGrammar.Rule.words(Arrays.asList("if", "int"), "keyword"),
+                SyntaxGrammar.Rule.match("[a-z]+", "identifier")));
+        assertEquals("[0:0-2, 1:3-6, 0:7-10, 1:11-13]", tokens(grammar, "if iff int in"));
+    }
+
+    @Test
+    public void tokenize_earlierRuleWinsOverLaterWords() {
+        SyntaxGrammar grammar = new SyntaxGrammar("test", Arrays.asList(
+                SyntaxGrammar.Rule.words(Collections.singletonList("if"), "keyword"),
+                SyntaxGrammar.Rule.match("[a-z]+", "identifier"),
+                SyntaxGrammar.Rule.words(Collections.singletonList("int"), "type")));
+        assertEquals("[0:0-2, 1:3-6]", tokens(grammar, "if int"));
+    }
+
+    @Test
+    public void tokenize_rulesMatchInsideWordsOutsideTheTable() {
+        SyntaxGrammar grammar = new SyntaxGrammar("test", Arrays.asList(
+                SyntaxGrammar.Rule.words(Collections.singletonList("if"), "keyword"),
+                SyntaxGrammar.Rule.match("\\d+", "number")));
+        assertEquals("[1:1-3, 0:4-6]", tokens(grammar, "i12 if"));
+    }
+
+    @Test
+    public void tokenize_wordsThatAreNotMadeOfLetters() {
+        SyntaxGrammar grammar = new SyntaxGrammar("test", Arrays.asList(
+                SyntaxGrammar.Rule.words(Arrays.asList("++", "#include", "if"), "keyword")));
+        assertEquals("[0:0-2, 0:3-11, 0:12-14]", tokens(grammar, "++ #include if #includes"));
+    }
+
+    @Test
+    public void tokenize_tokensCanContinueUntilTheLimit() {
+        SyntaxGrammar grammar = new SyntaxGrammar("test", Arrays.asList(
+                SyntaxGrammar.Rule.match("/\\*(?:.|\\n)*?\\*/", "comment"),
+                SyntaxGrammar.Rule.match("[a-z]+", "identifier")));
+        final List<String> tokens = new ArrayList<>();
+        grammar.getLexer().tokenize("a /* b */ c", 0, 4, 11, new SyntaxGrammar.TokenCallback() {
+            @Override
+            public void onToken(int rule, int start, int end) {
+                tokens.add(rule + ":" + start + "-" + end);
+            }
+        });
+        assertEquals("[1:0-1, 0:2-9]", tokens.toString());
+    }
+
+    @Test
+    public void countGroups_skipsTheNonCapturingParts() {
+        assertEquals(0, SyntaxGrammar.countGroups("abc"));
+        assertEquals(2, SyntaxGrammar.countGroups("(a)(b)"));
+        assertEquals(1, SyntaxGrammar.countGroups("(?:a)(b)"));
+        assertEquals(0, SyntaxGrammar.countGroups("\\(a\\)"));
+        assertEquals(0, SyntaxGrammar.countGroups("[(a)]"));
+        assertEquals(1, SyntaxGrammar.countGroups("[\\](](a)"));
+        assertEquals(1, SyntaxGrammar.countGroups("(?<name>a)"));
+        assertEquals(0, SyntaxGrammar.countGroups("(?<=a)(?<!b)(?=c)(?!d)"));
+        assertEquals(0, SyntaxGrammar.countGroups("\\Q(a)\\E"));
+        assertEquals(1, SyntaxGrammar.countGroups("\\Q(\\E(a)"));
+    }
+
+    @Test
+    public void countGroups_matchesTheCompiledPatterns() {
+        String[] regexes = {"(a|(b))*", "((?:x)(y))", "[a-z&&[^(]](c)", "\\\\(d)", "(?i)(e)", "(?<n>f)(?<=g)"};
+        for (String regex : regexes) {
+            assertEquals(regex, Pattern.compile(regex).matcher("").groupCount(), SyntaxGrammar.countGroups(regex));
+        }
+    }
+
+    @Test
+    public void tokenize_matchesTheRulesTriedInOrder() {
+        Random random = new Random(42);
+        List<SyntaxGrammar.Rule> allRules = Arrays.asList(
+                SyntaxGrammar.Rule.match("/\\*(?:.|\\n)*?\\*/", "comment"),
+                SyntaxGrammar.Rule.match("\"[^\"\\n]*\"", "string"),
+                SyntaxGrammar.Rule.match("\\d+", "number"),
+                SyntaxGrammar.Rule.match("[a-z]+", "identifier"),
+                SyntaxGrammar.Rule.match("\\+|\\*", "operator"),
+                SyntaxGrammar.Rule.words(Arrays.asList("if", "in", "int"), "keyword"),
+                SyntaxGrammar.Rule.words(Arrays.asList("int", "x", "++"), "type"),
+                SyntaxGrammar.Rule.words(Arrays.asList("tt", "t1"), "constant"));
+        for (int run = 0; run < 300; run++) {
+            List<SyntaxGrammar.Rule> rules = new ArrayList<>(allRules);
+            Collections.shuffle(rules, random);
+            rules = rules.subList(0, 1 + random.nextInt(rules.size()));
+            SyntaxGrammar grammar = new SyntaxGrammar("test", rules);
+            for (int text = 0; text < 20; text++) {
+                String code = RandomText.of(random, random.nextInt(40), ALPHABET);
+                assertEquals(rules + " " + code, naiveTokens(grammar, code), tokens(grammar, code));
+            }
+        }
+    }
+
+    private static String tokens(SyntaxGrammar grammar, String text) {
+        final List<String> tokens = new ArrayList<>();
+        grammar.getLexer().tokenize(text, 0, text.length(), new SyntaxGrammar.TokenCallback() {
+            @Override
+            public void onToken(int rule, int start, int end) {
+                tokens.add(rule + ":" + start + "-" + end);
+            }
+        });
+        return tokens.toString();
+    }
+
+    // At every position the rules are tried one by one in their order, the first match is the token
+    private static String naiveTokens(SyntaxGrammar grammar, String text) {
+        List<String> tokens = new ArrayList<>();
+        List<Matcher> matchers = new ArrayList<>();
+        for (int i = 0; i < grammar.getRuleCount(); i++) {
+            Matcher matcher = Pattern.compile(grammar.getRule(i)).matcher(text);
+            matcher.useTransparentBounds(true);
+            matchers.add(matcher);
+        }
+        int position = 0;
+        while (position < text.length()) {
+            int tokenEnd = -1;
+            for (int i = 0; i < matchers.size(); i++) {
+                Matcher matcher = matchers.get(i);
+                matcher.region(position, text.length());
+                if (!matcher.lookingAt()) continue;
+                tokenEnd = matcher.end();
+                if (tokenEnd > position) tokens.add(i + ":" + position + "-" + tokenEnd);
+                break;
+            }
+            position = tokenEnd > position ? tokenEnd : position + 1;
+        }
+        return tokens.toString();
+    }
+}